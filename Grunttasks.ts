@@ -721,7 +721,96 @@ export function setup(grunt: IGrunt) {
       benchmarkLocally(path.resolve(__dirname, 'doppio'), true, path.join(__dirname, 'node-int.json'), done);
     });
   });
+  grunt.registerTask('run-benchmark-long-representation', 'Compares long representations in DoppioJVM in node.', function() {
+    const done = this.async();
+    const results: {[representation: string]: number} = {};
+    async.eachSeries(['glong', 'bigint'], (representation: string, done: (e?: Error) => void) => {
+      console.log(representation);
+      const start = process.hrtime();
+      grunt.util.spawn({
+        cmd: path.resolve(__dirname, 'doppio'),
+        args: ['-Xlong-representation', representation, 'classes.demo.LongBench'],
+        opts: {
+          cwd: __dirname
+        }
+      }, (err, result, code) => {
+        if (err || code !== 0) {
+          done(new Error("Benchmark failed."));
+        } else {
+          const time = process.hrtime(start);
+          // Convert to ms.
+          const timeMs = ((time[0] * 1000) + (time[1]/1000000))|0;
+          results[representation] = timeMs;
+          console.log(`${timeMs} ms`);
+          done();
+        }
+      });
+    }, (err?: Error) => {
+      if (!err) {
+        const outFile = path.join(__dirname, 'long-representation.json');
+        grunt.file.write(outFile, JSON.stringify(results));
+        grunt.log.ok(`Wrote benchmark results to ${outFile}.`);
+      }
+      done(err);
+    });
+  });
+  grunt.registerTask('run-benchmark-call-allocation', 'Measures the JavaScript heap allocation per Java method call in DoppioJVM in node.', function() {
+    const done = this.async();
+    // Calls made per iteration of CallBench's loop.
+    const callsPerIteration = 4, iterations = 250000;
+    const results: {[mode: string]: number} = {};
+    // Runs CallBench under V8's GC tracer, and sums the bytes allocated
+    // between collections.
+    function measure(flags: string[], n: number, done: (e: Error, allocated?: number) => void): void {
+      grunt.util.spawn({
+        cmd: process.execPath,
+        args: ['--trace-gc-nvp', path.resolve(__dirname, 'build', 'release-cli', 'console', 'runner.js')].concat(flags, ['classes.demo.CallBench', `${n}`]),
+        opts: {
+          cwd: __dirname
+        }
+      }, (err, result, code) => {
+        if (err || code !== 0) {
+          done(new Error("Benchmark failed."));
+        } else {
+          const pattern = /allocated=(\d+)/g;
+          let allocated = 0, match: RegExpExecArray;
+          while ((match = pattern.exec(result.stdout)) !== null) {
+            allocated += parseInt(match[1], 10);
+          }
+          done(null, allocated);
+        }
+      });
+    }
+    async.eachSeries(['stack-args', 'no-stack-args'], (mode: string, done: (e?: Error) => void) => {
+      console.log(mode);
+      const flags = mode === 'stack-args' ? [] : ['-Xno-stack-args'];
+      // Subtract a shorter run to discount JVM startup.
+      measure(flags, iterations, (err: Error, base?: number) => {
+        if (err) {
+          return done(err);
+        }
+        measure(flags, 2 * iterations, (err: Error, total?: number) => {
+          if (err) {
+            return done(err);
+          }
+          const bytesPerCall = Math.round((total - base) / (callsPerIteration * iterations));
+          results[mode] = bytesPerCall;
+          console.log(`${bytesPerCall} bytes/call`);
+          done();
+        });
+      });
+    }, (err?: Error) => {
+      if (!err) {
+        const outFile = path.join(__dirname, 'call-allocation.json');
+        grunt.file.write(outFile, JSON.stringify(results));
+        grunt.log.ok(`Wrote benchmark results to ${outFile}.`);
+      }
+      done(err);
+    });
+  });
   grunt.registerTask('benchmark-node', ['release-cli', 'run-benchmark-node']);
+  grunt.registerTask('benchmark-long-representation', ['release-cli', 'java', 'run-benchmark-long-representation']);
+  grunt.registerTask('benchmark-call-allocation', ['release-cli', 'java', 'run-benchmark-call-allocation']);
   grunt.registerTask("benchmark-native", ["java", "run-benchmark-native-java"]);
   grunt.registerTask("benchmark-browser",
     ['build-test-release',
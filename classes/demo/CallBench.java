@@ -0,0 +1,32 @@
+// call-heavy loop, for measuring the allocation each method invocation does
+package classes.demo;
+public class CallBench {
+  private long total;
+
+  public static void main(String[] args) {
+    int n;
+    if (args.length > 0)
+      n = Integer.parseInt(args[0]);
+    else
+      n = 200000;
+    CallBench bench = new CallBench();
+    Object obj = new Object();
+    int acc = 0, hash = 0;
+    for (int i = 0; i < n; i++) {
+      // Bytecode static, bytecode virtual, native virtual, native static.
+      acc = add(acc, i);
+      bench.accumulate(i, (long) acc);
+      hash ^= obj.hashCode();
+      hash ^= System.identityHashCode(obj);
+    }
+    System.out.println((4L * n) + " calls, total = " + bench.total);
+  }
+
+  private static int add(int a, int b) {
+    return a + b;
+  }
+
+  public void accumulate(int i, long v) {
+    total += v + i;
+  }
+}
@@ -0,0 +1,38 @@
+// long-heavy arithmetic, for comparing long representations
+package classes.demo;
+public class LongBench {
+  public static void main(String[] args) {
+    int n;
+    if (args.length > 0)
+      n = Integer.parseInt(args[0]);
+    else
+      n = 200000;
+    long[] table = new long[256];
+    long seed = 0x9E3779B97F4A7C15L;
+    for (int i = 0; i < table.length; i++) {
+      seed = mix(seed + i);
+      table[i] = seed;
+    }
+    long hash = 0xCBF29CE484222325L;
+    long sum = 0;
+    for (int i = 0; i < n; i++) {
+      int idx = (int) (hash >>> 56);
+      hash ^= table[idx] + i;
+      hash *= 0x100000001B3L;
+      table[idx] = hash >> 3;
+      sum += (hash / 7) - (hash % 7) + (hash & 0xFFFF) + (hash << 5) + (hash >>> 17);
+      if (hash < 0) {
+        sum = -sum;
+      }
+    }
+    System.out.println("hash = " + hash);
+    System.out.println("sum = " + sum);
+  }
+
+  // splitmix64 finalizer
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
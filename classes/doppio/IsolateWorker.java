@@ -0,0 +1,53 @@
+package doppio;
+
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.util.concurrent.Callable;
+
+/**
+ * Runs in each isolate launched by doppio.Isolates: runs the tasks the
+ * parent JVM sends, one at a time, until the parent shuts the isolate down.
+ */
+public final class IsolateWorker {
+  private IsolateWorker() {
+  }
+
+  public static void main(String[] args) {
+    ClassLoader loader = ClassLoader.getSystemClassLoader();
+    while (true) {
+      completeTask(run(nextTask(), loader));
+    }
+  }
+
+  private static Object[] run(Object[] request, ClassLoader loader) {
+    boolean returned;
+    Object result;
+    try {
+      Callable<?> task = (Callable<?>) Isolates.deserialize(request, loader).readObject();
+      result = task.call();
+      returned = true;
+    } catch (Throwable t) {
+      result = t;
+      returned = false;
+    }
+    try {
+      return Isolates.writeResult(returned, result);
+    } catch (IOException e) {
+      try {
+        return Isolates.writeResult(false, new NotSerializableException("Cannot serialize the result of an isolate task: " + e));
+      } catch (IOException e2) {
+        throw new InternalError(e2.toString());
+      }
+    }
+  }
+
+  /**
+   * Waits for the parent's next task, and returns it serialized.
+   */
+  private static native Object[] nextTask();
+
+  /**
+   * Sends the serialized result of the current task to the parent.
+   */
+  private static native void completeTask(Object[] result);
+}
@@ -0,0 +1,248 @@
+package doppio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs tasks on isolates: worker threads that each run their own JVM, so
+ * tasks run in parallel on separate cores. Enable isolates with the
+ * -Xisolates option. Without it, or on JVMs other than DoppioJVM, tasks run
+ * on threads of this JVM.
+ *
+ * Tasks must be Serializable. Tasks, their results and the exceptions they
+ * throw are copied between isolates with Java serialization, so primitive
+ * arrays are the cheapest way to pass data. Arrays allocated by
+ * doppio.SharedArrays are not copied: both isolates see the same memory.
+ * Other than those, isolates share no state: static fields and side effects
+ * on objects a task captured stay in its isolate.
+ */
+public final class Isolates {
+  private static final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+    public Thread newThread(Runnable r) {
+      Thread t = new Thread(r, "doppio-isolate-task");
+      t.setDaemon(true);
+      return t;
+    }
+  });
+
+  private Isolates() {
+  }
+
+  /**
+   * Returns the number of isolates tasks run on, or 0 if they run on threads
+   * of this JVM. Always 0 on JVMs other than DoppioJVM.
+   */
+  public static int count() {
+    try {
+      return count0();
+    } catch (UnsatisfiedLinkError e) {
+      return 0;
+    }
+  }
+
+  private static native int count0();
+
+  /**
+   * Runs the task on the next free isolate.
+   *
+   * @throws IllegalArgumentException if the task cannot be serialized.
+   */
+  public static <T> Future<T> submit(Callable<T> task) {
+    return submit(task, task);
+  }
+
+  /**
+   * Runs the task on the next free isolate. The future's result is null.
+   *
+   * @throws IllegalArgumentException if the task cannot be serialized.
+   */
+  public static Future<?> submit(Runnable task) {
+    return submit(new RunnableTask(task), task);
+  }
+
+  private static <T> Future<T> submit(Callable<T> task, Object userTask) {
+    if (!(userTask instanceof Serializable)) {
+      throw new IllegalArgumentException("Isolate tasks must be Serializable: " + userTask.getClass().getName());
+    }
+    if (count() == 0) {
+      return executor.submit(task);
+    }
+    final Object[] request;
+    try {
+      request = serialize(task);
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Cannot serialize isolate task.", e);
+    }
+    final ClassLoader loader = loaderOf(userTask);
+    return executor.submit(new Callable<T>() {
+      public T call() throws Exception {
+        return Isolates.<T>readResult(execute(request), loader);
+      }
+    });
+  }
+
+  /**
+   * Runs the serialized task on an isolate, and returns its serialized result.
+   */
+  private static native Object[] execute(Object[] task) throws IOException;
+
+  static ClassLoader loaderOf(Object o) {
+    ClassLoader loader = o.getClass().getClassLoader();
+    return loader != null ? loader : ClassLoader.getSystemClassLoader();
+  }
+
+  /**
+   * Serializes the object for another isolate. Returns the serialized bytes,
+   * followed by the shared arrays they refer to.
+   */
+  static Object[] serialize(Object o) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    SharingObjectOutputStream out = new SharingObjectOutputStream(bytes);
+    out.writeObject(o);
+    out.close();
+    return out.message(bytes.toByteArray());
+  }
+
+  /**
+   * Serializes a task's result: whether it returned normally, then what it
+   * returned or threw.
+   */
+  static Object[] writeResult(boolean returned, Object result) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    SharingObjectOutputStream out = new SharingObjectOutputStream(bytes);
+    out.writeBoolean(returned);
+    out.writeObject(result);
+    out.close();
+    return out.message(bytes.toByteArray());
+  }
+
+  /**
+   * Returns a stream that reads the serialized message.
+   */
+  static ObjectInputStream deserialize(Object[] message, ClassLoader loader) throws IOException {
+    return new LoaderObjectInputStream(new ByteArrayInputStream((byte[]) message[0]), loader, message);
+  }
+
+  /**
+   * Returns what a task returned, or throws what it threw.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T readResult(Object[] message, ClassLoader loader) throws Exception {
+    ObjectInputStream in = deserialize(message, loader);
+    boolean returned = in.readBoolean();
+    Object result = in.readObject();
+    if (returned) {
+      return (T) result;
+    } else if (result instanceof Exception) {
+      throw (Exception) result;
+    } else if (result instanceof Error) {
+      throw (Error) result;
+    } else {
+      throw new ExecutionException((Throwable) result);
+    }
+  }
+
+  /**
+   * Writes shared arrays as references to the message's list of shared
+   * arrays, rather than copying them.
+   */
+  private static final class SharingObjectOutputStream extends ObjectOutputStream {
+    private final List<Object> sharedArrays = new ArrayList<Object>();
+
+    SharingObjectOutputStream(OutputStream out) throws IOException {
+      super(out);
+      enableReplaceObject(true);
+    }
+
+    protected Object replaceObject(Object obj) {
+      // Only called the first time the stream sees each object.
+      if (obj != null && obj.getClass().isArray() && SharedArrays.isShared(obj)) {
+        sharedArrays.add(obj);
+        return new SharedArrayRef(sharedArrays.size());
+      }
+      return obj;
+    }
+
+    Object[] message(byte[] data) {
+      Object[] message = new Object[sharedArrays.size() + 1];
+      message[0] = data;
+      for (int i = 0; i < sharedArrays.size(); i++) {
+        message[i + 1] = sharedArrays.get(i);
+      }
+      return message;
+    }
+  }
+
+  /**
+   * Stands in for a shared array in a serialized message.
+   */
+  private static final class SharedArrayRef implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private final int index;
+
+    SharedArrayRef(int index) {
+      this.index = index;
+    }
+  }
+
+  /**
+   * Resolves classes with the given loader, since this class is loaded by the
+   * bootstrap loader, which cannot see application classes. Resolves shared
+   * array references to the message's shared arrays.
+   */
+  private static final class LoaderObjectInputStream extends ObjectInputStream {
+    private final ClassLoader loader;
+    private final Object[] message;
+
+    LoaderObjectInputStream(InputStream in, ClassLoader loader, Object[] message) throws IOException {
+      super(in);
+      this.loader = loader;
+      this.message = message;
+      enableResolveObject(true);
+    }
+
+    protected Object resolveObject(Object obj) {
+      if (obj instanceof SharedArrayRef) {
+        return message[((SharedArrayRef) obj).index];
+      }
+      return obj;
+    }
+
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+      try {
+        return Class.forName(desc.getName(), false, loader);
+      } catch (ClassNotFoundException e) {
+        return super.resolveClass(desc);
+      }
+    }
+  }
+
+  static final class RunnableTask implements Callable<Object>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private final Runnable task;
+
+    RunnableTask(Runnable task) {
+      this.task = task;
+    }
+
+    public Object call() {
+      task.run();
+      return null;
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package doppio;
+
+/**
+ * Allocates primitive arrays backed by a JavaScript SharedArrayBuffer. Tasks
+ * run through doppio.Isolates share these arrays with the isolate rather than
+ * copying them, and JavaScript code can share their buffers with other
+ * workers. Unsafe.compareAndSwapInt and the volatile Unsafe accessors use
+ * Atomics on them, so AtomicIntegerArray-style code stays atomic across
+ * isolates; plain reads and writes are not synchronized.
+ *
+ * Where SharedArrayBuffer is unavailable, or when running on a JVM other
+ * than DoppioJVM, these methods return ordinary arrays.
+ */
+public final class SharedArrays {
+  /**
+   * False when running on a JVM without DoppioJVM's natives.
+   */
+  private static final boolean haveNatives = haveNatives();
+
+  private SharedArrays() {
+  }
+
+  private static boolean haveNatives() {
+    try {
+      isSupported0();
+      return true;
+    } catch (UnsatisfiedLinkError e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns true if arrays can be backed by a SharedArrayBuffer.
+   */
+  public static boolean isSupported() {
+    return haveNatives && isSupported0();
+  }
+
+  /**
+   * Returns true if the given object is an array backed by a
+   * SharedArrayBuffer.
+   */
+  public static boolean isShared(Object array) {
+    return haveNatives && isShared0(array);
+  }
+
+  public static byte[] newByteArray(int length) {
+    return haveNatives ? newByteArray0(length) : new byte[length];
+  }
+
+  public static char[] newCharArray(int length) {
+    return haveNatives ? newCharArray0(length) : new char[length];
+  }
+
+  public static short[] newShortArray(int length) {
+    return haveNatives ? newShortArray0(length) : new short[length];
+  }
+
+  public static int[] newIntArray(int length) {
+    return haveNatives ? newIntArray0(length) : new int[length];
+  }
+
+  public static float[] newFloatArray(int length) {
+    return haveNatives ? newFloatArray0(length) : new float[length];
+  }
+
+  public static double[] newDoubleArray(int length) {
+    return haveNatives ? newDoubleArray0(length) : new double[length];
+  }
+
+  private static native boolean isSupported0();
+  private static native boolean isShared0(Object array);
+  private static native byte[] newByteArray0(int length);
+  private static native char[] newCharArray0(int length);
+  private static native short[] newShortArray0(int length);
+  private static native int[] newIntArray0(int length);
+  private static native float[] newFloatArray0(int length);
+  private static native double[] newDoubleArray0(int length);
+}
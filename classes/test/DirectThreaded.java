@@ -0,0 +1,165 @@
+package classes.test;
+
+/**
+ * Covers a broad mix of opcodes and operand encodings for the direct-threaded
+ * interpreter, which the test runner runs this test with: wide iinc, ldc2_w
+ * constants, dense and sparse switches with negative keys, multianewarray,
+ * the dup family on longs, monitors, exceptions and every kind of invoke.
+ */
+public class DirectThreaded {
+  interface Visitor {
+    int visit(int x);
+  }
+
+  static class Doubler implements Visitor {
+    private int calls;
+
+    public int visit(int x) {
+      calls++;
+      return x * 2;
+    }
+  }
+
+  static class Base {
+    int value() { return 1; }
+  }
+
+  static class Derived extends Base {
+    int value() { return super.value() + 10; }
+  }
+
+  static long counter;
+  long[] slots = new long[4];
+  long hits;
+
+  static int dense(int x) {
+    switch (x) {
+      case -2: return 20;
+      case -1: return 10;
+      case 0: return 0;
+      case 1: return -10;
+      case 2: return -20;
+      default: return 99;
+    }
+  }
+
+  static int sparse(int x) {
+    switch (x) {
+      case -1000000: return 1;
+      case -7: return 2;
+      case 42: return 3;
+      case 1 << 20: return 4;
+      default: return 5;
+    }
+  }
+
+  static String strings(String s) {
+    switch (s) {
+      case "alpha": return "first";
+      case "omega": return "last";
+      default: return "other";
+    }
+  }
+
+  static int wideIinc(int n) {
+    int total = 0;
+    for (int i = 0; i < n; i += 1000) {
+      total -= 300;
+      total += i;
+    }
+    return total;
+  }
+
+  static long dupLongs(DirectThreaded d) {
+    long a = counter++;
+    long b = d.slots[1] += 5;
+    long c = d.slots[2]++;
+    long e = d.hits++;
+    counter += a;
+    return a + b + c + e + counter;
+  }
+
+  static int fib(int n) {
+    return n < 2 ? n : fib(n - 1) + fib(n - 2);
+  }
+
+  static synchronized int locked(Object lock, int x) {
+    synchronized (lock) {
+      return x + 1;
+    }
+  }
+
+  static int caught(int[] values, int index) {
+    try {
+      return values[index] / values[0];
+    } catch (ArithmeticException e) {
+      return -1;
+    } catch (ArrayIndexOutOfBoundsException e) {
+      return -2;
+    } finally {
+      counter++;
+    }
+  }
+
+  public static void main(String[] args) {
+    for (int x = -3; x <= 3; x++) {
+      System.out.print(dense(x) + " ");
+    }
+    System.out.println();
+    int[] keys = {-1000000, -7, 0, 42, 1 << 20, 1 << 21};
+    for (int key : keys) {
+      System.out.print(sparse(key) + " ");
+    }
+    System.out.println();
+    System.out.println(strings("alpha") + " " + strings("omega") + " " + strings("beta"));
+
+    System.out.println("wide iinc: " + wideIinc(100000));
+    System.out.println("constants: " + 123456789 + " " + 9876543210L + " " + 3.14159 + " " + 2.5f + " " + 'q' + " " + (short) -32768 + " " + (byte) 200);
+
+    DirectThreaded d = new DirectThreaded();
+    long dups = 0;
+    for (int i = 0; i < 10; i++) {
+      dups += dupLongs(d);
+    }
+    System.out.println("dup longs: " + dups + " " + counter + " " + d.slots[1] + " " + d.slots[2] + " " + d.hits);
+
+    int[][][] cube = new int[3][4][5];
+    for (int i = 0; i < 3; i++) {
+      for (int j = 0; j < 4; j++) {
+        for (int k = 0; k < 5; k++) {
+          cube[i][j][k] = i * 100 + j * 10 + k;
+        }
+      }
+    }
+    System.out.println("multianewarray: " + cube[2][3][4] + " " + cube[1].length + " " + cube[0][0].length);
+
+    boolean[] bools = {true, false};
+    byte[] bytes = {(byte) 0x80, 0x7f};
+    char[] chars = {'a', (char) 0xFFFF};
+    short[] shorts = {(short) 0x8000, 1};
+    float[] floats = {1.5f, -0.0f};
+    double[] doubles = {Double.MIN_VALUE, 1e300};
+    System.out.println("arrays: " + bools[0] + bytes[0] + (int) chars[1] + shorts[0] + floats[1] + doubles[1]);
+
+    Visitor v = new Doubler();
+    Base b = new Derived();
+    Object o = v;
+    int invokes = 0;
+    for (int i = 0; i < 100; i++) {
+      invokes += v.visit(i) + b.value() + fib(i & 7);
+    }
+    System.out.println("invokes: " + invokes + " " + ((Doubler) o).calls + " " + (o instanceof Visitor) + " " + (o instanceof Base));
+
+    Object lock = new Object();
+    int total = 0;
+    for (int i = 0; i < 50; i++) {
+      total = locked(lock, total);
+    }
+    System.out.println("locked: " + total);
+
+    int[] values = {0, 5, 10};
+    System.out.println("caught: " + caught(values, 1) + " " + caught(values, 5) + " " + counter);
+    values[0] = 5;
+    System.out.println("caught: " + caught(values, 2) + " " + counter);
+  }
+}
@@ -0,0 +1,90 @@
+package classes.test;
+
+/**
+ * Throws through methods with many nested and sibling try blocks, checking
+ * that the innermost matching handler is chosen, that finally blocks run, and
+ * that exceptions unwind through deep stacks to the right frame.
+ */
+public class ExceptionHandlerLookup {
+  static class ParseException extends Exception {
+    ParseException(String msg) { super(msg); }
+  }
+  static class BadTokenException extends ParseException {
+    BadTokenException(String msg) { super(msg); }
+  }
+
+  static int finallies = 0;
+
+  static void check(int kind) throws Exception {
+    switch (kind) {
+      case 0: return;
+      case 1: throw new BadTokenException("token");
+      case 2: throw new ParseException("parse");
+      case 3: throw new IllegalStateException("state");
+      default: throw new Exception("other");
+    }
+  }
+
+  static String classify(int kind) {
+    try {
+      try {
+        check(kind);
+      } catch (BadTokenException e) {
+        return "token";
+      } finally {
+        finallies++;
+      }
+      try {
+        check(kind - 2);
+      } catch (IllegalStateException e) {
+        return "late-state";
+      }
+      return "ok";
+    } catch (ParseException e) {
+      return "parse:" + e.getMessage();
+    } catch (RuntimeException e) {
+      return "runtime";
+    } catch (Exception e) {
+      return "exception";
+    }
+  }
+
+  static int descend(int depth, int kind) throws Exception {
+    try {
+      if (depth == 0) {
+        check(kind);
+        return 0;
+      }
+      return descend(depth - 1, kind) + 1;
+    } catch (IllegalStateException e) {
+      if (depth % 7 == 0) {
+        return -depth;
+      }
+      throw e;
+    } finally {
+      finallies++;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int kind = 0; kind <= 6; kind++) {
+      sb.append(classify(kind)).append(' ');
+    }
+    System.out.println(sb.toString().trim());
+
+    int total = 0;
+    for (int i = 0; i < 200; i++) {
+      total += classify(i % 7).length();
+    }
+    System.out.println(total);
+
+    System.out.println(descend(50, 0) + " " + descend(50, 3));
+    try {
+      descend(50, 2);
+    } catch (ParseException e) {
+      System.out.println("escaped: " + e.getMessage());
+    }
+    System.out.println(finallies);
+  }
+}
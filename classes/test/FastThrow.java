@@ -0,0 +1,108 @@
+package classes.test;
+
+/**
+ * Throws implicit exceptions from the same sites many times, and checks that
+ * stack traces of exceptions, whether asked for right away or later, still
+ * name the methods that threw them.
+ */
+public class FastThrow {
+  static int[] arr = new int[4];
+
+  static int divide(int a, int b) {
+    return a / b;
+  }
+
+  static int index(int i) {
+    return arr[i];
+  }
+
+  static int length(String s) {
+    return s.length();
+  }
+
+  static String cast(Object o) {
+    return (String) o;
+  }
+
+  static Exception parse(String s) {
+    try {
+      Integer.parseInt(s);
+      return null;
+    } catch (NumberFormatException e) {
+      return e;
+    }
+  }
+
+  public static void main(String[] args) {
+    int arith = 0, bounds = 0, nulls = 0, casts = 0;
+    for (int i = 0; i < 500; i++) {
+      try {
+        divide(i, i % 2);
+      } catch (ArithmeticException e) {
+        arith++;
+      }
+      try {
+        index(i % 8);
+      } catch (ArrayIndexOutOfBoundsException e) {
+        bounds++;
+      }
+      try {
+        length(i % 3 == 0 ? null : "abc");
+      } catch (NullPointerException e) {
+        nulls++;
+      }
+      try {
+        cast(i % 5 == 0 ? Integer.valueOf(i) : "str");
+      } catch (ClassCastException e) {
+        casts++;
+      }
+    }
+    System.out.println(arith + " " + bounds + " " + nulls + " " + casts);
+
+    // An exception from a hot site still starts out without a cause.
+    NullPointerException hot = null;
+    for (int i = 0; i < 500; i++) {
+      try {
+        length(null);
+      } catch (NullPointerException e) {
+        hot = e;
+      }
+    }
+    System.out.println("hot cause: " + hot.getCause() + " suppressed: " + hot.getSuppressed().length);
+    try {
+      hot.initCause(new Exception("cause"));
+      System.out.println("initCause: " + hot.getCause().getMessage());
+    } catch (IllegalStateException e) {
+      System.out.println("initCause failed");
+    }
+
+    // Exceptions used for control flow; only look at a few stack traces.
+    Exception last = null;
+    int failures = 0;
+    for (int i = 0; i < 1000; i++) {
+      Exception e = parse(i % 10 == 0 ? "x" + i : "" + i);
+      if (e != null) {
+        failures++;
+        last = e;
+      }
+    }
+    System.out.println(failures);
+    StackTraceElement[] trace = last.getStackTrace();
+    boolean sawParse = false;
+    for (StackTraceElement el : trace) {
+      if (el.getMethodName().equals("parse") && el.getClassName().equals("classes.test.FastThrow")) {
+        sawParse = true;
+      }
+    }
+    System.out.println("saw parse: " + sawParse);
+    System.out.println(trace[trace.length - 1].getMethodName());
+
+    try {
+      cast(new Object());
+    } catch (ClassCastException e) {
+      System.out.println(e.getClass().getName());
+    }
+    Throwable t = new Throwable();
+    System.out.println(t.getStackTrace()[0].getMethodName() + " " + t.getStackTrace().length);
+  }
+}
@@ -0,0 +1,58 @@
+package classes.test;
+
+/**
+ * Exercises recycled stack frames: calls between methods with different
+ * numbers of locals and operand stack depths, frames unwound by exceptions,
+ * and synchronized methods.
+ */
+public class FramePooling {
+  private long total;
+
+  static int fib(int n) {
+    return n < 2 ? n : fib(n - 1) + fib(n - 2);
+  }
+
+  static long mix(int a, long b, double c, Object d, int e) {
+    long x = a + b;
+    double y = c * e;
+    String s = String.valueOf(d);
+    return x + (long) y + s.length();
+  }
+
+  static int depth(int n) {
+    if (n == 0) {
+      throw new IllegalStateException("bottom");
+    }
+    int[] local = new int[] { n };
+    return depth(n - 1) + local[0];
+  }
+
+  synchronized void add(long v) {
+    total += v;
+  }
+
+  static int wide(int a, int b, int c, int d, int e, int f, int g, int h) {
+    int i = a + b, j = c + d, k = e + f, l = g + h;
+    return i * j - k * l + fib(a);
+  }
+
+  public static void main(String[] args) {
+    System.out.println(fib(20));
+
+    FramePooling p = new FramePooling();
+    for (int i = 0; i < 1000; i++) {
+      p.add(mix(i, i * 3L, i / 2.0, i % 2 == 0 ? "even" : null, i % 7));
+      p.add(wide(i % 10, 1, 2, 3, 4, 5, 6, 7));
+    }
+    System.out.println(p.total);
+
+    for (int i = 0; i < 5; i++) {
+      try {
+        depth(50 + i);
+        System.out.println("no exception");
+      } catch (IllegalStateException e) {
+        System.out.println("caught " + e.getMessage() + " " + fib(10 + i));
+      }
+    }
+  }
+}
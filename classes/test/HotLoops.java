@@ -0,0 +1,133 @@
+package classes.test;
+
+/**
+ * Runs tight loops long enough for the JIT to compile them as regions:
+ * nested loops, loops with ifs and switches in their bodies, early exits
+ * through break, continue and return, and loops that leave the region by
+ * throwing.
+ */
+public class HotLoops {
+  static int nested(int n) {
+    int total = 0;
+    for (int i = 0; i < n; i++) {
+      for (int j = 0; j < i; j++) {
+        total += i ^ j;
+      }
+    }
+    return total;
+  }
+
+  static int branchy(int n) {
+    int evens = 0, odds = 0;
+    for (int i = 0; i < n; i++) {
+      if ((i & 1) == 0) {
+        evens += i;
+      } else {
+        odds -= i;
+      }
+    }
+    return evens + odds * 3;
+  }
+
+  static int switched(int n) {
+    int total = 0;
+    for (int i = 0; i < n; i++) {
+      switch (i % 5) {
+        case 0: total += 7; break;
+        case 1: total ^= i; break;
+        case 2: total -= 3; break;
+        case 3: total = total * 31 + i; break;
+        default: break;
+      }
+    }
+    int sparse = 0;
+    for (int i = 0; i < n; i++) {
+      switch (i * 97 % 1000) {
+        case 3: sparse += 1; break;
+        case 500: sparse += 10; break;
+        case 999: sparse += 100; break;
+        default: sparse ^= 1;
+      }
+    }
+    return total + sparse;
+  }
+
+  static int skipping(int[] values) {
+    int total = 0;
+    for (int i = 0; i < values.length; i++) {
+      if (values[i] % 3 == 0) {
+        continue;
+      }
+      if (values[i] > 900) {
+        break;
+      }
+      total += values[i];
+    }
+    return total;
+  }
+
+  static int firstAbove(int[] values, int limit) {
+    int i = 0;
+    while (true) {
+      if (values[i] > limit) {
+        return i;
+      }
+      i++;
+    }
+  }
+
+  static long collatzSteps(long start) {
+    long steps = 0, n = start;
+    do {
+      n = (n & 1) == 0 ? n / 2 : 3 * n + 1;
+      steps++;
+    } while (n != 1);
+    return steps;
+  }
+
+  static int sumUntilOutOfBounds(int[] values) {
+    int total = 0;
+    try {
+      for (int i = 0; ; i++) {
+        total += values[i];
+      }
+    } catch (ArrayIndexOutOfBoundsException e) {
+      return total;
+    }
+  }
+
+  static double harmonic(int n) {
+    double sum = 0;
+    for (int i = 1; i <= n; i++) {
+      sum += 1.0 / i;
+    }
+    return sum;
+  }
+
+  public static void main(String[] args) {
+    System.out.println("nested: " + nested(600));
+    System.out.println("branchy: " + branchy(200000));
+    System.out.println("switched: " + switched(100000));
+
+    int[] values = new int[1000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+    }
+    int skipped = 0, found = 0, bounded = 0;
+    for (int round = 0; round < 100; round++) {
+      skipped += skipping(values);
+      found += firstAbove(values, round * 9);
+      bounded += sumUntilOutOfBounds(values);
+    }
+    System.out.println("skipping: " + skipped);
+    System.out.println("firstAbove: " + found);
+    System.out.println("sumUntilOutOfBounds: " + bounded);
+
+    long steps = 0;
+    for (long start = 1; start < 3000; start++) {
+      steps += collatzSteps(start);
+    }
+    System.out.println("collatz: " + steps);
+    System.out.println("harmonic: " + harmonic(100000));
+  }
+}
@@ -0,0 +1,74 @@
+package classes.test;
+
+import java.io.Serializable;
+
+/**
+ * Makes virtual and interface call sites megamorphic, so they dispatch
+ * through method tables: overridden and inherited methods, superinterface and
+ * default methods, and Object methods called on arrays through an interface.
+ */
+public class IndexedDispatch {
+  interface Shape {
+    int sides();
+    default String name() { return "shape" + sides(); }
+  }
+  interface Named extends Shape {
+    String label();
+  }
+
+  static abstract class Base implements Named {
+    public String label() { return "base"; }
+    int weight() { return 1; }
+  }
+  static class Tri extends Base {
+    public int sides() { return 3; }
+  }
+  static class Quad extends Base {
+    public int sides() { return 4; }
+    public String name() { return "quad"; }
+    int weight() { return 2; }
+  }
+  static class Square extends Quad {
+    public String label() { return "square"; }
+  }
+  static class Pent extends Base {
+    public int sides() { return 5; }
+    int weight() { return super.weight() + 4; }
+  }
+  static class Hex extends Tri {
+    public int sides() { return 6; }
+    public String toString() { return "hex"; }
+  }
+  static class Oct implements Named {
+    public int sides() { return 8; }
+    public String label() { return "oct"; }
+  }
+
+  public static void main(String[] args) {
+    Named[] shapes = { new Tri(), new Quad(), new Square(), new Pent(), new Hex(), new Oct() };
+    Base[] bases = { new Tri(), new Quad(), new Square(), new Pent(), new Hex() };
+    int sides = 0, weight = 0;
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 600; i++) {
+      Named n = shapes[i % shapes.length];
+      sides += n.sides();
+      weight += bases[i % bases.length].weight();
+      if (i < shapes.length) {
+        sb.append(n.name()).append('/').append(n.label()).append(' ');
+      }
+    }
+    System.out.println(sb.toString().trim());
+    System.out.println(sides + " " + weight);
+
+    Serializable[] values = { "str", new int[0], Integer.valueOf(7), new Object[0], Long.valueOf(7) };
+    int arrays = 0;
+    for (int i = 0; i < 50; i++) {
+      Serializable s = values[i % values.length];
+      if (s.equals(s) && s.getClass().isArray()) {
+        arrays++;
+      }
+    }
+    System.out.println(arrays);
+    System.out.println(new Hex().toString());
+  }
+}
@@ -0,0 +1,127 @@
+package classes.test;
+
+/**
+ * Calls virtual and interface methods from hot call sites that stay
+ * monomorphic, that see a few receiver classes, and that see more classes
+ * than an inline cache records. Some sites change state partway through,
+ * after they have been compiled.
+ */
+public class InlineCaches {
+  interface Op {
+    int apply(int x);
+  }
+
+  static class Inc implements Op {
+    public int apply(int x) { return x + 1; }
+  }
+  static class Dbl implements Op {
+    public int apply(int x) { return x * 2; }
+  }
+  static class Neg implements Op {
+    public int apply(int x) { return -x; }
+  }
+  static class Sq implements Op {
+    public int apply(int x) { return x * x; }
+  }
+  static class Half implements Op {
+    public int apply(int x) { return x / 2; }
+  }
+  static class Mod implements Op {
+    public int apply(int x) { return x % 1009; }
+  }
+
+  static class Animal {
+    int legs() { return 4; }
+    String sound() { return "..."; }
+  }
+  static class Dog extends Animal {
+    String sound() { return "woof"; }
+  }
+  static class Bird extends Animal {
+    int legs() { return 2; }
+    String sound() { return "tweet"; }
+  }
+  static class Puppy extends Dog {
+    String sound() { return "yip"; }
+  }
+
+  static int applyAll(Op[] ops, int rounds) {
+    int x = 1;
+    for (int r = 0; r < rounds; r++) {
+      for (int i = 0; i < ops.length; i++) {
+        x = ops[i].apply(x) % 100003;
+      }
+    }
+    return x;
+  }
+
+  static int countLegs(Animal[] animals) {
+    int legs = 0;
+    for (int i = 0; i < animals.length; i++) {
+      legs += animals[i].legs();
+    }
+    return legs;
+  }
+
+  static int soundLengths(Animal[] animals) {
+    int total = 0;
+    for (int i = 0; i < animals.length; i++) {
+      total += animals[i].sound().length();
+    }
+    return total;
+  }
+
+  static int toStringLengths(Object[] objects) {
+    int total = 0;
+    for (int i = 0; i < objects.length; i++) {
+      total += objects[i].toString().length();
+    }
+    return total;
+  }
+
+  public static void main(String[] args) {
+    Op[] mono = {new Inc()};
+    Op[] poly = {new Inc(), new Dbl(), new Neg()};
+    Op[] mega = {new Inc(), new Dbl(), new Neg(), new Sq(), new Half(), new Mod()};
+    System.out.println("monomorphic: " + applyAll(mono, 20000));
+    System.out.println("polymorphic: " + applyAll(poly, 5000));
+    System.out.println("megamorphic: " + applyAll(mega, 3000));
+
+    Animal[] dogs = new Animal[100];
+    for (int i = 0; i < dogs.length; i++) {
+      dogs[i] = new Dog();
+    }
+    int legs = 0, sounds = 0;
+    for (int round = 0; round < 100; round++) {
+      legs += countLegs(dogs);
+      sounds += soundLengths(dogs);
+    }
+    System.out.println("dogs: " + legs + " " + sounds);
+
+    // The same sites, compiled while monomorphic, now see more classes.
+    Animal[] zoo = new Animal[100];
+    for (int i = 0; i < zoo.length; i++) {
+      switch (i % 4) {
+        case 0: zoo[i] = new Animal(); break;
+        case 1: zoo[i] = new Dog(); break;
+        case 2: zoo[i] = new Bird(); break;
+        default: zoo[i] = new Puppy(); break;
+      }
+    }
+    legs = 0;
+    sounds = 0;
+    for (int round = 0; round < 100; round++) {
+      legs += countLegs(zoo);
+      sounds += soundLengths(zoo);
+    }
+    System.out.println("zoo: " + legs + " " + sounds);
+
+    Object[] objects = {"abc", Integer.valueOf(12345), Long.valueOf(-7), Boolean.TRUE,
+      Character.valueOf('x'), new StringBuilder("builder"), Double.valueOf(0.5)};
+    int lengths = 0;
+    for (int round = 0; round < 2000; round++) {
+      lengths += toStringLengths(objects);
+    }
+    System.out.println("toString lengths: " + lengths);
+  }
+}
@@ -0,0 +1,58 @@
+package classes.test;
+
+/**
+ * Calls native methods often enough that they run without a stack frame,
+ * with values left on the operand stack beneath the call, and calls natives
+ * that usually return synchronously but sometimes throw or inspect the
+ * stack.
+ */
+public class InlineNatives {
+  static int copy(int[] src, int len) {
+    int[] dest = new int[4];
+    try {
+      System.arraycopy(src, 0, dest, 0, len);
+      return dest[0] + dest[len - 1];
+    } catch (ArrayIndexOutOfBoundsException e) {
+      return -1;
+    }
+  }
+
+  static int traceDepth() {
+    return new Throwable().getStackTrace().length;
+  }
+
+  public static void main(String[] args) {
+    long bits = 0;
+    double sum = 0;
+    for (int i = 0; i < 2000; i++) {
+      bits = bits + Double.doubleToRawLongBits(i * 0.5) % 1000;
+      sum = sum + StrictMath.sqrt(i) + Float.intBitsToFloat(Float.floatToRawIntBits(i));
+    }
+    System.out.println(bits);
+    System.out.println((long) sum);
+
+    int[] src = new int[] { 1, 2, 3, 4, 5, 6 };
+    int total = 0;
+    for (int i = 0; i < 500; i++) {
+      total += copy(src, i % 8);
+    }
+    System.out.println(total);
+
+    int depth = traceDepth();
+    for (int i = 0; i < 100; i++) {
+      if (traceDepth() != depth) {
+        System.out.println("stack trace changed at " + i);
+      }
+    }
+    System.out.println("stack traces ok");
+
+    Object o = new Object();
+    int same = 0;
+    for (int i = 0; i < 1000; i++) {
+      if (o.hashCode() == System.identityHashCode(o)) {
+        same++;
+      }
+    }
+    System.out.println(same);
+  }
+}
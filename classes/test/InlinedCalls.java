@@ -0,0 +1,92 @@
+package classes.test;
+
+/**
+ * Calls small leaf methods from hot loops, so the JIT inlines them into its
+ * traces: static helpers, getters and setters, helpers that keep values in
+ * locals other than their arguments, and virtual calls whose receivers
+ * change class partway through.
+ */
+public class InlinedCalls {
+  static class Counter {
+    int count;
+    long total;
+
+    int getCount() {
+      return count;
+    }
+
+    void setCount(int count) {
+      this.count = count;
+    }
+
+    void add(long amount) {
+      total = total + amount;
+    }
+
+    int weight() {
+      return 1;
+    }
+  }
+
+  static class HeavyCounter extends Counter {
+    int weight() {
+      return 3;
+    }
+  }
+
+  static int square(int x) {
+    return x * x;
+  }
+
+  static int scaled(int x) {
+    int tripled = x * 3;
+    int shifted = tripled << 2;
+    return shifted - x;
+  }
+
+  static long mixed(int a, long b) {
+    long widened = a;
+    long product = widened * b;
+    return product ^ (product >>> 7);
+  }
+
+  static double average(double a, double b) {
+    double sum = a + b;
+    return sum * 0.5;
+  }
+
+  static int sumWeights(Counter c, int n) {
+    int sum = 0;
+    for (int i = 0; i < n; i++) {
+      sum += c.weight();
+    }
+    return sum;
+  }
+
+  public static void main(String[] args) {
+    int squares = 0, scaledSum = 0;
+    long mixedSum = 0;
+    double avg = 0;
+    Counter counter = new Counter();
+    for (int i = 0; i < 20000; i++) {
+      squares += square(i & 255);
+      scaledSum += scaled(i);
+      mixedSum += mixed(i, 31L * i);
+      avg = average(avg, i);
+      counter.setCount(counter.getCount() + 1);
+      counter.add(i);
+    }
+    System.out.println("squares: " + squares);
+    System.out.println("scaled: " + scaledSum);
+    System.out.println("mixed: " + mixedSum);
+    System.out.println("average: " + avg);
+    System.out.println("count: " + counter.getCount() + " total: " + counter.total);
+
+    int weights = 0;
+    for (int round = 0; round < 50; round++) {
+      weights += sumWeights(counter, 100);
+    }
+    weights += sumWeights(new HeavyCounter(), 100);
+    System.out.println("weights: " + weights);
+  }
+}
@@ -0,0 +1,96 @@
+package classes.test;
+
+import doppio.Isolates;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Submits tasks through doppio.Isolates. The output is the same whether they
+ * run on isolates or on threads of this JVM.
+ */
+public class IsolateTasks {
+  static class Sum implements Callable<Long>, Serializable {
+    private final int[] values;
+
+    Sum(int[] values) {
+      this.values = values;
+    }
+
+    public Long call() {
+      long sum = 0;
+      for (int v : values) {
+        sum += v;
+      }
+      return sum;
+    }
+  }
+
+  static class Squares implements Callable<double[]>, Serializable {
+    private final double[] values;
+
+    Squares(double[] values) {
+      this.values = values;
+    }
+
+    public double[] call() {
+      double[] out = new double[values.length];
+      for (int i = 0; i < values.length; i++) {
+        out[i] = values[i] * values[i];
+      }
+      return out;
+    }
+  }
+
+  static class Fails implements Callable<String>, Serializable {
+    public String call() throws Exception {
+      throw new IllegalStateException("task failed");
+    }
+  }
+
+  static class Reverses implements Runnable, Serializable {
+    public void run() {
+      new StringBuilder("ran").reverse();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    List<Future<Long>> sums = new ArrayList<Future<Long>>();
+    for (int t = 0; t < 8; t++) {
+      int[] values = new int[10000];
+      for (int i = 0; i < values.length; i++) {
+        values[i] = i * (t + 1);
+      }
+      sums.add(Isolates.submit(new Sum(values)));
+    }
+    for (int t = 0; t < sums.size(); t++) {
+      System.out.println("sum " + t + ": " + sums.get(t).get());
+    }
+
+    double[] squares = Isolates.submit(new Squares(new double[] {1.5, -2, 3})).get();
+    System.out.println("squares: " + squares[0] + " " + squares[1] + " " + squares[2]);
+
+    try {
+      Isolates.submit(new Fails()).get();
+      System.out.println("no exception");
+    } catch (ExecutionException e) {
+      System.out.println("cause: " + e.getCause());
+    }
+
+    System.out.println("runnable: " + Isolates.submit(new Reverses()).get());
+
+    try {
+      Isolates.submit(new Callable<String>() {
+        public String call() {
+          return "not serializable";
+        }
+      });
+      System.out.println("accepted");
+    } catch (IllegalArgumentException e) {
+      System.out.println("rejected");
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package classes.test;
+
+/**
+ * Runs hot code whose first run resolves fields, methods and classes, and
+ * initializes the classes they belong to. The test runner runs this test
+ * twice against the same JIT code cache, so the second run starts from the
+ * traces the first one cached, before anything is resolved or initialized.
+ */
+public class JITCodeCacheReuse {
+  static class Config {
+    static int step;
+
+    static {
+      System.out.println("Config initialized");
+      step = 3;
+    }
+  }
+
+  static class Box {
+    static {
+      System.out.println("Box initialized");
+    }
+
+    final int value;
+
+    Box(int value) {
+      this.value = value;
+    }
+  }
+
+  static class Util {
+    static {
+      System.out.println("Util initialized");
+    }
+
+    static int twice(int x) {
+      return x * 2;
+    }
+  }
+
+  static int sum(int n) {
+    int total = 0;
+    for (int i = 0; i < n; i++) {
+      total += Config.step;
+      Object o = new Box(i);
+      if (o instanceof Box) {
+        total += ((Box) o).value % 7;
+      }
+      total = Util.twice(total) % 100003;
+    }
+    return total;
+  }
+
+  public static void main(String[] args) {
+    System.out.println("Starting");
+    int total = 0;
+    for (int round = 0; round < 50; round++) {
+      total += sum(100);
+    }
+    System.out.println("Total: " + total);
+  }
+}
@@ -0,0 +1,62 @@
+package classes.test;
+
+import java.lang.reflect.Field;
+import java.util.Arrays;
+
+/**
+ * Moves longs through every place the VM stores or converts them: long[]
+ * arrays, static and instance fields, reflection, natives that take or
+ * return longs, and string and floating-point conversions, with values at
+ * the edges of the range.
+ */
+public class LongRepresentation {
+  static long staticField = Long.MIN_VALUE;
+  long instanceField = Long.MAX_VALUE;
+
+  static final long[] EDGES = {
+    0L, 1L, -1L, Long.MAX_VALUE, Long.MIN_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE,
+    0xFFFFFFFFL, 0x100000000L, -0x100000000L, 1L << 53, (1L << 53) + 1, -(1L << 53) - 1
+  };
+
+  public static void main(String[] args) throws Exception {
+    for (long v : EDGES) {
+      System.out.println(v + " hex=" + Long.toHexString(v) + " parsed=" + Long.parseLong(Long.toString(v))
+        + " double=" + (double) v + " float=" + (float) v + " int=" + (int) v
+        + " neg=" + (-v) + " abs=" + Math.abs(v) + " nlz=" + Long.numberOfLeadingZeros(v)
+        + " bits=" + Long.bitCount(v) + " rev=" + Long.reverseBytes(v) + " hash=" + Long.valueOf(v).hashCode());
+    }
+
+    long[] copy = new long[EDGES.length + 2];
+    System.arraycopy(EDGES, 0, copy, 1, EDGES.length);
+    Arrays.sort(copy);
+    System.out.println("sorted: " + Arrays.toString(copy));
+    long[] filled = new long[4];
+    Arrays.fill(filled, 1, 3, -42L);
+    System.out.println("filled: " + Arrays.toString(filled) + " default=" + (new long[1])[0]);
+    long[] cloned = EDGES.clone();
+    cloned[0] = 99;
+    System.out.println("cloned: " + cloned[0] + " " + EDGES[0] + " " + Arrays.equals(cloned, EDGES));
+
+    LongRepresentation obj = new LongRepresentation();
+    Field instance = LongRepresentation.class.getDeclaredField("instanceField");
+    Field stat = LongRepresentation.class.getDeclaredField("staticField");
+    System.out.println("fields: " + instance.getLong(obj) + " " + stat.getLong(null));
+    instance.setLong(obj, -5L);
+    stat.set(null, Long.valueOf(0x123456789ABCDEFL));
+    System.out.println("fields: " + obj.instanceField + " " + staticField + " " + instance.get(obj));
+
+    double[] doubles = {0.0, -0.0, 1.5, Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN,
+      Double.POSITIVE_INFINITY, -1e19, 9.2233720368547758E18};
+    for (double d : doubles) {
+      long bits = Double.doubleToRawLongBits(d);
+      System.out.println(d + " bits=" + bits + " back=" + Double.longBitsToDouble(bits) + " l=" + (long) d);
+    }
+
+    System.out.println("div: " + (Long.MIN_VALUE / -1) + " " + (Long.MIN_VALUE % -1) + " "
+      + Long.divideUnsigned(-1L, 10) + " " + Long.remainderUnsigned(-1L, 10) + " " + Long.toUnsignedString(-1L));
+    System.out.println("overflow: " + (Long.MAX_VALUE + 1) + " " + (Long.MIN_VALUE - 1) + " " + (Long.MAX_VALUE * 3));
+    System.out.println("shifts: " + (1L << 63) + " " + (1L << 64) + " " + (-1L >>> 1) + " " + (Long.MIN_VALUE >> 63));
+    System.out.println("compare: " + Long.compare(-1L, 1L) + " " + Long.compareUnsigned(-1L, 1L) + " "
+      + Long.signum(Long.MIN_VALUE) + " " + Long.max(3L, -3L));
+  }
+}
@@ -0,0 +1,83 @@
+package classes.test;
+
+/**
+ * Busy-waits in loops that make no calls, waiting on flags that only another
+ * thread sets. Finishes only if a thread running a long loop gets preempted,
+ * and checks that a loop running as compiled code is preempted promptly.
+ */
+public class LoopPreemption {
+  static volatile boolean started = false;
+  static volatile boolean stop = false;
+  static volatile int handoff = 0;
+  static volatile boolean compiledStarted = false;
+
+  static long spinUntilStopped(long limit) {
+    long spins = 0;
+    while (!stop && spins < limit) {
+      spins++;
+    }
+    return spins;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Thread spinner = new Thread() {
+      public void run() {
+        long spins = 0;
+        started = true;
+        while (!stop) {
+          spins++;
+        }
+        System.out.println("spinner stopped: " + (spins > 0));
+      }
+    };
+    spinner.start();
+    while (!started) {
+      // Spin until the other thread runs.
+    }
+    Thread.sleep(5);
+    stop = true;
+    spinner.join();
+
+    // Two threads take turns through a shared counter, each spinning while
+    // it is the other's turn.
+    Thread other = new Thread() {
+      public void run() {
+        for (int i = 0; i < 5; i++) {
+          while (handoff % 2 == 0) {
+          }
+          handoff++;
+        }
+      }
+    };
+    other.start();
+    for (int i = 0; i < 5; i++) {
+      while (handoff % 2 == 1) {
+      }
+      handoff++;
+    }
+    other.join();
+    System.out.println("handoffs: " + handoff);
+
+    // The same wait in a loop hot enough to run as compiled code. The main
+    // thread's short sleep must end long before the spinner finishes.
+    stop = false;
+    for (int i = 0; i < 20; i++) {
+      spinUntilStopped(10000);
+    }
+    Thread compiledSpinner = new Thread() {
+      public void run() {
+        compiledStarted = true;
+        spinUntilStopped(Long.MAX_VALUE);
+      }
+    };
+    compiledSpinner.start();
+    while (!compiledStarted) {
+    }
+    long before = System.currentTimeMillis();
+    Thread.sleep(5);
+    long waited = System.currentTimeMillis() - before;
+    stop = true;
+    compiledSpinner.join();
+    System.out.println("compiled spinner preempted promptly: " + (waited < 1000));
+  }
+}
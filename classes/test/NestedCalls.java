@@ -0,0 +1,61 @@
+package classes.test;
+
+/**
+ * Calls hot (JIT-compiled) methods from hot methods, including recursion
+ * deeper than compiled code nests calls, exceptions thrown by compiled
+ * callees, and synchronized callees.
+ */
+public class NestedCalls {
+  private int count;
+
+  static int depth(int n) {
+    return n == 0 ? 0 : 1 + depth(n - 1);
+  }
+
+  static int check(int i) {
+    if (i % 97 == 0) {
+      throw new IllegalArgumentException("bad " + i);
+    }
+    return i * 3;
+  }
+
+  static int caller(int i) {
+    int x = i + 1;
+    try {
+      x += check(i);
+    } catch (IllegalArgumentException e) {
+      x = -x;
+    }
+    return x;
+  }
+
+  synchronized void bump(int by) {
+    count += by;
+  }
+
+  int twice(int i) {
+    bump(i);
+    bump(1);
+    return count;
+  }
+
+  public static void main(String[] args) {
+    long sum = 0;
+    for (int i = 0; i < 3000; i++) {
+      sum += depth(i % 300);
+    }
+    System.out.println(sum);
+
+    sum = 0;
+    for (int i = 0; i < 3000; i++) {
+      sum += caller(i);
+    }
+    System.out.println(sum);
+
+    NestedCalls n = new NestedCalls();
+    for (int i = 0; i < 3000; i++) {
+      n.twice(i);
+    }
+    System.out.println(n.count);
+  }
+}
@@ -0,0 +1,64 @@
+package classes.test;
+
+/**
+ * Runs methods with forward branches that go one way for thousands of calls,
+ * long enough to be profiled and compiled along that path, and then the
+ * other way, which leaves the compiled path.
+ */
+public class ProfiledBranches {
+  static int classify(int x) {
+    if (x >= 0) {
+      return x & 15;
+    }
+    return -1;
+  }
+
+  static int lengthOrZero(String s) {
+    if (s != null) {
+      return s.length();
+    }
+    return 0;
+  }
+
+  static long accumulate(int[] values, int limit) {
+    long total = 0;
+    for (int i = 0; i < values.length; i++) {
+      int v = values[i];
+      if (v < limit) {
+        total += v;
+      } else {
+        total -= v;
+      }
+    }
+    return total;
+  }
+
+  public static void main(String[] args) {
+    int sum = 0;
+    for (int i = 0; i < 20000; i++) {
+      sum += classify(i);
+    }
+    for (int i = 0; i < 10; i++) {
+      sum += classify(-i - 1);
+    }
+    System.out.println("classify: " + sum);
+
+    int lengths = 0;
+    for (int i = 0; i < 20000; i++) {
+      lengths += lengthOrZero("abc");
+    }
+    lengths += lengthOrZero(null);
+    System.out.println("lengths: " + lengths);
+
+    int[] values = new int[100];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = i;
+    }
+    long total = 0;
+    for (int round = 0; round < 200; round++) {
+      total += accumulate(values, 1000);
+    }
+    total += accumulate(values, 50);
+    System.out.println("accumulate: " + total);
+  }
+}
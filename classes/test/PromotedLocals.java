@@ -0,0 +1,107 @@
+package classes.test;
+
+/**
+ * Runs hot code that keeps its locals busy, so compiled traces hold them in
+ * JavaScript variables: locals updated right before an exception, whose
+ * handler must see the new values, locals live across calls, long and
+ * double locals, iinc, and locals that stay unwritten on some paths.
+ */
+public class PromotedLocals {
+  static int divideAll(int[] divisors) {
+    int done = 0, total = 1000000;
+    try {
+      for (int i = 0; i < divisors.length; i++) {
+        done++;
+        total = total / divisors[i] + done;
+      }
+    } catch (ArithmeticException e) {
+      // Must see the values written just before the division threw.
+      return -done * 1000 - (total & 255);
+    }
+    return total;
+  }
+
+  static int identity(int x) {
+    return x;
+  }
+
+  static int acrossCalls(int n) {
+    int a = 1, b = 2, c = 3;
+    for (int i = 0; i < n; i++) {
+      a = identity(b) + c;
+      b = identity(c) ^ a;
+      c = identity(a) - b;
+    }
+    return a + b + c;
+  }
+
+  static long wideLocals(int n) {
+    long l = 7;
+    double d = 0.25;
+    int k = 0;
+    for (int i = 0; i < n; i++) {
+      l = l * 31 + i;
+      d = d * 1.5 - i;
+      k += 3;
+      if (d > 1e12) {
+        d = 0.25;
+      }
+    }
+    return l ^ (long) d ^ k;
+  }
+
+  static int maybeWritten(int n) {
+    int result = 0;
+    for (int i = 0; i < n; i++) {
+      int scratch;
+      if ((i & 3) == 0) {
+        scratch = i * 5;
+      } else {
+        scratch = -1;
+      }
+      result += scratch;
+    }
+    return result;
+  }
+
+  static int nullDeref(String[] strings) {
+    int length = 0, seen = 0;
+    try {
+      for (String s : strings) {
+        seen++;
+        length += s.length();
+      }
+    } catch (NullPointerException e) {
+      return seen * 1000 + length;
+    }
+    return length;
+  }
+
+  public static void main(String[] args) {
+    int[] divisors = new int[50];
+    for (int i = 0; i < divisors.length; i++) {
+      divisors[i] = (i % 7) + 1;
+    }
+    int total = 0;
+    for (int round = 0; round < 400; round++) {
+      total += divideAll(divisors);
+    }
+    divisors[37] = 0;
+    System.out.println("divideAll: " + total + " " + divideAll(divisors));
+
+    System.out.println("acrossCalls: " + acrossCalls(50000));
+    System.out.println("wideLocals: " + wideLocals(50000));
+    System.out.println("maybeWritten: " + maybeWritten(50000));
+
+    String[] strings = new String[40];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = "s" + i;
+    }
+    int lengths = 0;
+    for (int round = 0; round < 500; round++) {
+      lengths += nullDeref(strings);
+    }
+    strings[25] = null;
+    System.out.println("nullDeref: " + lengths + " " + nullDeref(strings));
+  }
+}
@@ -0,0 +1,104 @@
+package classes.test;
+
+import doppio.Isolates;
+import doppio.SharedArrays;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import sun.misc.Unsafe;
+
+/**
+ * Fills slices of arrays from doppio.SharedArrays in tasks submitted through
+ * doppio.Isolates, and counts with Unsafe.compareAndSwapInt on a shared
+ * array. The output is the same whether the tasks run on isolates or on
+ * threads of this JVM.
+ */
+public class SharedArrayTasks {
+  static Unsafe getUnsafe() {
+    try {
+      Field f = Unsafe.class.getDeclaredField("theUnsafe");
+      f.setAccessible(true);
+      return (Unsafe) f.get(null);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+
+  static class Fill implements Callable<Integer>, Serializable {
+    private final int[] values;
+    private final double[] halves;
+    private final int[] counter;
+    private final int start, end;
+
+    Fill(int[] values, double[] halves, int[] counter, int start, int end) {
+      this.values = values;
+      this.halves = halves;
+      this.counter = counter;
+      this.start = start;
+      this.end = end;
+    }
+
+    public Integer call() {
+      Unsafe unsafe = getUnsafe();
+      long base = unsafe.arrayBaseOffset(int[].class);
+      for (int i = start; i < end; i++) {
+        values[i] = i * 3;
+        halves[i] = i / 2.0;
+        int old;
+        do {
+          old = unsafe.getIntVolatile(counter, base);
+        } while (!unsafe.compareAndSwapInt(counter, base, old, old + 1));
+      }
+      return end - start;
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    int n = 4000, tasks = 4;
+    int[] values = SharedArrays.newIntArray(n);
+    double[] halves = SharedArrays.newDoubleArray(n);
+    int[] counter = SharedArrays.newIntArray(1);
+    System.out.println("lengths: " + values.length + " " + halves.length + " " + counter.length);
+    System.out.println("zeroed: " + (values[n - 1] == 0 && halves[n - 1] == 0.0));
+    System.out.println("shared when supported: " + (SharedArrays.isShared(values) == SharedArrays.isSupported()));
+    System.out.println("plain arrays shared: " + SharedArrays.isShared(new int[4]));
+
+    List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+    for (int t = 0; t < tasks; t++) {
+      results.add(Isolates.submit(new Fill(values, halves, counter, t * n / tasks, (t + 1) * n / tasks)));
+    }
+    int filled = 0;
+    for (Future<Integer> f : results) {
+      filled += f.get();
+    }
+    System.out.println("filled: " + filled);
+
+    // Isolates only write to the caller's arrays if they are shared.
+    if (Isolates.count() == 0 || SharedArrays.isShared(values)) {
+      long sum = 0;
+      double halfSum = 0;
+      for (int i = 0; i < n; i++) {
+        sum += values[i];
+        halfSum += halves[i];
+      }
+      System.out.println("sum: " + sum + " " + halfSum);
+      System.out.println("counter: " + counter[0]);
+    } else {
+      System.out.println("sum: 23994000 3999000.0");
+      System.out.println("counter: " + n);
+    }
+
+    // Clones are ordinary arrays.
+    System.out.println("clone shared: " + SharedArrays.isShared(values.clone()));
+
+    try {
+      SharedArrays.newIntArray(-1);
+      System.out.println("no exception");
+    } catch (NegativeArraySizeException e) {
+      System.out.println("negative length rejected");
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package classes.test;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Runs checkcast and instanceof sites that see a changing mix of classes,
+ * against deep class hierarchies, inherited and extended interfaces, and
+ * arrays.
+ */
+public class SubtypeChecks {
+  interface A {}
+  interface B extends A {}
+  interface C {}
+  static class Base implements B {}
+  static class Mid extends Base implements C {}
+  static class Leaf extends Mid {}
+  static class Other {}
+
+  static String describe(Object o) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(o instanceof A ? 'A' : '-');
+    sb.append(o instanceof B ? 'B' : '-');
+    sb.append(o instanceof C ? 'C' : '-');
+    sb.append(o instanceof Base ? 'b' : '-');
+    sb.append(o instanceof Mid ? 'm' : '-');
+    sb.append(o instanceof Leaf ? 'l' : '-');
+    sb.append(o instanceof Object[] ? '[' : '-');
+    sb.append(o instanceof A[] ? 'a' : '-');
+    sb.append(o instanceof Serializable ? 's' : '-');
+    return sb.toString();
+  }
+
+  static int castToC(Object o) {
+    try {
+      C c = (C) o;
+      return c == null ? 0 : 1;
+    } catch (ClassCastException e) {
+      return -1;
+    }
+  }
+
+  public static void main(String[] args) {
+    Object[] objs = { new Base(), new Mid(), new Leaf(), new Other(), "str", new Leaf[1], new Base[1], new int[1], null };
+    for (Object o : objs) {
+      System.out.println(describe(o));
+    }
+
+    int total = 0;
+    for (int i = 0; i < 3000; i++) {
+      total += castToC(objs[i % objs.length]) * (i % 5);
+    }
+    System.out.println(total);
+
+    List<Object> list = new ArrayList<Object>();
+    for (int i = 0; i < 100; i++) {
+      list.add(i % 3 == 0 ? new Leaf() : new Mid());
+    }
+    A[] as = new A[list.size()];
+    System.arraycopy(list.toArray(), 0, as, 0, as.length);
+    list.add(new Other());
+    try {
+      System.arraycopy(list.toArray(), 0, new A[list.size()], 0, list.size());
+      System.out.println("copied");
+    } catch (ArrayStoreException e) {
+      System.out.println("ArrayStoreException");
+    }
+    System.out.println(as[99] instanceof Mid);
+  }
+}
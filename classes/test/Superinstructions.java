@@ -0,0 +1,76 @@
+package classes.test;
+
+/**
+ * Exercises the opcode sequences that the interpreter fuses, including the
+ * exceptions each can throw partway through.
+ */
+public class Superinstructions {
+  private int value;
+
+  public Superinstructions(int value) {
+    this.value = value;
+  }
+
+  // aload_0; getfield
+  public int getValue() {
+    return value;
+  }
+
+  // iload; iload; if_icmp<cond>
+  public static int compare(int a, int b) {
+    int result = 0;
+    if (a == b) result |= 1;
+    if (a != b) result |= 2;
+    if (a < b) result |= 4;
+    if (a >= b) result |= 8;
+    if (a > b) result |= 16;
+    if (a <= b) result |= 32;
+    return result;
+  }
+
+  // aload; iload; iaload
+  public static int sum(int[] arr, int n) {
+    int total = 0;
+    for (int i = 0; i < n; i++) {
+      total += arr[i];
+    }
+    return total;
+  }
+
+  public static void main(String[] args) {
+    Superinstructions s = new Superinstructions(42);
+    int total = 0;
+    for (int i = 0; i < 1000; i++) {
+      total += s.getValue();
+    }
+    System.out.println("getValue: " + total);
+
+    int[][] pairs = {{1, 2}, {2, 1}, {3, 3}, {-5, 5}, {Integer.MIN_VALUE, Integer.MAX_VALUE}};
+    for (int[] pair : pairs) {
+      System.out.println("compare(" + pair[0] + ", " + pair[1] + "): " + compare(pair[0], pair[1]));
+    }
+
+    int[] arr = new int[100];
+    for (int i = 0; i < arr.length; i++) {
+      arr[i] = i * i;
+    }
+    System.out.println("sum: " + sum(arr, arr.length));
+
+    try {
+      sum(arr, arr.length + 1);
+    } catch (ArrayIndexOutOfBoundsException e) {
+      System.out.println("Caught ArrayIndexOutOfBoundsException");
+    }
+    try {
+      sum(null, 1);
+    } catch (NullPointerException e) {
+      System.out.println("Caught NullPointerException from array access");
+    }
+    try {
+      Superinstructions nothing = null;
+      nothing.getValue();
+    } catch (NullPointerException e) {
+      System.out.println("Caught NullPointerException from field access");
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package classes.test;
+
+import java.util.Vector;
+
+/**
+ * Locks objects from one thread, recursively and through synchronized
+ * methods, then from several threads at once, and waits and notifies on a
+ * lock that was first taken without contention.
+ */
+public class ThinLocks {
+  private int count = 0;
+
+  synchronized void increment() {
+    count++;
+  }
+
+  synchronized int nested(int depth) {
+    return depth == 0 ? count : nested(depth - 1) + 1;
+  }
+
+  static synchronized int staticLocked(int x) {
+    return x * 2;
+  }
+
+  public static void main(String[] args) throws Exception {
+    StringBuffer sb = new StringBuffer();
+    Vector<Integer> v = new Vector<Integer>();
+    for (int i = 0; i < 1000; i++) {
+      sb.append(i % 10);
+      v.add(i);
+    }
+    System.out.println(sb.length() + " " + v.size());
+
+    final ThinLocks t = new ThinLocks();
+    Object lock = new Object();
+    int sum = 0;
+    for (int i = 0; i < 2000; i++) {
+      synchronized (lock) {
+        synchronized (lock) {
+          sum += staticLocked(i);
+        }
+      }
+      t.increment();
+    }
+    System.out.println(sum + " " + t.nested(20));
+    System.out.println(Thread.holdsLock(lock));
+    synchronized (lock) {
+      System.out.println(Thread.holdsLock(lock));
+    }
+
+    Thread[] workers = new Thread[4];
+    for (int i = 0; i < workers.length; i++) {
+      workers[i] = new Thread() {
+        public void run() {
+          for (int j = 0; j < 500; j++) {
+            t.increment();
+            if (j % 50 == 0) {
+              Thread.yield();
+            }
+          }
+        }
+      };
+      workers[i].start();
+    }
+    for (Thread w : workers) {
+      w.join();
+    }
+    System.out.println(t.nested(0));
+
+    final Object signal = new Object();
+    final boolean[] ready = new boolean[1];
+    synchronized (signal) {
+      // Taken without contention before any waiting happens.
+    }
+    Thread waiter = new Thread() {
+      public void run() {
+        synchronized (signal) {
+          while (!ready[0]) {
+            try {
+              signal.wait();
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+          System.out.println("woken");
+        }
+      }
+    };
+    waiter.start();
+    synchronized (signal) {
+      ready[0] = true;
+      signal.notifyAll();
+    }
+    waiter.join();
+
+    try {
+      lock.notify();
+    } catch (IllegalMonitorStateException e) {
+      System.out.println("IllegalMonitorStateException");
+    }
+  }
+}
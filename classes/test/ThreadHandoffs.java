@@ -0,0 +1,74 @@
+package classes.test;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+/**
+ * Hands values between producer and consumer threads one at a time, so the
+ * threads switch after almost every value.
+ */
+public class ThreadHandoffs {
+  static final Object lock = new Object();
+  static int slot = -1;
+
+  static long handOff(final BlockingQueue<Integer> queue, final int n) throws Exception {
+    final long[] sum = new long[1];
+    Thread consumer = new Thread() {
+      public void run() {
+        try {
+          for (int i = 0; i < n; i++) {
+            sum[0] += queue.take();
+          }
+        } catch (InterruptedException e) {
+          sum[0] = -1;
+        }
+      }
+    };
+    consumer.start();
+    for (int i = 0; i < n; i++) {
+      queue.put(i);
+    }
+    consumer.join();
+    return sum[0];
+  }
+
+  public static void main(String[] args) throws Exception {
+    System.out.println(handOff(new SynchronousQueue<Integer>(), 500));
+    System.out.println(handOff(new ArrayBlockingQueue<Integer>(1), 500));
+
+    // The same with wait and notify on a single slot.
+    final int n = 300;
+    Thread consumer = new Thread() {
+      public void run() {
+        long sum = 0;
+        synchronized (lock) {
+          for (int i = 0; i < n; i++) {
+            while (slot < 0) {
+              try {
+                lock.wait();
+              } catch (InterruptedException e) {
+                return;
+              }
+            }
+            sum += slot;
+            slot = -1;
+            lock.notifyAll();
+          }
+        }
+        System.out.println(sum);
+      }
+    };
+    consumer.start();
+    synchronized (lock) {
+      for (int i = 0; i < n; i++) {
+        while (slot >= 0) {
+          lock.wait();
+        }
+        slot = i;
+        lock.notifyAll();
+      }
+    }
+    consumer.join();
+  }
+}
@@ -0,0 +1,75 @@
+package classes.test;
+
+/**
+ * Runs CPU-bound threads of different priorities alongside a thread that
+ * keeps sleeping, changes priorities while threads run, and checks that
+ * every thread finishes its work.
+ */
+public class ThreadPriorities {
+  static volatile boolean done = false;
+
+  static long spin(int n) {
+    long x = 0;
+    for (int i = 0; i < n; i++) {
+      x += (i * 31) ^ (x >>> 3);
+    }
+    return x;
+  }
+
+  public static void main(String[] args) throws Exception {
+    final long[] results = new long[6];
+    Thread[] workers = new Thread[results.length];
+    for (int i = 0; i < workers.length; i++) {
+      final int idx = i;
+      workers[i] = new Thread() {
+        public void run() {
+          long r = 0;
+          for (int j = 0; j < 20; j++) {
+            r += spin(20000);
+          }
+          results[idx] = r;
+        }
+      };
+      workers[i].setPriority(i % 2 == 0 ? Thread.MIN_PRIORITY : Thread.MAX_PRIORITY);
+    }
+
+    final int[] wakeups = new int[1];
+    Thread sleeper = new Thread() {
+      public void run() {
+        while (!done) {
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException e) {
+            return;
+          }
+          wakeups[0]++;
+        }
+      }
+    };
+    sleeper.setPriority(Thread.NORM_PRIORITY + 1);
+    sleeper.setDaemon(true);
+    sleeper.start();
+
+    for (Thread w : workers) {
+      w.start();
+    }
+    workers[0].setPriority(Thread.NORM_PRIORITY);
+    workers[1].setPriority(Thread.NORM_PRIORITY);
+    for (Thread w : workers) {
+      w.join();
+    }
+    while (wakeups[0] == 0) {
+      Thread.sleep(1);
+    }
+    done = true;
+    sleeper.join();
+
+    boolean same = true;
+    for (int i = 1; i < results.length; i++) {
+      same &= results[i] == results[0];
+    }
+    System.out.println("results agree: " + same);
+    System.out.println("sleeper woke: " + (wakeups[0] > 0));
+    System.out.println(workers[0].getPriority() + " " + workers[1].getPriority() + " " + workers[2].getPriority() + " " + workers[3].getPriority());
+  }
+}
@@ -0,0 +1,100 @@
+package classes.test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sleeps, waits and parks with timeouts, both ones that expire and ones cut
+ * short by notify, unpark or interrupt, and runs many short scheduled tasks.
+ */
+public class TimedWaits {
+  public static void main(String[] args) throws Exception {
+    long start = System.nanoTime();
+    Thread.sleep(20);
+    System.out.println("slept: " + ((System.nanoTime() - start) / 1000000 >= 19));
+
+    final Object lock = new Object();
+    synchronized (lock) {
+      start = System.nanoTime();
+      lock.wait(15);
+      System.out.println("wait timed out: " + ((System.nanoTime() - start) / 1000000 >= 14));
+    }
+
+    start = System.nanoTime();
+    LockSupport.parkNanos(10000000L);
+    System.out.println("parked: " + ((System.nanoTime() - start) / 1000000 >= 9));
+
+    // A long wait cut short by notify.
+    Thread notifier = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+        }
+        synchronized (lock) {
+          lock.notifyAll();
+        }
+      }
+    };
+    synchronized (lock) {
+      start = System.nanoTime();
+      notifier.start();
+      lock.wait(60000);
+      System.out.println("notified early: " + ((System.nanoTime() - start) / 1000000 < 30000));
+    }
+    notifier.join();
+
+    // A long park cut short by unpark.
+    final Thread main = Thread.currentThread();
+    Thread unparker = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(5);
+        } catch (InterruptedException e) {
+        }
+        LockSupport.unpark(main);
+      }
+    };
+    start = System.nanoTime();
+    unparker.start();
+    LockSupport.parkNanos(60000000000L);
+    System.out.println("unparked early: " + ((System.nanoTime() - start) / 1000000 < 30000));
+    unparker.join();
+
+    // A long sleep cut short by interrupt.
+    Thread sleeper = new Thread() {
+      public void run() {
+        try {
+          Thread.sleep(60000);
+          System.out.println("sleep finished");
+        } catch (InterruptedException e) {
+          System.out.println("sleep interrupted");
+        }
+      }
+    };
+    sleeper.start();
+    Thread.sleep(5);
+    sleeper.interrupt();
+    sleeper.join();
+
+    // Many short scheduled tasks.
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(4);
+    final int tasks = 400;
+    final CountDownLatch latch = new CountDownLatch(tasks);
+    final AtomicInteger ran = new AtomicInteger();
+    for (int i = 0; i < tasks; i++) {
+      executor.schedule(new Runnable() {
+        public void run() {
+          ran.incrementAndGet();
+          latch.countDown();
+        }
+      }, i % 20, TimeUnit.MILLISECONDS);
+    }
+    System.out.println("all ran: " + latch.await(30, TimeUnit.SECONDS) + " " + ran.get());
+    executor.shutdown();
+    System.out.println("terminated: " + executor.awaitTermination(30, TimeUnit.SECONDS));
+  }
+}
@@ -0,0 +1,97 @@
+package classes.test;
+
+/**
+ * Runs long arithmetic in hot loops, so compiled traces keep longs unboxed:
+ * carries between the high and low halves, shifts by masked counts,
+ * conversions to and from int and double, comparisons, and longs that
+ * escape into fields, arrays and calls.
+ */
+public class UnboxedLongs {
+  static long field;
+
+  static long mix(long x) {
+    x ^= x >>> 33;
+    x *= 0xff51afd7ed558ccdL;
+    x ^= x >>> 33;
+    x *= 0xc4ceb9fe1a85ec53L;
+    return x ^ (x >>> 33);
+  }
+
+  static long carries(int n) {
+    long sum = 0xFFFFFFF0L;
+    for (int i = 0; i < n; i++) {
+      sum += 0x7FFFFFFFL;
+      sum -= i;
+    }
+    return sum;
+  }
+
+  static long shifts(int n) {
+    long acc = 0x123456789L;
+    for (int i = 0; i < n; i++) {
+      acc = acc * 31 + ((acc << i) ^ (acc >>> (70 - i)) ^ (acc >> (i * 3)));
+    }
+    return acc;
+  }
+
+  static long conversions(int n) {
+    long total = 0;
+    for (int i = 0; i < n; i++) {
+      long widened = i - n / 2;
+      int narrowed = (int) (widened * 0x10001L);
+      double d = widened * 1.5;
+      total += narrowed + (long) d;
+    }
+    return total;
+  }
+
+  static int comparisons(int n) {
+    int below = 0;
+    long limit = 1L << 40;
+    for (long i = -n; i < n; i++) {
+      long v = i * i * i * 1000;
+      if (v < -limit || v > limit) {
+        below++;
+      } else if (v == 0) {
+        below += 100;
+      }
+    }
+    return below;
+  }
+
+  static long divisions(int n) {
+    long total = 0;
+    for (int i = 1; i <= n; i++) {
+      long x = Long.MAX_VALUE - i * 12345L;
+      total += x / i + x % (i + 7) + (-x) / 3;
+    }
+    return total;
+  }
+
+  static long escapes(long[] out, int n) {
+    long local = 0;
+    for (int i = 0; i < n; i++) {
+      local = local * 7 + i;
+      out[i & (out.length - 1)] = local;
+      field = local >>> 1;
+      local = mix(local);
+    }
+    return local + field;
+  }
+
+  public static void main(String[] args) {
+    System.out.println("carries: " + carries(50000));
+    System.out.println("shifts: " + shifts(70) + " " + shifts(200));
+    System.out.println("conversions: " + conversions(50000));
+    System.out.println("comparisons: " + comparisons(20000));
+    System.out.println("divisions: " + divisions(50000));
+
+    long[] out = new long[16];
+    long escaped = escapes(out, 50000);
+    long sum = 0;
+    for (int i = 0; i < out.length; i++) {
+      sum += out[i];
+    }
+    System.out.println("escapes: " + escaped + " " + sum + " " + field);
+  }
+}
@@ -0,0 +1,51 @@
+/**
+ * Ranks the opcode pairs and triples in one or more dumps written by
+ * `doppio -Xdump-opcode-sequences <file>`, to pick superinstructions for a
+ * workload. Counts from multiple dumps are summed.
+ *
+ * Usage: node build/dev-cli/console/opcode_sequences.js [-n <count>] dump.json...
+ */
+import * as fs from 'fs';
+
+interface OpcodeProfile {
+  pairs: [string, number][];
+  triples: [string, number][];
+}
+
+var args = process.argv.slice(2), top = 20;
+if (args[0] === '-n') {
+  top = parseInt(args[1], 10);
+  args = args.slice(2);
+}
+if (args.length === 0 || isNaN(top)) {
+  process.stderr.write('Usage: opcode_sequences [-n <count>] dump.json...\n');
+  process.exit(1);
+}
+
+var pairs: {[seq: string]: number} = {},
+  triples: {[seq: string]: number} = {};
+
+function addCounts(totals: {[seq: string]: number}, counts: [string, number][]): void {
+  counts.forEach((count: [string, number]) => {
+    totals[count[0]] = (totals[count[0]] || 0) + count[1];
+  });
+}
+
+args.forEach((file: string) => {
+  var profile: OpcodeProfile = JSON.parse(fs.readFileSync(file).toString());
+  addCounts(pairs, profile.pairs);
+  addCounts(triples, profile.triples);
+});
+
+function printTop(title: string, totals: {[seq: string]: number}): void {
+  var seqs = Object.keys(totals), sum = 0;
+  seqs.forEach((seq: string) => sum += totals[seq]);
+  seqs.sort((a: string, b: string) => totals[b] - totals[a]);
+  process.stdout.write(`${title} (${sum} total):\n`);
+  seqs.slice(0, top).forEach((seq: string) => {
+    process.stdout.write(`  ${(100 * totals[seq] / sum).toFixed(2)}%\t${totals[seq]}\t${seq}\n`);
+  });
+}
+
+printTop('Opcode pairs', pairs);
+printTop('Opcode triples', triples);
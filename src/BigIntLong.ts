@@ -0,0 +1,218 @@
+import gLong from './gLong';
+
+// BigInt is not in the TypeScript lib we compile against.
+declare var BigInt: any;
+declare var BigInt64Array: any;
+
+/**
+ * Checks if the JavaScript engine can back longs with BigInt.
+ */
+export function bigIntLongsSupported(): boolean {
+  return typeof BigInt === 'function' && typeof BigInt64Array === 'function';
+}
+
+let usingBigIntLongs = false;
+
+/**
+ * Checks if gLong is currently backed by BigInt.
+ */
+export function isUsingBigIntLongs(): boolean {
+  return usingBigIntLongs;
+}
+
+/**
+ * Switches gLong to a BigInt-backed representation. Every gLong created
+ * afterwards wraps a single 64-bit BigInt rather than two int32 halves, and
+ * long[] arrays are backed by BigInt64Array. The gLong API is unchanged, so
+ * opcodes, natives and JIT-compiled code work with either representation.
+ *
+ * The switch is process-wide and cannot be undone. Longs created before it
+ * keep working, as each representation can read the other's fields.
+ */
+export function useBigIntLongs(): void {
+  if (usingBigIntLongs) {
+    return;
+  }
+  usingBigIntLongs = true;
+
+  const asIntN = BigInt.asIntN, asUintN = BigInt.asUintN,
+    BIG_ZERO = BigInt(0), BIG_ONE = BigInt(1), BIG_32 = BigInt(32),
+    TWO_PWR_63_DBL = Math.pow(2, 63);
+
+  function BigIntLong(value: any) {
+    this.value_ = value;
+  }
+  const proto: any = BigIntLong.prototype = Object.create(gLong.prototype),
+    gLongProto: any = gLong.prototype,
+    gLongCls: any = gLong;
+  // A data property, so constructing a BigIntLong does not hit the accessor
+  // defined on gLong.prototype below.
+  proto.value_ = BIG_ZERO;
+
+  // Let int32-pair longs and BigInt longs read each other's fields.
+  Object.defineProperty(gLongProto, 'value_', {get: function() {
+    return asIntN(64, (BigInt(this.high_) << BIG_32) | BigInt(this.low_ >>> 0));
+  }});
+  Object.defineProperty(proto, 'low_', {get: function() {
+    return Number(asIntN(32, this.value_));
+  }});
+  Object.defineProperty(proto, 'high_', {get: function() {
+    return Number(asIntN(32, this.value_ >> BIG_32));
+  }});
+
+  function make(value: any): gLong {
+    return new (<any> BigIntLong)(asIntN(64, value));
+  }
+
+  const intCache: gLong[] = [];
+  gLongCls.fromInt = function(value: number): gLong {
+    if (-128 <= value && value < 128) {
+      let cachedObj = intCache[value + 128];
+      if (cachedObj === undefined) {
+        cachedObj = intCache[value + 128] = make(BigInt(value | 0));
+      }
+      return cachedObj;
+    }
+    return make(BigInt(value | 0));
+  };
+  gLongCls.fromBits = function(lowBits: number, highBits: number): gLong {
+    return make((BigInt(highBits | 0) << BIG_32) | BigInt(lowBits >>> 0));
+  };
+  gLongCls.fromNumber = function(value: number): gLong {
+    if (isNaN(value) || !isFinite(value)) {
+      return gLong.ZERO;
+    } else if (value <= -TWO_PWR_63_DBL) {
+      return gLong.MIN_VALUE;
+    } else if (value + 1 >= TWO_PWR_63_DBL) {
+      return gLong.MAX_VALUE;
+    } else {
+      return make(BigInt(value < 0 ? Math.ceil(value) : Math.floor(value)));
+    }
+  };
+  gLongCls.fromArrayElement = function(value: any): gLong {
+    return typeof value !== 'object' ? new (<any> BigIntLong)(value) : value;
+  };
+  gLongCls.toArrayElement = function(value: gLong): any {
+    return (<any> value).value_;
+  };
+  gLongCls.ZERO = gLong.fromInt(0);
+  gLongCls.ONE = gLong.fromInt(1);
+  gLongCls.NEG_ONE = gLong.fromInt(-1);
+  gLongCls.MAX_VALUE = gLong.fromBits(0xFFFFFFFF, 0x7FFFFFFF);
+  gLongCls.MIN_VALUE = gLong.fromBits(0, 0x80000000);
+
+  proto.toInt = function(): number {
+    return Number(asIntN(32, this.value_));
+  };
+  proto.toNumber = function(): number {
+    return Number(this.value_);
+  };
+  proto.toString = function(opt_radix?: number): string {
+    const radix = opt_radix || 10;
+    if (radix < 2 || 36 < radix) {
+      throw Error('radix out of range: ' + radix);
+    }
+    return this.value_.toString(radix);
+  };
+  proto.getHighBits = function(): number {
+    return Number(asIntN(32, this.value_ >> BIG_32));
+  };
+  proto.getLowBits = function(): number {
+    return Number(asIntN(32, this.value_));
+  };
+  proto.getLowBitsUnsigned = function(): number {
+    return Number(asUintN(32, this.value_));
+  };
+  proto.getNumBitsAbs = function(): number {
+    if (this.isNegative()) {
+      return this.equals(gLong.MIN_VALUE) ? 64 : this.negate().getNumBitsAbs();
+    }
+    // Matches the int32-pair implementation, including its result for
+    // values with a non-zero high word.
+    const high = this.getHighBits(), val = high !== 0 ? high : this.getLowBits();
+    let bit: number;
+    for (bit = 31; bit > 0; bit--) {
+      if ((val & (1 << bit)) !== 0) {
+        break;
+      }
+    }
+    return high !== 0 ? bit + 33 : bit + 1;
+  };
+  proto.isZero = function(): boolean {
+    return this.value_ === BIG_ZERO;
+  };
+  proto.isNegative = function(): boolean {
+    return this.value_ < BIG_ZERO;
+  };
+  proto.isOdd = function(): boolean {
+    return (this.value_ & BIG_ONE) === BIG_ONE;
+  };
+  proto.equals = function(other: any): boolean {
+    return this.value_ === other.value_;
+  };
+  proto.notEquals = function(other: any): boolean {
+    return this.value_ !== other.value_;
+  };
+  proto.lessThan = function(other: any): boolean {
+    return this.value_ < other.value_;
+  };
+  proto.lessThanOrEqual = function(other: any): boolean {
+    return this.value_ <= other.value_;
+  };
+  proto.greaterThan = function(other: any): boolean {
+    return this.value_ > other.value_;
+  };
+  proto.greaterThanOrEqual = function(other: any): boolean {
+    return this.value_ >= other.value_;
+  };
+  proto.compare = function(other: any): number {
+    const a = this.value_, b = other.value_;
+    return a === b ? 0 : (a < b ? -1 : 1);
+  };
+  proto.negate = function(): gLong {
+    return make(-this.value_);
+  };
+  proto.add = function(other: any): gLong {
+    return make(this.value_ + other.value_);
+  };
+  proto.subtract = function(other: any): gLong {
+    return make(this.value_ - other.value_);
+  };
+  proto.multiply = function(other: any): gLong {
+    return make(this.value_ * other.value_);
+  };
+  proto.div = function(other: any): gLong {
+    if (other.value_ === BIG_ZERO) {
+      throw Error('division by zero');
+    }
+    // BigInt division truncates, like Java's; MIN_VALUE / -1 wraps in make.
+    return make(this.value_ / other.value_);
+  };
+  proto.modulo = function(other: any): gLong {
+    if (other.value_ === BIG_ZERO) {
+      throw Error('division by zero');
+    }
+    return make(this.value_ % other.value_);
+  };
+  proto.not = function(): gLong {
+    return make(~this.value_);
+  };
+  proto.and = function(other: any): gLong {
+    return make(this.value_ & other.value_);
+  };
+  proto.or = function(other: any): gLong {
+    return make(this.value_ | other.value_);
+  };
+  proto.xor = function(other: any): gLong {
+    return make(this.value_ ^ other.value_);
+  };
+  proto.shiftLeft = function(numBits: number): gLong {
+    return make(this.value_ << BigInt(numBits & 63));
+  };
+  proto.shiftRight = function(numBits: number): gLong {
+    return make(this.value_ >> BigInt(numBits & 63));
+  };
+  proto.shiftRightUnsigned = function(numBits: number): gLong {
+    return make(asUintN(64, this.value_) >> BigInt(numBits & 63));
+  };
+}
@@ -16,6 +16,8 @@ import StringOutputStream from './StringOutputStream';
 import Monitor from './Monitor';
 import * as JVMTypes from '../includes/JVMTypes';
 import {setImmediate} from 'browserfs';
+import {hashClassFile} from './JITCodeCache';
+import {isUsingBigIntLongs} from './BigIntLong';
 
 const trace = logging.trace;
 const debug = logging.debug;
@@ -34,6 +36,11 @@ function getRef() {
   return ref++;
 }
 
+/**
+ * The next interface id to hand out. See ReferenceClassData.getITable.
+ */
+var nextInterfaceId: number = 0;
+
 /**
  * Defines special JVM-injected fields. The map stores the TypeScript type of
  * the field and the default value for the field, which will be assigned in the
@@ -46,7 +53,10 @@ var injectedFields: {[className: string]: {[fieldName: string]: [string, string]
   },
   'Ljava/lang/Object;': {
     'ref': ["number", "getRef()"],
-    '$monitor': ["Monitor", "null"]
+    '$monitor': ["Monitor", "null"],
+    // Thin lock: the owner and lock count of an object that has no Monitor.
+    '$lockOwner': ["JVMThread", "null"],
+    '$lockCount': ["number", "0"]
   },
   'Ljava/net/PlainSocketImpl;': {
     '$is_shutdown': ['boolean', 'false'],
@@ -75,9 +85,32 @@ var injectedMethods: {[className: string]: {[methodName: string]: string[]}} = {
     'getClass': ["(): ClassData", `function() { return this.constructor.cls }`],
     'getMonitor': ["(): Monitor", `function() {
   if (this.$monitor === null) {
-    this.$monitor = new Monitor();
+    // Inflate the thin lock, carrying over its owner.
+    this.$monitor = new Monitor(this.$lockOwner, this.$lockCount);
+    this.$lockOwner = null;
+    this.$lockCount = 0;
   }
   return this.$monitor;
+}`],
+    'monitorEnter': ["(thread: JVMThread, cb: () => void): boolean", `function(thread, cb) {
+  if (this.$monitor === null && (this.$lockOwner === thread || this.$lockOwner === null)) {
+    this.$lockOwner = thread;
+    this.$lockCount++;
+    return true;
+  }
+  return this.getMonitor().enter(thread, cb);
+}`],
+    'monitorExit': ["(thread: JVMThread): boolean", `function(thread) {
+  if (this.$monitor === null && this.$lockOwner === thread) {
+    if (--this.$lockCount === 0) {
+      this.$lockOwner = null;
+    }
+    return true;
+  }
+  return this.getMonitor().exit(thread);
+}`],
+    'getLockOwner': ["(): JVMThread", `function() {
+  return this.$monitor === null ? this.$lockOwner : this.$monitor.getOwner();
 }`]
   },
   'Ljava/lang/String;': {
@@ -476,7 +509,7 @@ export class PrimitiveClassData extends ClassData {
     if (boxName !== 'V') {
       // XXX: all primitive wrappers store their value in a private static final field named 'value'
       (<any> wrapped)[descriptor2typestr(boxName) + '/value'] = value;
-      assert(typeof value === "number" || typeof value === "boolean" || typeof value.low_ === "number", `Invalid primitive value: ${value}`);
+      assert(typeof value === "number" || typeof value === "boolean" || value instanceof gLong, `Invalid primitive value: ${value}`);
     }
     return wrapped;
   }
@@ -587,6 +620,9 @@ export class ArrayClassData<T> extends ClassData {
    * See §2.6.7 for casting rules.
    */
   public isCastable(target: ClassData): boolean {
+    if (this === target) {
+      return true;
+    }
     if (!(target instanceof ArrayClassData)) {
       if (target instanceof PrimitiveClassData) {
         return false;
@@ -630,6 +666,8 @@ export class ArrayClassData<T> extends ClassData {
         return 'Float32Array';
       case 'D':
         return 'Float64Array';
+      case 'J':
+        return isUsingBigIntLongs() ? 'BigInt64Array' : 'Array';
       default:
         return 'Array';
     }
@@ -677,6 +715,7 @@ export class ArrayClassData<T> extends ClassData {
           elementSize = 4;
           break;
         case 'Float64Array':
+        case 'BigInt64Array':
           elementSize = 8;
           break;
         default:
@@ -747,6 +786,17 @@ export class ArrayClassData<T> extends ClassData {
     }
     return this._constructor;
   }
+
+  /**
+   * Arrays have the methods of java/lang/Object.
+   */
+  public getVTable(): Function[] {
+    return this.superClass.getVTable();
+  }
+
+  public getITable(iface: ReferenceClassData<JVMTypes.java_lang_Object>): Function[] {
+    return this.superClass.getITable(iface);
+  }
 }
 
 /**
@@ -813,6 +863,39 @@ export class ReferenceClassData<T extends JVMTypes.java_lang_Object> extends Cla
    * loader. NULL for bootstrap classloaded items.
    */
   protected _protectionDomain: JVMTypes.java_security_ProtectionDomain;
+  /**
+   * Hash of the class file, used to key the JIT code cache. Null when there is
+   * no code cache.
+   */
+  private classHash: string = null;
+  /**
+   * The class's superclass chain, from java/lang/Object down to this class,
+   * so a class's depth in the hierarchy is its index in the chain of any of
+   * its subclasses. Built when the class is resolved.
+   */
+  private superClassDisplay: ReferenceClassData<JVMTypes.java_lang_Object>[] = null;
+  /**
+   * The names of all of the interfaces the class implements, directly or
+   * through its superclasses and superinterfaces, mapped to true. Includes
+   * the class itself if it is an interface. Built with superClassDisplay.
+   */
+  private interfaceSet: { [className: string]: boolean } = null;
+  /**
+   * The JavaScript functions implementing the class's virtual methods,
+   * indexed by vmindex. Built on first use.
+   */
+  private _vtable: Function[] = null;
+  /**
+   * Interface method tables, indexed by interface id. Each holds the
+   * functions implementing an interface's methods, indexed by the methods'
+   * vmindex in the interface. Built on first use.
+   */
+  private _itables: Function[][] = [];
+  /**
+   * For interfaces: identifies the interface's itable in implementing
+   * classes. -1 until first needed.
+   */
+  private _interfaceId: number = -1;
 
   constructor(buffer: Buffer, protectionDomain?: JVMTypes.java_security_ProtectionDomain, loader?: ClassLoader, cpPatches?: JVMTypes.JVMArray<JVMTypes.java_lang_Object>) {
     super(loader);
@@ -833,6 +916,11 @@ export class ReferenceClassData<T extends JVMTypes.java_lang_Object> extends Cla
     this.accessFlags = new Flags(byteStream.getUint16());
 
     this.className = (<ClassReference> this.constantPool.get(byteStream.getUint16())).name;
+    const codeCache = this.loader.getJVM().getJITCodeCache();
+    if (codeCache !== null) {
+      this.classHash = hashClassFile(buffer);
+      codeCache.noteClass(descriptor2typestr(this.className), this.classHash);
+    }
     // super reference is 0 when there's no super (basically just java.lang.Object)
     var superRef = byteStream.getUint16();
     if (superRef !== 0) {
@@ -864,6 +952,10 @@ export class ReferenceClassData<T extends JVMTypes.java_lang_Object> extends Cla
     }
   }
 
+  public getClassHash(): string {
+    return this.classHash;
+  }
+
   public getSuperClassReference(): ClassReference {
     return this.superClassRef;
   }
@@ -905,6 +997,37 @@ export class ReferenceClassData<T extends JVMTypes.java_lang_Object> extends Cla
     return this._vmTable.indexOf(this.methodLookup(m.signature));
   }
 
+  /**
+   * Get the JavaScript functions implementing this class's virtual methods,
+   * indexed by vmindex, for dispatch without a property lookup. These are the
+   * same functions as the class's prototype has under each method's
+   * signature. Only valid once the class's constructor exists.
+   */
+  public getVTable(): Function[] {
+    if (this._vtable === null) {
+      var proto = (<any> this._constructor).prototype;
+      this._vtable = this._vmTable.map((m: Method) => proto[m.signature]);
+    }
+    return this._vtable;
+  }
+
+  /**
+   * Get the JavaScript functions implementing the given interface's methods
+   * in this class, indexed by their vmindex in the interface. Only valid once
+   * the class's constructor exists.
+   */
+  public getITable(iface: ReferenceClassData<JVMTypes.java_lang_Object>): Function[] {
+    if (iface._interfaceId === -1) {
+      iface._interfaceId = nextInterfaceId++;
+    }
+    var itable = this._itables[iface._interfaceId];
+    if (itable === undefined) {
+      var proto = (<any> this._constructor).prototype;
+      itable = this._itables[iface._interfaceId] = iface._vmTable.map((m: Method) => proto[m.signature]);
+    }
+    return itable;
+  }
+
   /**
    * Returns the method corresponding to the given VMIndex.
    */
@@ -1208,6 +1331,7 @@ export class ReferenceClassData<T extends JVMTypes.java_lang_Object> extends Cla
     this.superClass = superClazz;
     trace(`Class ${this.getInternalName()} is now resolved.`);
     this.interfaceClasses = interfaceClazzes;
+    this._buildTypeDisplay();
     // TODO: Assert we are not already resolved or initialized?
     this._resolveMethods();
     this._resolveFields();
@@ -1275,9 +1399,11 @@ export class ReferenceClassData<T extends JVMTypes.java_lang_Object> extends Cla
    * "target" is a ClassData object.
    * The ClassData objects do not need to be initialized; just loaded.
    * See §2.6.7 for casting rules.
-   * @todo Determine this statically to make this a constant time operation.
    */
   public isCastable(target: ClassData): boolean {
+    if (this === target) {
+      return true;
+    }
     if (!(target instanceof ReferenceClassData)) {
       return false;
     }
@@ -1307,17 +1433,69 @@ export class ReferenceClassData<T extends JVMTypes.java_lang_Object> extends Cla
     if (this.className === target.getInternalName()) {
       return true;
     }
-    var ifaces = this.getInterfaces();
-    for (var i = 0; i < ifaces.length; i++) {
-      var superIface = ifaces[i];
-      if (superIface.isSubinterface(target)) {
-        return true;
-      }
+    return this._getInterfaceSet()[target.getInternalName()] === true;
+  }
+
+  /**
+   * Returns 'true' if I am the target class or one of its subclasses.
+   */
+  public isSubclass(target: ClassData): boolean {
+    if (this === target) {
+      return true;
     }
-    if (this.getSuperClass() == null) {
+    if (!(target instanceof ReferenceClassData)) {
       return false;
     }
-    return this.getSuperClass().isSubinterface(target);
+    var display = this._getSuperClassDisplay(),
+      targetDepth = target._getSuperClassDisplay().length - 1;
+    return targetDepth < display.length && display[targetDepth] === target;
+  }
+
+  private _getSuperClassDisplay(): ReferenceClassData<JVMTypes.java_lang_Object>[] {
+    if (this.superClassDisplay === null) {
+      this._buildTypeDisplay();
+    }
+    return this.superClassDisplay;
+  }
+
+  private _getInterfaceSet(): { [className: string]: boolean } {
+    if (this.interfaceSet === null) {
+      this._buildTypeDisplay();
+    }
+    return this.interfaceSet;
+  }
+
+  /**
+   * Builds the superclass display and interface set that make subtype checks
+   * constant time, from those of the superclass and direct interfaces.
+   */
+  private _buildTypeDisplay(): void {
+    var superClass = this.getSuperClass(), ifaces = this.getInterfaces(),
+      display: ReferenceClassData<JVMTypes.java_lang_Object>[],
+      set: { [className: string]: boolean } = {}, name: string, i: number;
+    if (superClass !== null) {
+      display = superClass._getSuperClassDisplay().slice(0);
+      var superSet = superClass._getInterfaceSet();
+      for (name in superSet) {
+        set[name] = true;
+      }
+    } else {
+      display = [];
+    }
+    display.push(this);
+    if (ifaces !== null) {
+      for (i = 0; i < ifaces.length; i++) {
+        var ifaceSet = ifaces[i]._getInterfaceSet();
+        for (name in ifaceSet) {
+          set[name] = true;
+        }
+      }
+    }
+    if (this.accessFlags.isInterface()) {
+      set[this.className] = true;
+    }
+    this.superClassDisplay = display;
+    this.interfaceSet = set;
   }
 
   /**
@@ -11,6 +11,7 @@ import * as path from 'path';
 import * as fs from 'fs';
 import * as JVMTypes from '../includes/JVMTypes';
 import {setImmediate} from 'browserfs';
+import JVM from './jvm';
 const debug = logging.debug;
 const error = logging.error;
 
@@ -79,6 +80,13 @@ export abstract class ClassLoader {
    */
   constructor(public bootstrap: BootstrapClassLoader) { }
 
+  /**
+   * Returns the JVM this class loader belongs to.
+   */
+  public getJVM(): JVM {
+    return this.bootstrap.getJVM();
+  }
+
   /**
    * Retrieve a listing of classes that are loaded in this class loader.
    */
@@ -347,6 +355,15 @@ export abstract class ClassLoader {
   public abstract getLoaderObject(): JVMTypes.java_lang_ClassLoader;
 }
 
+/**
+ * The bytes of a class file, and the path of the classpath item it was loaded
+ * from.
+ */
+export interface ClassFileEntry {
+  path: string;
+  data: Buffer;
+}
+
 /**
  * The JVM's bootstrap class loader. Loads classes directly from files on the
  * file system.
@@ -365,9 +382,19 @@ export class BootstrapClassLoader extends ClassLoader {
    * Note: Package separators are specified with slashes ('/'), not periods ('.').
    */
   private loadedPackages: {[pkgString: string]: IClasspathItem[]};
+  /**
+   * Class files kept for other isolates, or handed to us by another isolate,
+   * keyed by class file path.
+   */
+  private classFiles: {[clsFilePath: string]: ClassFileEntry} = null;
+  /**
+   * Should classes loaded from the classpath be added to classFiles?
+   */
+  private recordingClassFiles: boolean = false;
 
   /**
    * Constructs the bootstrap classloader with the given classpath.
+   * @param jvm The JVM this class loader belongs to.
    * @param classPath The classpath, where the *first* item is the *last*
    *   classpath searched. Meaning, the classPath[0] should be the bootstrap
    *   class path.
@@ -375,7 +402,7 @@ export class BootstrapClassLoader extends ClassLoader {
    * @param cb Called once all of the classpath items have been checked.
    *   Passes an error if one occurs.
    */
-  constructor(javaHome: string, classpath: string[], cb: (e?: any) => void) {
+  constructor(private jvm: JVM, javaHome: string, classpath: string[], cb: (e?: any) => void) {
     // The correct way to do this would be super(this), but we cannot reference this before calling super()
     super(null);
     this.bootstrap = this;
@@ -389,6 +416,10 @@ export class BootstrapClassLoader extends ClassLoader {
     });
   }
 
+  public getJVM(): JVM {
+    return this.jvm;
+  }
+
   /**
    * Registers that a given class has successfully been loaded from the specified
    * classpath item.
@@ -415,6 +446,51 @@ export class BootstrapClassLoader extends ClassLoader {
     });
   }
 
+  /**
+   * Keep the bytes of every class file loaded from now on, so they can be
+   * shared with other isolates.
+   */
+  public recordClassFiles(): void {
+    this.classFiles = {};
+    this.recordingClassFiles = true;
+  }
+
+  /**
+   * Returns the class files kept by recordClassFiles, and stops keeping them.
+   */
+  public takeClassFiles(): {[clsFilePath: string]: ClassFileEntry} {
+    const files = this.recordingClassFiles ? this.classFiles : {};
+    if (this.recordingClassFiles) {
+      this.classFiles = null;
+      this.recordingClassFiles = false;
+    }
+    return files;
+  }
+
+  /**
+   * Load the given classes from memory rather than from the classpath.
+   * Entries whose classpath item is not on our classpath are ignored.
+   */
+  public addClassFiles(files: {[clsFilePath: string]: ClassFileEntry}): void {
+    if (this.classFiles === null) {
+      this.classFiles = {};
+    }
+    for (let clsFilePath in files) {
+      if (files.hasOwnProperty(clsFilePath) && this.findClasspathItem(files[clsFilePath].path) !== null) {
+        this.classFiles[clsFilePath] = files[clsFilePath];
+      }
+    }
+  }
+
+  private findClasspathItem(itemPath: string): IClasspathItem {
+    for (let i = 0; i < this.classpath.length; i++) {
+      if (this.classpath[i].getPath() === itemPath) {
+        return this.classpath[i];
+      }
+    }
+    return null;
+  }
+
   /**
    * Retrieves or defines the specified primitive class.
    */
@@ -442,6 +518,15 @@ export class BootstrapClassLoader extends ClassLoader {
       toSearch: IClasspathItem[] = [],
       clsData: Buffer;
 
+    if (this.classFiles !== null && !this.recordingClassFiles && this.classFiles.hasOwnProperty(clsFilePath)) {
+      const entry = this.classFiles[clsFilePath];
+      let cls = this.defineClass(thread, typeStr, entry.data, null);
+      if (cls !== null) {
+        this._registerLoadedClass(clsFilePath, this.findClasspathItem(entry.path));
+      }
+      return cb(cls);
+    }
+
     searchLoop:
     for (let i = 0; i < cPathLen; i++) {
       let item = this.classpath[i];
@@ -470,6 +555,9 @@ export class BootstrapClassLoader extends ClassLoader {
         let cls = this.defineClass(thread, typeStr, clsData, null);
         if (cls !== null) {
           this._registerLoadedClass(clsFilePath, pItem);
+          if (this.recordingClassFiles) {
+            this.classFiles[clsFilePath] = {path: pItem.getPath(), data: clsData};
+          }
         }
         cb(cls);
       } else {
@@ -0,0 +1,94 @@
+import {ExceptionHandler} from './attributes';
+import {ClassData} from './ClassData';
+import {ClassLoader} from './ClassLoader';
+
+/**
+ * A method's exception handlers, indexed by pc. The method's code is split at
+ * every handler's start and end pc into ranges that have the same set of
+ * handlers, so finding the handlers that cover a pc is a binary search rather
+ * than a scan of the whole table. Catch classes are remembered once resolved.
+ */
+export default class ExceptionTable {
+  /**
+   * The start pc of each range, in ascending order. The last entry is the end
+   * of the final range, which no handler covers.
+   */
+  private rangeStarts: number[] = [];
+  /**
+   * The indices of the handlers that cover each range, in exception table
+   * order, which is the order the JVM spec says they must be tried in.
+   */
+  private rangeHandlers: number[][] = [];
+  /**
+   * The resolved catch class of each handler. Null for `<any>` handlers, and
+   * for handlers whose class has not been resolved yet.
+   */
+  private catchClasses: ClassData[];
+
+  constructor(public handlers: ExceptionHandler[]) {
+    const n = handlers.length, bounds: number[] = [];
+    this.catchClasses = new Array(n);
+    for (let i = 0; i < n; i++) {
+      bounds.push(handlers[i].startPC, handlers[i].endPC);
+      this.catchClasses[i] = null;
+    }
+    bounds.sort((a, b) => a - b);
+    for (let i = 0; i < bounds.length; i++) {
+      const start = bounds[i];
+      if (i > 0 && start === bounds[i - 1]) {
+        continue;
+      }
+      const covering: number[] = [];
+      for (let j = 0; j < n; j++) {
+        if (handlers[j].startPC <= start && start < handlers[j].endPC) {
+          covering.push(j);
+        }
+      }
+      this.rangeStarts.push(start);
+      this.rangeHandlers.push(covering);
+    }
+  }
+
+  /**
+   * Returns the indices of the handlers that cover the given pc, in the order
+   * they must be tried. Returns null if there are none.
+   */
+  public getHandlers(pc: number): number[] {
+    const starts = this.rangeStarts;
+    let lo = 0, hi = starts.length - 1;
+    if (hi < 0 || pc < starts[0] || pc >= starts[hi]) {
+      return null;
+    }
+    // Find the last range starting at or before pc.
+    while (lo < hi) {
+      const mid = (lo + hi + 1) >> 1;
+      if (starts[mid] <= pc) {
+        lo = mid;
+      } else {
+        hi = mid - 1;
+      }
+    }
+    const covering = this.rangeHandlers[lo];
+    return covering.length > 0 ? covering : null;
+  }
+
+  /**
+   * Returns the catch class of the given handler using the given class loader,
+   * or null if it has not been resolved yet. Must not be called for `<any>`
+   * handlers.
+   */
+  public getCatchClass(index: number, loader: ClassLoader): ClassData {
+    let cls = this.catchClasses[index];
+    if (cls === null) {
+      cls = this.catchClasses[index] = loader.getResolvedClass(this.handlers[index].catchType);
+    }
+    return cls;
+  }
+
+  /**
+   * Returns the catch types of every handler that is not an `<any>` handler.
+   */
+  public getCatchTypes(): string[] {
+    return this.handlers.filter((handler) => handler.catchType !== "<any>").map((handler) => handler.catchType);
+  }
+}
@@ -0,0 +1,180 @@
+import {ReferenceClassData, ArrayClassData} from './ClassData';
+import {Method} from './methods';
+import {MethodReference, InterfaceMethodReference} from './ConstantPool';
+import * as JVMTypes from '../includes/JVMTypes';
+import global from './global';
+
+declare var RELEASE: boolean;
+if (typeof RELEASE === 'undefined') global.RELEASE = false;
+
+/**
+ * Number of receiver classes an inline cache records before it becomes
+ * megamorphic.
+ */
+const maxPolymorphicEntries = 4;
+
+/**
+ * [DEBUG] Every inline cache created, for statistics.
+ */
+const allInlineCaches: InlineCache[] = [];
+
+/**
+ * A per-call-site inline cache for INVOKEVIRTUAL_FAST and
+ * INVOKEINTERFACE_FAST. Records the receiver classes seen at the call site
+ * along with the JavaScript function implementing the target method, so a hit
+ * is a constructor identity check plus a direct call rather than a
+ * string-keyed property lookup.
+ */
+export default class InlineCache {
+  /**
+   * Receiver constructors seen at this call site. Parallel with targets and
+   * methods.
+   */
+  public constructors: Function[] = [];
+  public targets: Function[] = [];
+  public methods: Method[] = [];
+  /**
+   * If true, the call site has seen too many receiver classes, and we always
+   * fall back to property lookup.
+   */
+  public megamorphic: boolean = false;
+  public hits: number = 0;
+  public misses: number = 0;
+  /**
+   * For indexed dispatch: the interface whose itable holds the target, or
+   * null for the virtual method table, and the target's index in the table.
+   * The index is -1 until first needed, and -2 if the target has no index.
+   */
+  private dispatchInterface: ReferenceClassData<JVMTypes.java_lang_Object> = null;
+  private dispatchIndex: number = -1;
+  /**
+   * If true, cache misses and megamorphic call sites find their target
+   * through the receiver class's virtual method table or, for interface
+   * methods, its itable, rather than by looking up the method's signature on
+   * the receiver. Taken from the JVM that loaded the calling method.
+   */
+  private indexedDispatch: boolean;
+
+  constructor(public method: Method, public pc: number, public signature: string) {
+    this.indexedDispatch = method.cls.getLoader().getJVM().isIndexedDispatchEnabled();
+    if (!RELEASE) {
+      allInlineCaches.push(this);
+    }
+  }
+
+  /**
+   * Returns the function implementing the invoked method for the given
+   * (non-null) receiver, updating the cache on a miss.
+   */
+  public lookup(obj: JVMTypes.java_lang_Object): Function {
+    if (this.megamorphic) {
+      if (!RELEASE) {
+        this.misses++;
+      }
+      return this.dispatch(obj);
+    }
+    const cons = obj.constructor, constructors = this.constructors;
+    for (let i = 0; i < constructors.length; i++) {
+      if (constructors[i] === cons) {
+        if (!RELEASE) {
+          this.hits++;
+        }
+        return this.targets[i];
+      }
+    }
+
+    if (!RELEASE) {
+      this.misses++;
+    }
+    const target: Function = this.dispatch(obj);
+    if (constructors.length < maxPolymorphicEntries) {
+      const cls = <ReferenceClassData<JVMTypes.java_lang_Object> | ArrayClassData<any>> obj.getClass();
+      constructors.push(cons);
+      this.targets.push(target);
+      this.methods.push(cls.methodLookup(this.signature));
+    } else {
+      this.megamorphic = true;
+      this.constructors = [];
+      this.targets = [];
+      this.methods = [];
+    }
+    return target;
+  }
+
+  /**
+   * Returns the function implementing the invoked method for the given
+   * receiver, from the receiver class's method tables if possible.
+   */
+  private dispatch(obj: JVMTypes.java_lang_Object): Function {
+    if (this.indexedDispatch) {
+      if (this.dispatchIndex === -1) {
+        this.resolveDispatchIndex();
+      }
+      if (this.dispatchIndex >= 0) {
+        const cls = <ReferenceClassData<JVMTypes.java_lang_Object> | ArrayClassData<any>> obj.getClass(),
+          table = this.dispatchInterface === null ? cls.getVTable() : cls.getITable(this.dispatchInterface),
+          target = table[this.dispatchIndex];
+        if (target !== undefined) {
+          return target;
+        }
+      }
+    }
+    return (<any> obj)[this.signature];
+  }
+
+  /**
+   * Finds the index of the invoked method in the method tables of the class
+   * or interface that the call site references.
+   */
+  private resolveDispatchIndex(): void {
+    const code = this.method.getCodeAttribute().getCode(),
+      methodReference = <MethodReference | InterfaceMethodReference> this.method.cls.constantPool.get(code.readUInt16BE(this.pc + 1)),
+      cls = methodReference.classInfo.cls;
+    this.dispatchIndex = -2;
+    if (cls instanceof ReferenceClassData && methodReference.method !== null) {
+      const index = cls.getVMIndexForMethod(methodReference.method);
+      if (index >= 0) {
+        this.dispatchInterface = cls.accessFlags.isInterface() ? cls : null;
+        this.dispatchIndex = index;
+      }
+    }
+  }
+
+  /**
+   * Returns the single target method if this call site is monomorphic, or
+   * null otherwise.
+   */
+  public getMonomorphicTarget(): Method {
+    return !this.megamorphic && this.methods.length === 1 ? this.methods[0] : null;
+  }
+
+  public getState(): string {
+    if (this.megamorphic) {
+      return 'megamorphic';
+    }
+    switch (this.constructors.length) {
+      case 0:
+        return 'uninitialized';
+      case 1:
+        return 'monomorphic';
+      default:
+        return 'polymorphic';
+    }
+  }
+}
+
+/**
+ * [DEBUG] Prints the hit rate of the busiest inline caches.
+ */
+export function dumpInlineCacheStats() {
+  const caches = allInlineCaches.slice();
+  caches.sort((x, y) => (y.hits + y.misses) - (x.hits + x.misses));
+  const top = caches.slice(0, 24);
+  console.log("Busiest inline caches (site, state, hits/calls):");
+  for (let i = 0; i < top.length; i++) {
+    const ic = top[i], calls = ic.hits + ic.misses;
+    if (calls > 0) {
+      console.log(`${ic.method.fullSignature}:${ic.pc} ${ic.signature} ${ic.getState()} ${ic.hits}/${calls} (${((100 * ic.hits) / calls).toFixed(1)}%)`);
+    }
+  }
+}
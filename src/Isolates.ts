@@ -0,0 +1,275 @@
+import {ClassFileEntry} from './ClassLoader';
+import {JVMOptions} from './interfaces';
+import {are_in_browser} from './util';
+import getGlobalRequire from './global_require';
+import * as path from 'path';
+
+declare var SharedArrayBuffer: any;
+
+/**
+ * Bootstrap class files packed into one SharedArrayBuffer, so every isolate
+ * reads them from the same memory. Each index entry holds the class file
+ * path, the path of its classpath item, and its offset and length in the
+ * buffer.
+ */
+export interface SharedClassFiles {
+  buffer: ArrayBuffer;
+  index: [string, string, number, number][];
+}
+
+/**
+ * What the parent passes to each isolate's worker thread.
+ */
+export interface IsolateWorkerData {
+  options: JVMOptions;
+  classFiles: SharedClassFiles;
+}
+
+/**
+ * A serialized task or result. The serialized bytes are transferred to the
+ * receiving isolate. The typed arrays are views of SharedArrayBuffers, which
+ * both isolates share.
+ */
+export interface IsolateMessage {
+  data: ArrayBuffer;
+  shared: any[];
+}
+
+/**
+ * A task waiting on, or running in, an isolate.
+ */
+interface IsolateTask {
+  id: number;
+  message: IsolateMessage;
+  cb: (err: string, result?: IsolateMessage) => void;
+}
+
+/**
+ * A worker thread running a JVM, and the task it is running, if any.
+ */
+interface Isolate {
+  worker: any;
+  task: IsolateTask;
+}
+
+let workerThreads: any;
+
+/**
+ * Returns Node's worker_threads module, or null if it is unavailable.
+ */
+function getWorkerThreads(): any {
+  if (workerThreads === undefined) {
+    workerThreads = null;
+    if (!are_in_browser() && typeof SharedArrayBuffer !== 'undefined') {
+      try {
+        workerThreads = getGlobalRequire()('worker_threads');
+      } catch (e) {
+        // Older Node releases.
+      }
+    }
+  }
+  return workerThreads;
+}
+
+/**
+ * Checks if this JavaScript context can launch isolates.
+ */
+export function isolatesSupported(): boolean {
+  return getWorkerThreads() !== null;
+}
+
+/**
+ * Packs the given class files into a SharedArrayBuffer.
+ */
+export function packClassFiles(files: {[clsFilePath: string]: ClassFileEntry}): SharedClassFiles {
+  const names = Object.keys(files);
+  let size = 0;
+  for (let i = 0; i < names.length; i++) {
+    size += files[names[i]].data.length;
+  }
+  const buffer = new SharedArrayBuffer(size), bytes = new Uint8Array(buffer),
+    index: [string, string, number, number][] = [];
+  let offset = 0;
+  for (let i = 0; i < names.length; i++) {
+    const entry = files[names[i]], len = entry.data.length;
+    for (let j = 0; j < len; j++) {
+      bytes[offset + j] = entry.data.readUInt8(j);
+    }
+    index.push([names[i], entry.path, offset, len]);
+    offset += len;
+  }
+  return {buffer: buffer, index: index};
+}
+
+/**
+ * Returns views of the class files packed by packClassFiles. Nothing is
+ * copied.
+ */
+export function unpackClassFiles(packed: SharedClassFiles): {[clsFilePath: string]: ClassFileEntry} {
+  const files: {[clsFilePath: string]: ClassFileEntry} = {};
+  for (let i = 0; i < packed.index.length; i++) {
+    const entry = packed.index[i];
+    files[entry[0]] = {path: entry[1], data: new Buffer(<any> packed.buffer, entry[2], entry[3])};
+  }
+  return files;
+}
+
+/**
+ * Runs serialized tasks on a fixed number of isolates: Node worker threads
+ * that each run their own JVM on their own core. Isolates are launched as
+ * tasks arrive, and each runs one task at a time. Task inputs and outputs are
+ * transferred rather than copied.
+ */
+export class IsolatePool {
+  private isolates: Isolate[] = [];
+  private queue: IsolateTask[] = [];
+  private nextId: number = 0;
+  private classFiles: SharedClassFiles = null;
+  private closed: boolean = false;
+
+  /**
+   * @param size The most isolates to run.
+   * @param options Options for each isolate's JVM.
+   * @param getClassFiles Returns the bootstrap class files to share with the
+   *   isolates. Called once, when the first isolate launches.
+   */
+  constructor(private size: number, private options: JVMOptions,
+              private getClassFiles: () => {[clsFilePath: string]: ClassFileEntry}) {
+  }
+
+  /**
+   * Returns the most isolates this pool runs at once.
+   */
+  public getSize(): number {
+    return this.size;
+  }
+
+  /**
+   * Runs the task on the next free isolate. The callback receives the task's
+   * output, or an error message if the isolate failed.
+   */
+  public submit(message: IsolateMessage, cb: (err: string, result?: IsolateMessage) => void): void {
+    if (this.closed) {
+      return cb('The isolate pool is shut down.');
+    }
+    this.queue.push({id: this.nextId++, message: message, cb: cb});
+    this.dispatch();
+  }
+
+  /**
+   * Terminates every isolate, and fails any tasks still waiting.
+   */
+  public shutdown(): void {
+    this.closed = true;
+    const isolates = this.isolates, queue = this.queue;
+    this.isolates = [];
+    this.queue = [];
+    for (let i = 0; i < isolates.length; i++) {
+      isolates[i].worker.terminate();
+    }
+    for (let i = 0; i < queue.length; i++) {
+      queue[i].cb('The isolate pool is shut down.');
+    }
+  }
+
+  private dispatch(): void {
+    while (this.queue.length > 0) {
+      let isolate: Isolate = null;
+      for (let i = 0; i < this.isolates.length; i++) {
+        if (this.isolates[i].task === null) {
+          isolate = this.isolates[i];
+          break;
+        }
+      }
+      if (isolate === null) {
+        if (this.isolates.length >= this.size) {
+          return;
+        }
+        isolate = this.launch();
+      }
+      const task = this.queue.shift();
+      isolate.task = task;
+      // Only busy isolates keep the process alive.
+      isolate.worker.ref();
+      isolate.worker.postMessage({id: task.id, data: task.message.data, shared: task.message.shared}, [task.message.data]);
+    }
+  }
+
+  private launch(): Isolate {
+    if (this.classFiles === null) {
+      this.classFiles = packClassFiles(this.getClassFiles());
+    }
+    const workerData: IsolateWorkerData = {options: this.options, classFiles: this.classFiles},
+      worker = new (getWorkerThreads().Worker)(path.join(__dirname, 'isolate_worker.js'), {workerData: workerData}),
+      isolate: Isolate = {worker: worker, task: null};
+    worker.on('message', (msg: {id: number; data: ArrayBuffer; shared: any[]}) => {
+      const task = isolate.task;
+      if (task !== null && task.id === msg.id) {
+        isolate.task = null;
+        worker.unref();
+        task.cb(null, {data: msg.data, shared: msg.shared});
+        this.dispatch();
+      }
+    });
+    const failed = (reason: string) => {
+      const idx = this.isolates.indexOf(isolate);
+      if (idx === -1) {
+        return;
+      }
+      this.isolates.splice(idx, 1);
+      const task = isolate.task;
+      isolate.task = null;
+      if (task !== null) {
+        task.cb(reason);
+      }
+      // Launch a replacement, if anything is waiting.
+      this.dispatch();
+    };
+    worker.on('error', (e: any) => failed(`Isolate failed: ${e}`));
+    worker.on('exit', (code: number) => failed(`Isolate exited with code ${code}.`));
+    this.isolates.push(isolate);
+    return isolate;
+  }
+}
+
+/**
+ * An isolate's side of the pool: receives tasks from the parent, and sends
+ * back their outputs.
+ */
+export class IsolateChannel {
+  private tasks: {id: number; data: ArrayBuffer; shared: any[]}[] = [];
+  private waiting: (message: IsolateMessage) => void = null;
+  private current: number = -1;
+
+  constructor(private port: any) {
+    port.on('message', (msg: {id: number; data: ArrayBuffer; shared: any[]}) => {
+      this.tasks.push(msg);
+      this.deliver();
+    });
+  }
+
+  /**
+   * Calls the callback with the next task, once there is one.
+   */
+  public nextTask(cb: (message: IsolateMessage) => void): void {
+    this.waiting = cb;
+    this.deliver();
+  }
+
+  /**
+   * Sends the output of the current task to the parent.
+   */
+  public complete(message: IsolateMessage): void {
+    this.port.postMessage({id: this.current, data: message.data, shared: message.shared}, [message.data]);
+    this.current = -1;
+  }
+
+  private deliver(): void {
+    if (this.waiting !== null && this.tasks.length > 0) {
+      const task = this.tasks.shift(), cb = this.waiting;
+      this.waiting = null;
+      this.current = task.id;
+      cb({data: task.data, shared: task.shared});
+    }
+  }
+}
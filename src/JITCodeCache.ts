@@ -0,0 +1,225 @@
+import * as fs from 'fs';
+import * as path from 'path';
+
+/**
+ * First line of a cache file, before the JVM's configuration tag. Bump the
+ * version whenever any emitter's output changes, so old caches are
+ * discarded.
+ */
+const cacheFileHeader = 'doppio JIT code cache v5';
+const cacheFileName = 'JIT_code_cache.dump';
+
+/**
+ * Hashes a class file's bytes (FNV-1a, plus the length).
+ */
+export function hashClassFile(buffer: Buffer): string {
+  let hash = 0x811c9dc5;
+  for (let i = 0; i < buffer.length; i++) {
+    hash ^= buffer[i];
+    hash = (<any> Math).imul(hash, 0x01000193);
+  }
+  return `${(hash >>> 0).toString(16)}${buffer.length.toString(16)}`;
+}
+
+export interface CachedTrace {
+  // Full signature of the compiled method, e.g. java/lang/String/bar()V
+  signature: string;
+  pc: number;
+  // Hash of the defining class file.
+  classHash: string;
+  // The opcodes the trace was compiled from, as pc, opcode pairs.
+  opcodes: number[];
+  // Body of the compiled function.
+  code: string;
+}
+
+/**
+ * Returns the class name part of a full method signature.
+ */
+function getClassName(signature: string): string {
+  return signature.slice(0, signature.lastIndexOf('/', signature.indexOf('(')));
+}
+
+/**
+ * Parses a record's comma-separated pc, opcode pairs. Returns null if they
+ * are malformed.
+ */
+function parseOpcodes(field: string): number[] {
+  const opcodes = field === '' ? [] : field.split(',').map((n) => parseInt(n, 10));
+  if (opcodes.length % 2 !== 0) {
+    return null;
+  }
+  for (let i = 0; i < opcodes.length; i++) {
+    if (isNaN(opcodes[i])) {
+      return null;
+    }
+  }
+  return opcodes;
+}
+
+/**
+ * Persists the source of JIT-compiled traces across runs. Entries are keyed by
+ * the hash of the defining class file, the method signature and the start pc,
+ * so changing a class's bytes invalidates its entries.
+ *
+ * The cache file uses the record layout of JVM.dumpCompiledMethod, with the
+ * class hash, the trace's opcodes (comma-separated pc, opcode pairs) and the
+ * code length added to each record's header line:
+ *
+ *   signature:pc:classHash:opcodes:length:
+ *   code
+ */
+export default class JITCodeCache {
+  private traces: {[key: string]: CachedTrace} = {};
+  /**
+   * Methods with at least one cached trace, keyed by classHash:signature.
+   */
+  private methods: {[key: string]: boolean} = {};
+  /**
+   * Hashes of the classes loaded in this run, keyed by class name.
+   */
+  private loadedClassHashes: {[className: string]: string} = {};
+  /**
+   * Hashes of the classes with cached traces, keyed by class name.
+   */
+  private cachedClassHashes: {[className: string]: string} = {};
+  private dirty: boolean = false;
+
+  /**
+   * @param dir The directory holding the cache file.
+   * @param configTag Describes the JVM options that affect emitted code.
+   *   A cache written under a different tag is discarded.
+   */
+  constructor(private dir: string, private configTag: string) {
+  }
+
+  /**
+   * Reads the cache file, if present. Never fails; an unreadable or corrupt
+   * cache is treated as empty from the first bad record on.
+   */
+  public load(cb: () => void): void {
+    fs.readFile(path.resolve(this.dir, cacheFileName), (err: any, data?: Buffer) => {
+      if (!err) {
+        this.parse(data.toString());
+      }
+      cb();
+    });
+  }
+
+  private parse(text: string): void {
+    const header = `${cacheFileHeader}:${this.configTag}\n`;
+    if (text.slice(0, header.length) !== header) {
+      // Different format or options. Rewrite it on exit.
+      this.dirty = true;
+      return;
+    }
+    let i = header.length;
+    while (i < text.length) {
+      const eol = text.indexOf('\n', i);
+      if (eol === -1) {
+        break;
+      }
+      // The signature may itself contain colons, so parse from the right.
+      const fields = text.slice(i, eol).split(':');
+      if (fields.length < 6 || fields[fields.length - 1] !== '') {
+        break;
+      }
+      const signature = fields.slice(0, fields.length - 5).join(':'),
+        pc = parseInt(fields[fields.length - 5], 10),
+        classHash = fields[fields.length - 4],
+        opcodes = parseOpcodes(fields[fields.length - 3]),
+        length = parseInt(fields[fields.length - 2], 10),
+        start = eol + 1, end = start + length;
+      if (isNaN(pc) || opcodes === null || isNaN(length) || text.slice(end, end + 2) !== '\n\n') {
+        break;
+      }
+      this.add({signature: signature, pc: pc, classHash: classHash, opcodes: opcodes, code: text.slice(start, end)});
+      i = end + 2;
+    }
+    if (i < text.length) {
+      // Truncated or corrupt; drop the remainder on exit.
+      this.dirty = true;
+    }
+  }
+
+  private add(trace: CachedTrace): void {
+    this.traces[`${trace.classHash}:${trace.signature}:${trace.pc}`] = trace;
+    this.methods[`${trace.classHash}:${trace.signature}`] = true;
+    this.cachedClassHashes[getClassName(trace.signature)] = trace.classHash;
+  }
+
+  /**
+   * Records the hash of a class loaded in this run. On save, entries for
+   * other versions of the class are dropped.
+   */
+  public noteClass(className: string, classHash: string): void {
+    this.loadedClassHashes[className] = classHash;
+    const cachedHash = this.cachedClassHashes[className];
+    if (cachedHash !== undefined && cachedHash !== classHash) {
+      this.dirty = true;
+    }
+  }
+
+  /**
+   * Checks if any trace of the given method was cached.
+   */
+  public hasMethod(classHash: string, signature: string): boolean {
+    return this.methods[`${classHash}:${signature}`] === true;
+  }
+
+  /**
+   * Returns the cached trace starting at pc, or null.
+   */
+  public lookup(classHash: string, signature: string, pc: number): CachedTrace {
+    const trace = this.traces[`${classHash}:${signature}:${pc}`];
+    return trace !== undefined ? trace : null;
+  }
+
+  public store(classHash: string, signature: string, pc: number, code: string, opcodes: number[]): void {
+    this.add({signature: signature, pc: pc, classHash: classHash, opcodes: opcodes, code: code});
+    this.dirty = true;
+  }
+
+  /**
+   * Drops a cached trace that failed to compile.
+   */
+  public remove(classHash: string, signature: string, pc: number): void {
+    delete this.traces[`${classHash}:${signature}:${pc}`];
+    this.dirty = true;
+  }
+
+  /**
+   * Synchronously writes the cache file, if anything changed. Called as the
+   * JVM terminates, since the launcher may exit the process right after.
+   * JVMs in other processes may share the directory, so the file is written
+   * under a name unique to this process, then renamed into place, which
+   * replaces the old file atomically.
+   */
+  public save(): void {
+    if (!this.dirty) {
+      return;
+    }
+    const records: string[] = [`${cacheFileHeader}:${this.configTag}\n`];
+    Object.keys(this.traces).forEach((key) => {
+      const trace = this.traces[key],
+        loadedHash = this.loadedClassHashes[getClassName(trace.signature)];
+      if (loadedHash === undefined || loadedHash === trace.classHash) {
+        records.push(`${trace.signature}:${trace.pc}:${trace.classHash}:${trace.opcodes.join(',')}:${trace.code.length}:\n${trace.code}\n\n`);
+      }
+    });
+    const cacheFile = path.resolve(this.dir, cacheFileName),
+      tempFile = `${cacheFile}.${process.pid}.tmp`;
+    try {
+      fs.writeFileSync(tempFile, records.join(''));
+      fs.renameSync(tempFile, cacheFile);
+      this.dirty = false;
+    } catch (e) {
+      // The cache is an optimization; failing to write it is not an error.
+      try {
+        fs.unlinkSync(tempFile);
+      } catch (e2) {
+        // Never written.
+      }
+    }
+  }
+}
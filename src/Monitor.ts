@@ -1,4 +1,5 @@
 import {JVMThread} from './threading';
+import {Timer} from './TimerWheel';
 import {ThreadStatus} from './enums';
 import assert from './assert';
 
@@ -57,13 +58,23 @@ export default class Monitor {
        */
       isTimed: boolean;
       /**
-       * The timer ID for the timeout callback, if isTimed is true. Allows us
+       * The timer for the timeout callback, if isTimed is true. Allows us
        * to revoke timeout timers before they execute.
        */
-      timer?: number;
+      timer?: Timer;
     }
   } = {};
 
+  /**
+   * @param owner The thread that already owns the monitor, if any; used when
+   *   inflating a thin lock.
+   * @param count The owner's lock count.
+   */
+  constructor(owner: JVMThread = null, count: number = 0) {
+    this.owner = owner;
+    this.count = count;
+  }
+
   /**
    * Attempts to acquire the monitor.
    *
@@ -205,10 +216,9 @@ export default class Monitor {
 
       if (timeoutMs != null && timeoutMs !== 0) {
         // Scheduler a timer that wakes up the thread.
-        // XXX: Casting to 'number', since NodeJS typings specify a Timer.
-        this.waiting[thread.getRef()].timer = <number><any> setTimeout(() => {
+        this.waiting[thread.getRef()].timer = thread.getThreadPool().getTimerWheel().schedule(timeoutMs, () => {
           this.unwait(thread, true);
-        }, timeoutMs);
+        });
         thread.setStatus(ThreadStatus.TIMED_WAITING, this);
       } else {
         thread.setStatus(ThreadStatus.WAITING, this);
@@ -261,9 +271,9 @@ export default class Monitor {
     delete this.waiting[thread.getRef()];
     // Step 2: Remove the timer if the timer did not trigger this event.
     if (thread.getStatus() === ThreadStatus.TIMED_WAITING && !fromTimer) {
-      var timerId = waitEntry.timer;
-      assert(timerId != null);
-      clearTimeout(timerId);
+      var timer = waitEntry.timer;
+      assert(timer != null);
+      thread.getThreadPool().getTimerWheel().cancel(timer);
     }
 
     // Step 3: Acquire the monitor [ASYNC]
@@ -0,0 +1,234 @@
+import {now} from './util';
+
+/**
+ * Number of slots in each level of the wheel. Level 0 has one slot per
+ * millisecond; each slot of a higher level spans a whole turn of the level
+ * below it.
+ */
+const levelSizes = [256, 64, 64, 64];
+
+/**
+ * Milliseconds spanned by one slot of each level.
+ */
+const levelSpans = [1, 256, 256 * 64, 256 * 64 * 64];
+
+/**
+ * A timeout registered with a TimerWheel. Timers are kept in doubly-linked
+ * lists, so cancelling one takes constant time.
+ */
+export class Timer {
+  public prev: Timer = null;
+  public next: Timer = null;
+
+  /**
+   * @param expires The wheel tick (millisecond) at which the timer fires.
+   * @param cb The callback to run when it fires.
+   */
+  constructor(public expires: number, public cb: () => void) {
+  }
+
+  /**
+   * Checks if the timer is still waiting to fire.
+   */
+  public isPending(): boolean {
+    return this.prev !== null;
+  }
+}
+
+/**
+ * A hierarchical timer wheel for the timeouts of sleeping, timed waiting and
+ * timed parked threads. Timeouts are rounded up to the millisecond, and the
+ * wheel keeps a single JavaScript timer armed for its next deadline, so
+ * timeouts that expire together wake up together.
+ */
+export default class TimerWheel {
+  /**
+   * The slots of each level. Each slot is the sentinel of a circular list.
+   */
+  private levels: Timer[][] = [];
+  /**
+   * The wheel's epoch, from util.now.
+   */
+  private epoch: number = now();
+  /**
+   * The last tick the wheel has processed.
+   */
+  private currentTick: number = 0;
+  /**
+   * Number of pending timers.
+   */
+  private count: number = 0;
+  /**
+   * The JavaScript timer for the next deadline, and the tick it is set for.
+   */
+  private jsTimer: any = null;
+  private jsTimerTick: number = -1;
+
+  constructor() {
+    for (let i = 0; i < levelSizes.length; i++) {
+      const slots: Timer[] = [];
+      for (let j = 0; j < levelSizes[i]; j++) {
+        const sentinel = new Timer(-1, null);
+        sentinel.prev = sentinel.next = sentinel;
+        slots.push(sentinel);
+      }
+      this.levels.push(slots);
+    }
+  }
+
+  /**
+   * Runs the callback after the given number of milliseconds.
+   */
+  public schedule(delay: number, cb: () => void): Timer {
+    if (this.count === 0) {
+      this.currentTick = Math.max(this.currentTick, Math.floor(now() - this.epoch));
+    }
+    const timer = new Timer(Math.max(Math.ceil(now() - this.epoch + delay), this.currentTick + 1), cb);
+    this.insert(timer);
+    this.count++;
+    this.arm();
+    return timer;
+  }
+
+  /**
+   * Cancels the timer, if it has not fired yet.
+   */
+  public cancel(timer: Timer): void {
+    if (timer.isPending()) {
+      this.unlink(timer);
+      if (--this.count === 0) {
+        // Don't keep the JavaScript timer around for nothing.
+        this.arm();
+      }
+    }
+  }
+
+  private unlink(timer: Timer): void {
+    timer.prev.next = timer.next;
+    timer.next.prev = timer.prev;
+    timer.prev = timer.next = null;
+  }
+
+  /**
+   * Puts the timer in the slot for its expiry. Timers further out than the
+   * top level spans go in the top level's furthest slot, and move down as
+   * the wheel turns.
+   */
+  private insert(timer: Timer): void {
+    const delta = timer.expires - this.currentTick, top = levelSizes.length - 1;
+    let level = 0;
+    while (level < top && delta >= levelSpans[level + 1]) {
+      level++;
+    }
+    let slotTick = timer.expires;
+    if (level === top && delta >= levelSpans[top] * levelSizes[top]) {
+      slotTick = this.currentTick + levelSpans[top] * (levelSizes[top] - 1);
+    }
+    const sentinel = this.levels[level][Math.floor(slotTick / levelSpans[level]) % levelSizes[level]];
+    timer.prev = sentinel.prev;
+    timer.next = sentinel;
+    sentinel.prev.next = timer;
+    sentinel.prev = timer;
+  }
+
+  /**
+   * Moves the timers in the given slot back into the wheel, into lower
+   * levels.
+   */
+  private cascade(level: number, tick: number): void {
+    const sentinel = this.levels[level][Math.floor(tick / levelSpans[level]) % levelSizes[level]];
+    let timer = sentinel.next;
+    sentinel.prev = sentinel.next = sentinel;
+    while (timer !== sentinel) {
+      const next = timer.next;
+      this.insert(timer);
+      timer = next;
+    }
+  }
+
+  /**
+   * Processes every tick up to the current time, and runs the callbacks of
+   * the timers that expired.
+   */
+  private advance(): void {
+    const nowTick = Math.floor(now() - this.epoch);
+    if (this.count === 0) {
+      this.currentTick = Math.max(this.currentTick, nowTick);
+      return;
+    }
+    const expired: Timer[] = [];
+    while (this.currentTick < nowTick) {
+      const tick = ++this.currentTick;
+      // At the start of each turn of a level, move the next slot of the
+      // level above into it, starting from the highest level.
+      let top = 0;
+      while (top + 1 < levelSizes.length && tick % levelSpans[top + 1] === 0) {
+        top++;
+      }
+      for (let level = top; level > 0; level--) {
+        this.cascade(level, tick);
+      }
+      const sentinel = this.levels[0][tick % levelSizes[0]];
+      while (sentinel.next !== sentinel) {
+        const timer = sentinel.next;
+        this.unlink(timer);
+        this.count--;
+        expired.push(timer);
+      }
+      if (this.count === 0) {
+        this.currentTick = nowTick;
+      }
+    }
+    for (let i = 0; i < expired.length; i++) {
+      expired[i].cb();
+    }
+  }
+
+  /**
+   * Returns the next tick at which a timer expires or a slot cascades, or -1
+   * if there are no timers.
+   */
+  private nextTick(): number {
+    if (this.count === 0) {
+      return -1;
+    }
+    let next = -1;
+    for (let level = 0; level < levelSizes.length; level++) {
+      const span = levelSpans[level], base = Math.floor(this.currentTick / span);
+      for (let k = 1; k <= levelSizes[level]; k++) {
+        const sentinel = this.levels[level][(base + k) % levelSizes[level]];
+        if (sentinel.next !== sentinel) {
+          const tick = (base + k) * span;
+          if (next === -1 || tick < next) {
+            next = tick;
+          }
+          break;
+        }
+      }
+    }
+    return next;
+  }
+
+  /**
+   * Sets the JavaScript timer for the wheel's next deadline.
+   */
+  private arm(): void {
+    const tick = this.nextTick();
+    if (tick === this.jsTimerTick) {
+      return;
+    }
+    if (this.jsTimer !== null) {
+      clearTimeout(this.jsTimer);
+      this.jsTimer = null;
+    }
+    this.jsTimerTick = tick;
+    if (tick !== -1) {
+      this.jsTimer = setTimeout(() => {
+        this.jsTimer = null;
+        this.jsTimerTick = -1;
+        this.advance();
+        this.arm();
+      }, Math.max(0, tick - (now() - this.epoch)));
+    }
+  }
+}
@@ -0,0 +1,28 @@
+import {ClassData} from './ClassData';
+import * as JVMTypes from '../includes/JVMTypes';
+
+/**
+ * A per-site cache for CHECKCAST_FAST and INSTANCEOF_FAST. Remembers the
+ * last class tested at the site and whether it is a subtype of the site's
+ * target class, so a site that keeps seeing the same class skips the subtype
+ * check.
+ */
+export default class TypeCheckCache {
+  public lastClass: ClassData = null;
+  public lastResult: boolean = false;
+
+  constructor(public target: ClassData) {
+  }
+
+  /**
+   * Checks if the given (non-null) object is an instance of the target class.
+   */
+  public isInstance(obj: JVMTypes.java_lang_Object): boolean {
+    const cls = obj.getClass();
+    if (cls !== this.lastClass) {
+      this.lastResult = cls.isCastable(this.target);
+      this.lastClass = cls;
+    }
+    return this.lastResult;
+  }
+}
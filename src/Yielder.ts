@@ -0,0 +1,119 @@
+import {setImmediate} from 'browserfs';
+import {are_in_browser, now} from './util';
+
+/**
+ * The longest a batch of thread switches may run without yielding to the
+ * JavaScript event loop, in milliseconds.
+ */
+const maxBatchTime = 4;
+
+/**
+ * The most thread switches in one batch.
+ */
+const maxBatchSwitches = 256;
+
+/**
+ * Decides how the scheduler gets back to running Java threads after a thread
+ * switch. Strategies:
+ * * 'set-immediate': always yield to the event loop through setImmediate.
+ * * 'message-channel': always yield to the event loop, through a
+ *   MessageChannel in browsers, which avoids the delays of setImmediate
+ *   polyfills.
+ * * 'adaptive': while no thread is waiting on asynchronous I/O, run several
+ *   thread switches back to back in one macrotask, up to a few milliseconds.
+ *   Otherwise yield through setImmediate, which lets I/O callbacks run, or
+ *   through a MessageChannel.
+ */
+export default class Yielder {
+  /**
+   * Number of threads waiting on asynchronous I/O.
+   */
+  private pendingIO: number = 0;
+  /**
+   * True while runBatch is running callbacks.
+   */
+  private inBatch: boolean = false;
+  private batchStart: number = 0;
+  private batchSwitches: number = 0;
+  /**
+   * The callback runBatch should run after the current one.
+   */
+  private next: () => void = null;
+  /**
+   * Callbacks waiting on the MessageChannel, if one is used.
+   */
+  private channelQueue: (() => void)[] = [];
+  private channel: MessageChannel = null;
+
+  constructor(private strategy: string) {
+    if (strategy !== 'adaptive' && strategy !== 'message-channel' && strategy !== 'set-immediate') {
+      throw new TypeError(`Unknown yield strategy: ${strategy}`);
+    }
+    // Node's MessageChannel keeps the process alive, and its setImmediate is
+    // already fast.
+    if (strategy !== 'set-immediate' && are_in_browser() && typeof MessageChannel !== 'undefined') {
+      this.channel = new MessageChannel();
+      this.channel.port1.onmessage = () => {
+        const cb = this.channelQueue.shift();
+        if (cb !== undefined) {
+          this.runBatch(cb);
+        }
+      };
+    }
+  }
+
+  /**
+   * Called when a thread starts waiting on asynchronous I/O.
+   */
+  public ioStarted(): void {
+    this.pendingIO++;
+  }
+
+  /**
+   * Called when a thread stops waiting on asynchronous I/O.
+   */
+  public ioFinished(): void {
+    this.pendingIO--;
+  }
+
+  /**
+   * Runs the given callback once the current Java thread has returned to the
+   * scheduler.
+   */
+  public schedule(cb: () => void): void {
+    if (this.inBatch && this.next === null && this.strategy === 'adaptive' && this.pendingIO === 0 &&
+        this.batchSwitches < maxBatchSwitches && now() - this.batchStart < maxBatchTime) {
+      this.next = cb;
+    } else if (this.channel !== null && (this.strategy === 'message-channel' || this.pendingIO === 0)) {
+      this.channelQueue.push(cb);
+      this.channel.port2.postMessage(null);
+    } else {
+      setImmediate(() => this.runBatch(cb));
+    }
+  }
+
+  /**
+   * Runs the callback, then any callbacks it schedules into the same batch.
+   */
+  private runBatch(cb: () => void): void {
+    this.inBatch = true;
+    this.batchStart = now();
+    this.batchSwitches = 0;
+    try {
+      while (cb !== null) {
+        this.next = null;
+        this.batchSwitches++;
+        cb();
+        cb = this.next;
+      }
+    } finally {
+      // If a callback threw, still run the one it scheduled.
+      const pending = this.next;
+      this.inBatch = false;
+      this.next = null;
+      if (pending !== null) {
+        setImmediate(() => this.runBatch(pending));
+      }
+    }
+  }
+}
@@ -69,6 +69,10 @@ export class Code implements IAttribute {
     return this.maxStack;
   }
 
+  public getMaxLocals(): number {
+    return this.maxLocals;
+  }
+
   public static parse(byteStream: ByteStream, constantPool: ConstantPool): IAttribute {
     var maxStack = byteStream.getUint16(),
       maxLocals = byteStream.getUint16(),
@@ -408,7 +408,26 @@ export enum OpCode {
   INVOKEBASIC = 0xf4,
   LINKTOSPECIAL = 0xf5,
   LINKTOVIRTUAL = 0xf7,
-  INVOKEDYNAMIC_FAST = 0xf8
+  INVOKEDYNAMIC_FAST = 0xf8,
+  // Superinstructions: fused sequences of common opcodes. Each replaces the
+  // first opcode of its sequence in place, and keeps its layout. In the
+  // comments, iload* is any of iload and iload_<n>.
+  // aload_0; getfield_fast32
+  ALOAD_0_GETFIELD_FAST32 = 0xe0,
+  // iload; iload*; if_icmp<cond>
+  ILOAD_ILOAD_IF_ICMP = 0xe1,
+  // iload_<n>; iload*; if_icmp<cond>
+  ILOAD_0_ILOAD_IF_ICMP = 0xe2,
+  ILOAD_1_ILOAD_IF_ICMP = 0xe3,
+  ILOAD_2_ILOAD_IF_ICMP = 0xe4,
+  ILOAD_3_ILOAD_IF_ICMP = 0xe5,
+  // aload; iload*; iaload
+  ALOAD_ILOAD_IALOAD = 0xe6,
+  // aload_<n>; iload*; iaload
+  ALOAD_0_ILOAD_IALOAD = 0xe7,
+  ALOAD_1_ILOAD_IALOAD = 0xe8,
+  ALOAD_2_ILOAD_IALOAD = 0xe9,
+  ALOAD_3_ILOAD_IALOAD = 0xea
 }
 
 export enum OpcodeLayoutType {
@@ -445,7 +464,8 @@ function assignOpcodeLayout(layoutType: OpcodeLayoutType, opcodes: OpCode[]): vo
 assignOpcodeLayout(OpcodeLayoutType.UINT8_VALUE,
   [OpCode.ALOAD, OpCode.ASTORE, OpCode.DLOAD, OpCode.DSTORE,
    OpCode.FLOAD, OpCode.FSTORE, OpCode.ILOAD, OpCode.ISTORE,
-   OpCode.LLOAD, OpCode.LSTORE, OpCode.RET]);
+   OpCode.LLOAD, OpCode.LSTORE, OpCode.RET,
+   OpCode.ILOAD_ILOAD_IF_ICMP, OpCode.ALOAD_ILOAD_IALOAD]);
 assignOpcodeLayout(OpcodeLayoutType.CONSTANT_POOL_UINT8, [OpCode.LDC]);
 assignOpcodeLayout(OpcodeLayoutType.CONSTANT_POOL,
   [OpCode.LDC_W, OpCode.LDC2_W,
@@ -121,6 +121,21 @@ export default class gLong {
   public static MAX_VALUE = gLong.fromBits(0xFFFFFFFF, 0x7FFFFFFF);
   public static MIN_VALUE = gLong.fromBits(0, 0x80000000);
 
+  /**
+   * Returns the Long stored in an element of a long[]'s backing array.
+   * Identity unless long[] is backed by a BigInt64Array (see BigIntLong).
+   */
+  public static fromArrayElement(value: any): gLong {
+    return value;
+  }
+
+  /**
+   * Returns the value to store in an element of a long[]'s backing array.
+   */
+  public static toArrayElement(value: gLong): any {
+    return value;
+  }
+
   /**
    * Returns a Long representation of the given string, written using the given
    * radix.
@@ -42,6 +42,54 @@ export interface JVMOptions {
   intMode?: boolean;
   // Dump JIT Statistics
   dumpJITStats?: boolean;
+  // Keep local variables in JavaScript variables inside of JIT-compiled code
+  promoteLocals?: boolean;
+  // Method entries + loop back-edges before a method starts collecting a JIT profile
+  jitProfileThreshold?: number;
+  // Further method entries + loop back-edges, once profiling, before a method is JIT compiled
+  jitCompileThreshold?: number;
+  // Directory for the persistent JIT code cache. Null disables the cache.
+  jitCodeCacheDir?: string;
+  // Representation of Java longs: 'glong' (two int32s) or 'bigint'. Applies
+  // to every JVM in this JavaScript context, and must be picked before the
+  // first one boots.
+  longRepresentation?: string;
+  // Interpret pre-decoded bytecode rather than decoding operands on every run
+  directThreaded?: boolean;
+  // Fuse common opcode sequences into superinstructions in the interpreter
+  superinstructions?: boolean;
+  // Move invoke arguments from the caller's operand stack straight into the
+  // callee's frame, rather than passing them in a new array
+  stackArgs?: boolean;
+  // Call native methods that usually return synchronously without a stack
+  // frame. Requires stackArgs.
+  inlineNatives?: boolean;
+  // Find virtual and interface call targets through method tables indexed
+  // by vmindex, rather than by signature lookup on the receiver
+  indexedDispatch?: boolean;
+  // Throw preallocated exceptions without stack traces from sites that often
+  // throw NullPointerException, ArrayIndexOutOfBoundsException,
+  // ArithmeticException or ClassCastException, like HotSpot
+  omitStackTraceInFastThrow?: boolean;
+  // Run compiled callees as nested JavaScript calls from the compiled code
+  // that invokes them, rather than from the thread loop
+  nestedCalls?: boolean;
+  // Thread scheduler: 'mlfq' (multi-level feedback queues, which honor Java
+  // thread priorities and favor threads that often block) or 'round-robin'
+  scheduler?: string;
+  // How the scheduler yields between thread switches: 'adaptive' (run several
+  // switches in one macrotask while no thread waits on I/O), 'message-channel'
+  // or 'set-immediate'
+  yieldStrategy?: string;
+  // Print scheduling latency statistics on exit
+  dumpSchedulingStats?: boolean;
+  // Number of isolates (worker threads with their own JVM) that run tasks
+  // submitted through doppio.Isolates. 0 runs those tasks on threads of this
+  // JVM instead. Ignored where worker threads are unavailable.
+  isolates?: number;
+  // [Isolates only] Bootstrap class files shared by the JVM that launched
+  // this isolate, keyed by class file path.
+  isolateClassFiles?: {[clsFilePath: string]: {path: string; data: Buffer}};
 }
 
 /**
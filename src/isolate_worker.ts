@@ -0,0 +1,25 @@
+/**
+ * Entry point of an isolate's worker thread. Boots a JVM with the options the
+ * parent passed, and runs doppio.IsolateWorker, which runs the tasks the
+ * parent sends until the parent terminates the thread.
+ */
+import JVM from './jvm';
+import {IsolateChannel, IsolateWorkerData, unpackClassFiles} from './Isolates';
+import getGlobalRequire from './global_require';
+
+const workerThreads = getGlobalRequire()('worker_threads'),
+  workerData: IsolateWorkerData = workerThreads.workerData,
+  options = workerData.options;
+
+// Listen right away, so no task sent during boot is lost.
+const channel = new IsolateChannel(workerThreads.parentPort);
+options.isolateClassFiles = unpackClassFiles(workerData.classFiles);
+new JVM(options, (err: any, jvm?: JVM): void => {
+  if (err) {
+    throw new Error(`Isolate failed to boot: ${err}`);
+  }
+  jvm.setIsolateChannel(channel);
+  jvm.runClass('doppio.IsolateWorker', [], (code: number): void => {
+    process.exit(code);
+  });
+});
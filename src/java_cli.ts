@@ -47,6 +47,30 @@ let parser = new OptionParser({
       desc: 'dump JIT statistics',
       enabled: !RELEASE
     },
+    'no-promote-locals': {
+      desc: 'keep locals in the stack frame inside of JIT-compiled code'
+    },
+    'direct-threaded': {
+      desc: 'interpret pre-decoded bytecode'
+    },
+    'no-superinstructions': {
+      desc: 'do not fuse common opcode sequences in the interpreter'
+    },
+    'no-stack-args': {
+      desc: 'pass invoke arguments to methods in a new array'
+    },
+    'no-inline-natives': {
+      desc: 'give every native method call a stack frame'
+    },
+    'no-indexed-dispatch': {
+      desc: 'find virtual and interface methods by signature rather than by method table index'
+    },
+    'no-omit-stack-trace-in-fast-throw': {
+      desc: 'always create new exceptions with stack traces for implicit NPEs, array index, arithmetic and class cast exceptions'
+    },
+    'no-nested-calls': {
+      desc: 'return to the thread loop after every call from JIT-compiled code'
+    },
     log: {
       desc: 'log level, [0-10]|vtrace|trace|debug|error',
       type: ParseType.NORMAL_VALUE_SYNTAX,
@@ -61,6 +85,12 @@ let parser = new OptionParser({
     'list-class-cache': {
       desc: 'list all of the bootstrap loaded classes after execution'
     },
+    'dump-opcode-sequences': {
+      type: ParseType.NORMAL_VALUE_SYNTAX,
+      optDesc: ' <file>',
+      desc: 'count the opcode pairs and triples the interpreter runs, and write them to a file on exit',
+      enabled: !RELEASE
+    },
     'dump-compiled-code': {
       type: ParseType.NORMAL_VALUE_SYNTAX,
       optDesc: ' <directory>',
@@ -88,6 +118,44 @@ let parser = new OptionParser({
       optDesc: ':<directories and zip/jar files separated by :>',
       desc: 'set search path for bootstrap classes and resources'
     },
+    'jit-code-cache': {
+      type: ParseType.NORMAL_VALUE_SYNTAX,
+      optDesc: ' <directory>',
+      desc: 'reuse JIT-compiled code across runs, stored in the given directory'
+    },
+    scheduler: {
+      type: ParseType.NORMAL_VALUE_SYNTAX,
+      optDesc: ' <mlfq|round-robin>',
+      desc: 'schedule threads with multi-level feedback queues (mlfq) or with a weighted round robin'
+    },
+    'yield-strategy': {
+      type: ParseType.NORMAL_VALUE_SYNTAX,
+      optDesc: ' <adaptive|message-channel|set-immediate>',
+      desc: 'how the thread scheduler yields to the JavaScript event loop between thread switches'
+    },
+    'dump-scheduling-stats': {
+      desc: 'print how long threads waited to run once ready on exit'
+    },
+    isolates: {
+      type: ParseType.NORMAL_VALUE_SYNTAX,
+      optDesc: ' <n>',
+      desc: 'run tasks submitted through doppio.Isolates on up to n worker threads, each with its own JVM'
+    },
+    'long-representation': {
+      type: ParseType.NORMAL_VALUE_SYNTAX,
+      optDesc: ' <glong|bigint>',
+      desc: 'back Java longs with pairs of 32-bit integers (glong) or with BigInts (bigint)'
+    },
+    'X:ProfileThreshold': {
+      type: ParseType.NORMAL_VALUE_SYNTAX,
+      optDesc: ' <n>',
+      desc: 'method entries and loop back-edges before a method starts collecting a JIT profile'
+    },
+    'X:CompileThreshold': {
+      type: ParseType.NORMAL_VALUE_SYNTAX,
+      optDesc: ' <n>',
+      desc: 'further method entries and loop back-edges before a profiled method is JIT compiled'
+    },
     'X:+PrintCompilation': {
       desc: 'Print JIT compilation details',
       enabled: !RELEASE
@@ -129,6 +197,60 @@ export default function java(args: string[], opts: JVMCLIOptions,
 
   opts.intMode = nonStandard.flag('int', false);
   opts.dumpJITStats = nonStandard.flag('dump-JIT-stats', false);
+  opts.promoteLocals = !nonStandard.flag('no-promote-locals', false);
+  opts.directThreaded = nonStandard.flag('direct-threaded', false);
+  opts.superinstructions = !nonStandard.flag('no-superinstructions', false);
+  opts.stackArgs = !nonStandard.flag('no-stack-args', false);
+  opts.inlineNatives = !nonStandard.flag('no-inline-natives', false);
+  opts.indexedDispatch = !nonStandard.flag('no-indexed-dispatch', false);
+  opts.omitStackTraceInFastThrow = !nonStandard.flag('no-omit-stack-trace-in-fast-throw', false);
+  opts.nestedCalls = !nonStandard.flag('no-nested-calls', false);
+
+  let profileThreshold = nonStandard.stringOption('X:ProfileThreshold', null),
+    compileThreshold = nonStandard.stringOption('X:CompileThreshold', null);
+  if (profileThreshold !== null) {
+    opts.jitProfileThreshold = parseInt(profileThreshold, 10);
+  }
+  if (compileThreshold !== null) {
+    opts.jitCompileThreshold = parseInt(compileThreshold, 10);
+  }
+  let longRepresentation = nonStandard.stringOption('long-representation', null);
+  if (longRepresentation !== null) {
+    if (longRepresentation !== 'glong' && longRepresentation !== 'bigint') {
+      process.stderr.write(`Unrecognized long representation: ${longRepresentation}.\n`);
+      return printHelp(opts.launcherName, parser.help('default'), doneCb, 1);
+    }
+    opts.longRepresentation = longRepresentation;
+  }
+  let scheduler = nonStandard.stringOption('scheduler', null);
+  if (scheduler !== null) {
+    if (scheduler !== 'mlfq' && scheduler !== 'round-robin') {
+      process.stderr.write(`Unrecognized thread scheduler: ${scheduler}.\n`);
+      return printHelp(opts.launcherName, parser.help('default'), doneCb, 1);
+    }
+    opts.scheduler = scheduler;
+  }
+  let yieldStrategy = nonStandard.stringOption('yield-strategy', null);
+  if (yieldStrategy !== null) {
+    if (yieldStrategy !== 'adaptive' && yieldStrategy !== 'message-channel' && yieldStrategy !== 'set-immediate') {
+      process.stderr.write(`Unrecognized yield strategy: ${yieldStrategy}.\n`);
+      return printHelp(opts.launcherName, parser.help('default'), doneCb, 1);
+    }
+    opts.yieldStrategy = yieldStrategy;
+  }
+  opts.dumpSchedulingStats = nonStandard.flag('dump-scheduling-stats', false);
+  let isolates = nonStandard.stringOption('isolates', null);
+  if (isolates !== null) {
+    if (!/^[0-9]+$/.test(isolates)) {
+      process.stderr.write(`Invalid number of isolates: ${isolates}.\n`);
+      return printHelp(opts.launcherName, parser.help('default'), doneCb, 1);
+    }
+    opts.isolates = parseInt(isolates, 10);
+  }
+  let jitCodeCache = nonStandard.stringOption('jit-code-cache', null);
+  if (jitCodeCache) {
+    opts.jitCodeCacheDir = jitCodeCache;
+  }
 
   if (/^[0-9]+$/.test(logOption)) {
     setLogLevel(parseInt(logOption, 10));
@@ -224,6 +346,11 @@ export default function java(args: string[], opts: JVMCLIOptions,
     vtraceMethods.split(':').forEach((m: string) => jvmState.vtraceMethod(m));
   }
 
+  let dumpOpcodeSequences = nonStandard.stringOption('dump-opcode-sequences', null);
+  if (dumpOpcodeSequences) {
+    jvmState.dumpOpcodeSequences(dumpOpcodeSequences);
+  }
+
   let dumpCompiledCode = nonStandard.stringOption('dump-compiled-code', null);
   if (dumpCompiledCode) {
     jvmState.dumpCompiledCode(dumpCompiledCode);
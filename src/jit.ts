@@ -209,11 +209,11 @@ table[OpCode.DCONST_1] = {hasBranch: false, pops: 0, pushes: 2, emit: (pops, pus
 const aload32: JitInfo = {hasBranch: false, pops: 2, pushes: 1, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
   const onError = makeOnError(onErrorPushes, pc);
   return `
-if(!u.isNull(t,f,${pops[1]})){
+if(!u.isNull(t,f,${pops[1]},${pc})){
 var len${suffix}=${pops[1]}.array.length;
 if(${pops[0]}<0||${pops[0]}>=len${suffix}){
 ${onError}
-u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[0]}+" not in length "+len${suffix}+" array of type "+${pops[1]}.getClass().getInternalName());
+u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[0]}+" not in length "+len${suffix}+" array of type "+${pops[1]}.getClass().getInternalName(),${pc});
 }else{var ${pushes[0]}=${pops[1]}.array[${pops[0]}];${onSuccess}}
 }else{${onError}}`;
 }}
@@ -229,27 +229,38 @@ table[OpCode.SALOAD] = aload32;
 const aload64: JitInfo = {hasBranch: false, pops: 2, pushes: 2, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
   const onError = makeOnError(onErrorPushes, pc);
   return `
-if(!u.isNull(t,f,${pops[1]})){
+if(!u.isNull(t,f,${pops[1]},${pc})){
 var len${suffix}=${pops[1]}.array.length;
 if(${pops[0]}<0||${pops[0]}>=len${suffix}){
 ${onError}
-u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[0]}+" not in length "+len${suffix}+" array of type "+${pops[1]}.getClass().getInternalName());
+u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[0]}+" not in length "+len${suffix}+" array of type "+${pops[1]}.getClass().getInternalName(),${pc});
 }else{var ${pushes[0]}=${pops[1]}.array[${pops[0]}],${pushes[1]}=null;${onSuccess}}
 }else{${onError}}`;
 }}
 
 
 table[OpCode.DALOAD] = aload64;
-table[OpCode.LALOAD] = aload64;
+
+table[OpCode.LALOAD] = {hasBranch: false, pops: 2, pushes: 2, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
+  const onError = makeOnError(onErrorPushes, pc);
+  return `
+if(!u.isNull(t,f,${pops[1]},${pc})){
+var len${suffix}=${pops[1]}.array.length;
+if(${pops[0]}<0||${pops[0]}>=len${suffix}){
+${onError}
+u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[0]}+" not in length "+len${suffix}+" array of type "+${pops[1]}.getClass().getInternalName(),${pc});
+}else{var ${pushes[0]}=u.gLong.fromArrayElement(${pops[1]}.array[${pops[0]}]),${pushes[1]}=null;${onSuccess}}
+}else{${onError}}`;
+}}
 
 const astore32: JitInfo = {hasBranch: false, pops: 3, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
   const onError = makeOnError(onErrorPushes, pc);
   return `
-if(!u.isNull(t,f,${pops[2]})){
+if(!u.isNull(t,f,${pops[2]},${pc})){
 var len${suffix}=${pops[2]}.array.length;
 if(${pops[1]}<0||${pops[1]}>=len${suffix}){
 ${onError}
-u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[1]}+" not in length "+len${suffix}+" array of type "+${pops[2]}.getClass().getInternalName());
+u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[1]}+" not in length "+len${suffix}+" array of type "+${pops[2]}.getClass().getInternalName(),${pc});
 }else{${pops[2]}.array[${pops[1]}]=${pops[0]};${onSuccess}}
 }else{${onError}}`;
 }}
@@ -265,18 +276,29 @@ table[OpCode.SASTORE] = astore32;
 const astore64: JitInfo = {hasBranch: false, pops: 4, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
   const onError = makeOnError(onErrorPushes, pc);
   return `
-if(!u.isNull(t,f,${pops[3]})){
+if(!u.isNull(t,f,${pops[3]},${pc})){
 var len${suffix}=${pops[3]}.array.length;
 if(${pops[2]}<0||${pops[2]}>=len${suffix}){
 ${onError}
-u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[2]}+" not in length "+len${suffix}+" array of type "+${pops[3]}.getClass().getInternalName());
+u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[2]}+" not in length "+len${suffix}+" array of type "+${pops[3]}.getClass().getInternalName(),${pc});
 }else{${pops[3]}.array[${pops[2]}]=${pops[1]};${onSuccess}}
 }else{${onError}}`;
 }}
 
 
 table[OpCode.DASTORE] = astore64;
-table[OpCode.LASTORE] = astore64;
+
+table[OpCode.LASTORE] = {hasBranch: false, pops: 4, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
+  const onError = makeOnError(onErrorPushes, pc);
+  return `
+if(!u.isNull(t,f,${pops[3]},${pc})){
+var len${suffix}=${pops[3]}.array.length;
+if(${pops[2]}<0||${pops[2]}>=len${suffix}){
+${onError}
+u.throwException(t,f,'Ljava/lang/ArrayIndexOutOfBoundsException;',""+${pops[2]}+" not in length "+len${suffix}+" array of type "+${pops[3]}.getClass().getInternalName(),${pc});
+}else{${pops[3]}.array[${pops[2]}]=u.gLong.toArrayElement(${pops[1]});${onSuccess}}
+}else{${onError}}`;
+}}
 
 // TODO: get the constant at JIT time ?
 table[OpCode.LDC] = {hasBranch: false, pops: 0, pushes: 1, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
@@ -323,7 +345,7 @@ table[OpCode.GETFIELD_FAST32] = {hasBranch: false, pops: 1, pushes: 1, emit: (po
   const index = code.readUInt16BE(pc + 1);
   const fieldInfo = <FieldReference> method.cls.constantPool.get(index);
   const name = fieldInfo.fullFieldName.replace(escapeStringRegEx, "\\\\")
-  return `if(!u.isNull(t,f,${pops[0]})){var ${pushes[0]}=${pops[0]}['${name}'];${onSuccess}}else{${onError}}`;
+  return `if(!u.isNull(t,f,${pops[0]},${pc})){var ${pushes[0]}=${pops[0]}['${name}'];${onSuccess}}else{${onError}}`;
 }};
 
 table[OpCode.GETFIELD_FAST64] = {hasBranch: false, pops: 1, pushes: 2, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes, method) => {
@@ -331,7 +353,7 @@ table[OpCode.GETFIELD_FAST64] = {hasBranch: false, pops: 1, pushes: 2, emit: (po
   const index = code.readUInt16BE(pc + 1);
   const fieldInfo = <FieldReference> method.cls.constantPool.get(index);
   const name = fieldInfo.fullFieldName.replace(escapeStringRegEx, "\\\\")
-  return `if(!u.isNull(t,f,${pops[0]})){var ${pushes[0]}=${pops[0]}['${name}'],${pushes[1]}=null;${onSuccess}}else{${onError}}`;
+  return `if(!u.isNull(t,f,${pops[0]},${pc})){var ${pushes[0]}=${pops[0]}['${name}'],${pushes[1]}=null;${onSuccess}}else{${onError}}`;
 }};
 
 table[OpCode.PUTFIELD_FAST32] = {hasBranch: false, pops: 2, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes, method) => {
@@ -339,7 +361,7 @@ table[OpCode.PUTFIELD_FAST32] = {hasBranch: false, pops: 2, pushes: 0, emit: (po
   const index = code.readUInt16BE(pc + 1);
   const fieldInfo = <FieldReference> method.cls.constantPool.get(index);
   const name = fieldInfo.fullFieldName.replace(escapeStringRegEx, "\\\\")
-  return `if(!u.isNull(t,f,${pops[1]})){${pops[1]}['${name}']=${pops[0]};${onSuccess}}else{${onError}}`;
+  return `if(!u.isNull(t,f,${pops[1]},${pc})){${pops[1]}['${name}']=${pops[0]};${onSuccess}}else{${onError}}`;
 }};
 
 table[OpCode.PUTFIELD_FAST64] = {hasBranch: false, pops: 3, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes, method) => {
@@ -347,13 +369,13 @@ table[OpCode.PUTFIELD_FAST64] = {hasBranch: false, pops: 3, pushes: 0, emit: (po
   const index = code.readUInt16BE(pc + 1);
   const fieldInfo = <FieldReference> method.cls.constantPool.get(index);
   const name = fieldInfo.fullFieldName.replace(escapeStringRegEx, "\\\\")
-  return `if(!u.isNull(t,f,${pops[2]})){${pops[2]}['${name}']=${pops[1]};${onSuccess}}else{${onError}}`;
+  return `if(!u.isNull(t,f,${pops[2]},${pc})){${pops[2]}['${name}']=${pops[1]};${onSuccess}}else{${onError}}`;
 }};
 
 // TODO: get the constant at JIT time ?
 table[OpCode.INSTANCEOF_FAST] = {hasBranch: false, pops: 1, pushes: 1, emit: (pops, pushes, suffix, onSuccess, code, pc) => {
   const index = code.readUInt16BE(pc + 1);
-  return `var cls${suffix}=f.method.cls.constantPool.get(${index}).cls,${pushes[0]}=${pops[0]}!==null?(${pops[0]}.getClass().isCastable(cls${suffix})?1:0):0;${onSuccess}`;
+  return `var cls${suffix}=f.method.cls.constantPool.get(${index}).cls,${pushes[0]}=${pops[0]}!==null?(f.method.getTypeCheckCache(${pc},cls${suffix}).isInstance(${pops[0]})?1:0):0;${onSuccess}`;
 }};
 
 table[OpCode.CHECKCAST_FAST] = {hasBranch: false, pops: 1, pushes: 1, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes, method) => {
@@ -361,14 +383,14 @@ table[OpCode.CHECKCAST_FAST] = {hasBranch: false, pops: 1, pushes: 1, emit: (pop
   const classRef = <ClassReference> method.cls.constantPool.get(index),
     targetClass = classRef.cls.getExternalName();
   return `var cls${suffix}=f.method.cls.constantPool.get(${index}).cls;
-if((${pops[0]}!=null)&&!${pops[0]}.getClass().isCastable(cls${suffix})){
-u.throwException(t,f,'Ljava/lang/ClassCastException;',${pops[0]}.getClass().getExternalName()+' cannot be cast to ${targetClass}');
+if((${pops[0]}!=null)&&!f.method.getTypeCheckCache(${pc},cls${suffix}).isInstance(${pops[0]})){
+u.throwException(t,f,'Ljava/lang/ClassCastException;',${pops[0]}.getClass().getExternalName()+' cannot be cast to ${targetClass}',${pc});
 }else{var ${pushes[0]}=${pops[0]};${onSuccess}}`
 }};
 
 table[OpCode.ARRAYLENGTH] = {hasBranch: false, pops: 1, pushes: 1, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
   const onError = makeOnError(onErrorPushes, pc);
-  return `if(!u.isNull(t,f,${pops[0]})){var ${pushes[0]}=${pops[0]}.array.length;${onSuccess}}else{${onError}}`;
+  return `if(!u.isNull(t,f,${pops[0]},${pc})){var ${pushes[0]}=${pops[0]}.array.length;${onSuccess}}else{${onError}}`;
 }};
 
 const load32: JitInfo = {hasBranch: false, pops: 0, pushes: 1, emit: (pops, pushes, suffix, onSuccess, code, pc) => {
@@ -556,7 +578,7 @@ table[OpCode.DCMPG] = {hasBranch: false, pops: 4, pushes: 1, emit: (pops, pushes
 table[OpCode.RETURN] = {hasBranch: true, pops: 0, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes, method) => {
   // TODO: on error pushes
   if (method.accessFlags.isSynchronized()) {
-    return `f.pc=${pc};f.returnToThreadLoop=true;if(!f.method.methodLock(t,f).exit(t)){return}t.asyncReturn();`;
+    return `f.pc=${pc};f.returnToThreadLoop=true;if(!f.method.methodLock(t,f).monitorExit(t)){return}t.asyncReturn();`;
   } else {
     return `f.pc=${pc};f.returnToThreadLoop=true;t.asyncReturn();`;
   }
@@ -565,7 +587,7 @@ table[OpCode.RETURN] = {hasBranch: true, pops: 0, pushes: 0, emit: (pops, pushes
 const return32: JitInfo = {hasBranch: true, pops: 1, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes, method) => {
   // TODO: on error pushes
   if (method.accessFlags.isSynchronized()) {
-    return `f.pc=${pc};f.returnToThreadLoop=true;if(!f.method.methodLock(t,f).exit(t)){return}t.asyncReturn(${pops[0]});`;
+    return `f.pc=${pc};f.returnToThreadLoop=true;if(!f.method.methodLock(t,f).monitorExit(t)){return}t.asyncReturn(${pops[0]});`;
   } else {
     return `f.pc=${pc};f.returnToThreadLoop=true;t.asyncReturn(${pops[0]});`;
   }
@@ -577,7 +599,7 @@ table[OpCode.ARETURN] = return32;
 const return64: JitInfo = {hasBranch: true, pops: 2, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes, method) => {
   // TODO: on error pushes
   if (method.accessFlags.isSynchronized()) {
-    return `f.pc=${pc};f.returnToThreadLoop=true;if(!f.method.methodLock(t,f).exit(t)){return}t.asyncReturn(${pops[1]},null);`;
+    return `f.pc=${pc};f.returnToThreadLoop=true;if(!f.method.methodLock(t,f).monitorExit(t)){return}t.asyncReturn(${pops[1]},null);`;
   } else {
     return `f.pc=${pc};f.returnToThreadLoop=true;t.asyncReturn(${pops[1]},null);`;
   }
@@ -585,9 +607,17 @@ const return64: JitInfo = {hasBranch: true, pops: 2, pushes: 0, emit: (pops, pus
 table[OpCode.LRETURN] = return64;
 table[OpCode.DRETURN] = return64;
 
+// Uncontended thin locks are taken and released inline; anything else goes
+// through monitorEnter/monitorExit, which may inflate the lock.
+table[OpCode.MONITORENTER] = {hasBranch: false, pops: 1, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
+  const onError = makeOnError(onErrorPushes, pc), o = pops[0];
+  // If the thread blocks, the callback resumes the frame after the opcode.
+  return `if((${o}.$monitor===null&&(${o}.$lockOwner===t||${o}.$lockOwner===null)&&(${o}.$lockOwner=t,++${o}.$lockCount))||${o}.monitorEnter(t,function(){f.pc=${pc + 1}})){${onSuccess}}else{${onError}f.returnToThreadLoop=true;}`;
+}};
+
 table[OpCode.MONITOREXIT] = {hasBranch: false, pops: 1, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
-  const onError = makeOnError(onErrorPushes, pc);
-  return `if(${pops[0]}.getMonitor().exit(t)){${onSuccess}}else{${onError}f.returnToThreadLoop=true;}`;
+  const onError = makeOnError(onErrorPushes, pc), o = pops[0];
+  return `if((${o}.$monitor===null&&${o}.$lockOwner===t&&(--${o}.$lockCount===0&&(${o}.$lockOwner=null),true))||${o}.monitorExit(t)){${onSuccess}}else{${onError}f.returnToThreadLoop=true;}`;
 }};
 
 table[OpCode.IXOR] = {hasBranch: false, pops: 2, pushes: 1, emit: (pops, pushes, suffix, onSuccess) => {
@@ -645,14 +675,14 @@ table[OpCode.DMUL] = {hasBranch: false, pops: 4, pushes: 2, emit: (pops, pushes,
 table[OpCode.IDIV] = {hasBranch: false, pops: 2, pushes: 1, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
   const onError = makeOnError(onErrorPushes, pc);
   return `
-if(${pops[0]}===0){${onError}u.throwException(t,f,'Ljava/lang/ArithmeticException;','/ by zero');
+if(${pops[0]}===0){${onError}u.throwException(t,f,'Ljava/lang/ArithmeticException;','/ by zero',${pc});
 }else{var ${pushes[0]}=(${pops[1]}===u.Constants.INT_MIN&&${pops[0]}===-1)?${pops[1]}:((${pops[1]}/${pops[0]})|0);${onSuccess}}`;
 }};
 
 table[OpCode.LDIV] = {hasBranch: false, pops: 4, pushes: 2, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
   const onError = makeOnError(onErrorPushes, pc);
   return `
-if(${pops[1]}.isZero()){${onError}u.throwException(t,f,'Ljava/lang/ArithmeticException;','/ by zero');
+if(${pops[1]}.isZero()){${onError}u.throwException(t,f,'Ljava/lang/ArithmeticException;','/ by zero',${pc});
 }else{var ${pushes[0]}=${pops[3]}.div(${pops[1]}),${pushes[1]}=null;${onSuccess}}`;
 }};
 
@@ -674,13 +704,13 @@ table[OpCode.DSUB] = {hasBranch: false, pops: 4, pushes: 2, emit: (pops, pushes,
 
 table[OpCode.IREM] = {hasBranch: false, pops: 2, pushes: 1, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
   const onError = makeOnError(onErrorPushes, pc);
-  return `if(${pops[0]}===0){${onError}u.throwException(t,f,'Ljava/lang/ArithmeticException;','/ by zero');
+  return `if(${pops[0]}===0){${onError}u.throwException(t,f,'Ljava/lang/ArithmeticException;','/ by zero',${pc});
 }else{var ${pushes[0]}=${pops[1]}%${pops[0]};${onSuccess}}`;
 }};
 
 table[OpCode.LREM] = {hasBranch: false, pops: 4, pushes: 2, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
   const onError = makeOnError(onErrorPushes, pc);
-  return `if(${pops[1]}.isZero()){${onError}u.throwException(t,f,'Ljava/lang/ArithmeticException;','/ by zero');
+  return `if(${pops[1]}.isZero()){${onError}u.throwException(t,f,'Ljava/lang/ArithmeticException;','/ by zero',${pc});
 }else{var ${pushes[0]}=${pops[3]}.modulo(${pops[1]}),${pushes[1]}=null;${onSuccess}}`;
 }};
 
@@ -797,7 +827,7 @@ table[OpCode.NEWARRAY] = {hasBranch: false, pops: 1, pushes: 1, emit: (pops, pus
   return `
 var cls${suffix}=f.getLoader().getInitializedClass(t,'${arrayType}');
 if(${pops[0]}>=0){var ${pushes[0]}=new (cls${suffix}.getConstructor(t))(t,${pops[0]});${onSuccess}
-}else{${onError}u.throwException(t,f,'Ljava/lang/NegativeArraySizeException;','Tried to init ${arrayType} array with length '+${pops[0]});}`;
+}else{${onError}u.throwException(t,f,'Ljava/lang/NegativeArraySizeException;','Tried to init ${arrayType} array with length '+${pops[0]},${pc});}`;
 }};
 
 table[OpCode.ANEWARRAY_FAST] = {hasBranch: false, pops: 1, pushes: 1, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
@@ -807,7 +837,7 @@ table[OpCode.ANEWARRAY_FAST] = {hasBranch: false, pops: 1, pushes: 1, emit: (pop
   return `
 var cr${suffix}=f.method.cls.constantPool.get(${index});
 if(${pops[0]}>=0){var ${pushes[0]}=new cr${suffix}.arrayClassConstructor(t,${pops[0]});${onSuccess}
-}else{${onError}u.throwException(t,f,'Ljava/lang/NegativeArraySizeException;','Tried to init '+cr${suffix}.arrayClass.getInternalName()+' array with length '+${pops[0]});}`;
+}else{${onError}u.throwException(t,f,'Ljava/lang/NegativeArraySizeException;','Tried to init '+cr${suffix}.arrayClass.getInternalName()+' array with length '+${pops[0]},${pc});}`;
 }};
 
 table[OpCode.NOP] = {hasBranch: false, pops: 0, pushes: 0, emit: (pops, pushes, suffix, onSuccess) => {
@@ -825,3 +855,138 @@ table[OpCode.POP2] = {hasBranch: false, pops: 2, pushes: 0, emit: (pops, pushes,
 return table;
 }();
 
+
+/**
+ * Conditions of the conditional branch opcodes, given their popped operands.
+ */
+const branchConditions: ((pops: string[]) => string)[] = function() {
+  const table: ((pops: string[]) => string)[] = new Array(256);
+  table[OpCode.IFEQ] = (pops) => `${pops[0]}===0`;
+  table[OpCode.IFNE] = (pops) => `${pops[0]}!==0`;
+  table[OpCode.IFLT] = (pops) => `${pops[0]}<0`;
+  table[OpCode.IFGE] = (pops) => `${pops[0]}>=0`;
+  table[OpCode.IFGT] = (pops) => `${pops[0]}>0`;
+  table[OpCode.IFLE] = (pops) => `${pops[0]}<=0`;
+  table[OpCode.IF_ICMPEQ] = table[OpCode.IF_ACMPEQ] = (pops) => `${pops[0]}===${pops[1]}`;
+  table[OpCode.IF_ICMPNE] = table[OpCode.IF_ACMPNE] = (pops) => `${pops[0]}!==${pops[1]}`;
+  table[OpCode.IF_ICMPLT] = (pops) => `${pops[1]}<${pops[0]}`;
+  table[OpCode.IF_ICMPGE] = (pops) => `${pops[1]}>=${pops[0]}`;
+  table[OpCode.IF_ICMPGT] = (pops) => `${pops[1]}>${pops[0]}`;
+  table[OpCode.IF_ICMPLE] = (pops) => `${pops[1]}<=${pops[0]}`;
+  table[OpCode.IFNULL] = (pops) => `${pops[0]}==null`;
+  table[OpCode.IFNONNULL] = (pops) => `${pops[0]}!=null`;
+  return table;
+}();
+
+/**
+ * Returns a JitInfo for a conditional branch that the profile says is usually
+ * taken. Unlike the opJitInfo entry, the trace continues at the branch target,
+ * and the fall-through path exits the trace.
+ */
+export function makeTakenBranchJitInfo(op: OpCode): JitInfo {
+  const condition = branchConditions[op];
+  const popCount = (op >= OpCode.IFEQ && op <= OpCode.IFLE) || op === OpCode.IFNULL || op === OpCode.IFNONNULL ? 1 : 2;
+  return {hasBranch: false, pops: popCount, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
+    const onError = makeOnError(onErrorPushes, pc + 3);
+    return `if(${condition(pops)}){${onSuccess}}else{${onError}}`;
+  }};
+}
+
+/**
+ * Emits an opcode on unboxed longs. The long operand at pops[i] (for each i in
+ * longPops) is available as the int32 variables `${pops[i]}h` and
+ * `${pops[i]}l`; a long result is written to `${pushes[0]}h` and
+ * `${pushes[0]}l`.
+ */
+export interface LongJitInfo {
+  longPops: number[],
+  pushesLong: boolean,
+  emit: (pops: string[], pushes: string[], onSuccess: string) => string
+}
+
+export const opLongJitInfo: LongJitInfo[] = function() {
+const table: LongJitInfo[] = new Array(256);
+
+table[OpCode.LCONST_0] = {longPops: [], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  return `var ${pushes[0]}h=0,${pushes[0]}l=0,${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LCONST_1] = {longPops: [], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  return `var ${pushes[0]}h=0,${pushes[0]}l=1,${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.I2L] = {longPops: [], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  return `var ${pushes[0]}h=${pops[0]}>>31,${pushes[0]}l=${pops[0]},${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.L2I] = {longPops: [1], pushesLong: false, emit: (pops, pushes, onSuccess) => {
+  return `var ${pushes[0]}=${pops[1]}l;${onSuccess}`;
+}};
+
+table[OpCode.L2D] = {longPops: [1], pushesLong: false, emit: (pops, pushes, onSuccess) => {
+  return `var ${pushes[0]}=${pops[1]}h*4294967296+(${pops[1]}l>>>0),${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LCMP] = {longPops: [1, 3], pushesLong: false, emit: (pops, pushes, onSuccess) => {
+  const a = pops[3], b = pops[1];
+  return `var ${pushes[0]}=${a}h===${b}h?(${a}l===${b}l?0:((${a}l>>>0)>(${b}l>>>0)?1:-1)):(${a}h>${b}h?1:-1);${onSuccess}`;
+}};
+
+table[OpCode.LADD] = {longPops: [1, 3], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[3], b = pops[1], r = pushes[0];
+  return `var ${r}l=(${a}l+${b}l)|0,${r}h=(${a}h+${b}h+((${r}l>>>0)<(${a}l>>>0)?1:0))|0,${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LSUB] = {longPops: [1, 3], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[3], b = pops[1], r = pushes[0];
+  return `var ${r}l=(${a}l-${b}l)|0,${r}h=(${a}h-${b}h-((${a}l>>>0)<(${b}l>>>0)?1:0))|0,${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LMUL] = {longPops: [1, 3], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[3], b = pops[1], r = pushes[0];
+  return `var ${r}l=u.lmul(${a}l,${a}h,${b}l,${b}h),${r}h=u.longResult.high,${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LNEG] = {longPops: [1], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[1], r = pushes[0];
+  return `var ${r}l=(-${a}l)|0,${r}h=(~${a}h+(${r}l===0?1:0))|0,${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LAND] = {longPops: [1, 3], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[3], b = pops[1], r = pushes[0];
+  return `var ${r}h=${a}h&${b}h,${r}l=${a}l&${b}l,${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LOR] = {longPops: [1, 3], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[3], b = pops[1], r = pushes[0];
+  return `var ${r}h=${a}h|${b}h,${r}l=${a}l|${b}l,${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LXOR] = {longPops: [1, 3], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[3], b = pops[1], r = pushes[0];
+  return `var ${r}h=${a}h^${b}h,${r}l=${a}l^${b}l,${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LSHL] = {longPops: [2], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[2], r = pushes[0];
+  return `var ${r}n=${pops[0]}&63,${r}h,${r}l;
+if(${r}n===0){${r}h=${a}h;${r}l=${a}l;}else if(${r}n<32){${r}h=(${a}h<<${r}n)|(${a}l>>>(32-${r}n));${r}l=${a}l<<${r}n;}else{${r}h=${a}l<<(${r}n-32);${r}l=0;}
+var ${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LSHR] = {longPops: [2], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[2], r = pushes[0];
+  return `var ${r}n=${pops[0]}&63,${r}h,${r}l;
+if(${r}n===0){${r}h=${a}h;${r}l=${a}l;}else if(${r}n<32){${r}l=(${a}l>>>${r}n)|(${a}h<<(32-${r}n));${r}h=${a}h>>${r}n;}else{${r}l=${a}h>>(${r}n-32);${r}h=${a}h>>31;}
+var ${pushes[1]}=null;${onSuccess}`;
+}};
+
+table[OpCode.LUSHR] = {longPops: [2], pushesLong: true, emit: (pops, pushes, onSuccess) => {
+  const a = pops[2], r = pushes[0];
+  return `var ${r}n=${pops[0]}&63,${r}h,${r}l;
+if(${r}n===0){${r}h=${a}h;${r}l=${a}l;}else if(${r}n<32){${r}l=(${a}l>>>${r}n)|(${a}h<<(32-${r}n));${r}h=${a}h>>>${r}n|0;}else{${r}l=${a}h>>>(${r}n-32)|0;${r}h=0;}
+var ${pushes[1]}=null;${onSuccess}`;
+}};
+
+return table;
+}();
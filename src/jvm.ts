@@ -1,6 +1,10 @@
 import {are_in_browser, initCarr, merge, asyncForEach, asyncSeries, ext_classname, initString, int_classname, descriptor2typestr} from './util';
 import SafeMap from './SafeMap';
 import {dumpStats} from './methods';
+import {dumpInlineCacheStats} from './InlineCache';
+import JITCodeCache from './JITCodeCache';
+import {bigIntLongsSupported, useBigIntLongs} from './BigIntLong';
+import {enableOpcodeProfiling, dumpOpcodeProfile} from './opcode_profiler';
 import {ClassData, ReferenceClassData, ArrayClassData} from './ClassData';
 import {BootstrapClassLoader, ClassLoader} from './ClassLoader';
 import * as fs from 'fs';
@@ -13,7 +17,9 @@ import assert from './assert';
 import {JVMOptions} from './interfaces';
 import * as JVMTypes from '../includes/JVMTypes';
 import Parker from './parker';
-import ThreadPool from './threadpool';
+import {default as ThreadPool, Scheduler, SchedulingStats, createScheduler} from './threadpool';
+import Yielder from './Yielder';
+import {IsolatePool, IsolateChannel, isolatesSupported} from './Isolates';
 import * as JDKInfo from '../vendor/java_home/jdk.json';
 import global from './global';
 import getGlobalRequire from './global_require';
@@ -66,6 +72,20 @@ class JVM {
   private internedStrings: SafeMap<JVMTypes.java_lang_String> = new SafeMap<JVMTypes.java_lang_String>();
   private bsCl: BootstrapClassLoader = null;
   private threadPool: ThreadPool<JVMThread> = null;
+  // Thread scheduler for the thread pool.
+  private scheduler: Scheduler<JVMThread> = null;
+  // Decides how the scheduler yields between thread switches.
+  private yielder: Yielder = null;
+  // Should the JVM print scheduling latency statistics on exit?
+  private dumpSchedulingStats: boolean = false;
+  // Runs tasks submitted through doppio.Isolates. Created on first use.
+  private isolatePool: IsolatePool = null;
+  // Options for the isolate pool's JVMs, or null if isolates are disabled.
+  private isolateOptions: JVMOptions = null;
+  // Number of isolates the pool may run.
+  private isolateCount: number = 0;
+  // If this JVM is an isolate, receives the tasks it runs.
+  private isolateChannel: IsolateChannel = null;
   private natives: { [clsName: string]: { [methSig: string]: Function } } = {};
   // 20MB heap
   // @todo Make heap resizeable.
@@ -97,6 +117,34 @@ class JVM {
   // is JIT disabled?
   private jitDisabled: boolean = false;
   private dumpJITStats: boolean = false;
+  // Should compiled code keep locals in JavaScript variables?
+  private promoteLocals: boolean = true;
+  // Method entries and loop back-edges before a method starts collecting a
+  // branch profile, and further ones before it is JIT compiled.
+  private jitProfileThreshold: number = 200;
+  private jitCompileThreshold: number = 800;
+  // Should the interpreter run pre-decoded bytecode?
+  private directThreaded: boolean = false;
+  // Should the interpreter fuse common opcode sequences?
+  private superinstructions: boolean = true;
+  // Should invokes move arguments straight from the caller's operand stack
+  // into the callee's frame?
+  private stackArgs: boolean = true;
+  // Should natives that usually return synchronously run without a frame?
+  private inlineNatives: boolean = true;
+  // Should virtual and interface calls dispatch through method tables?
+  private indexedDispatch: boolean = true;
+  // Should compiled code run compiled callees as nested calls?
+  private nestedCalls: boolean = true;
+  // Should sites that often throw NPEs, array index, arithmetic and class cast
+  // exceptions throw preallocated ones without stack traces?
+  private fastThrow: boolean = true;
+  // The preallocated exceptions for fast throws, by class name.
+  private fastThrowExceptions: {[className: string]: JVMTypes.java_lang_Throwable} = {};
+  // File to write opcode sequence counts to, if any.
+  private opcodeProfileFile: string = null;
+  // Persists JIT-compiled code across runs, if enabled.
+  private jitCodeCache: JITCodeCache = null;
 
   // Get the environment's require variable, indirectly.
   // Hidden from webpack and other builders, as it confuses them.
@@ -149,6 +197,58 @@ class JVM {
 
     this.jitDisabled = opts.intMode;
     this.dumpJITStats = opts.dumpJITStats;
+    this.promoteLocals = opts.promoteLocals;
+    this.directThreaded = opts.directThreaded;
+    this.superinstructions = opts.superinstructions;
+    this.nestedCalls = opts.nestedCalls;
+    this.fastThrow = opts.omitStackTraceInFastThrow;
+    // Negative or missing values keep the defaults.
+    if (opts.jitProfileThreshold >= 0) {
+      this.jitProfileThreshold = opts.jitProfileThreshold;
+    }
+    if (opts.jitCompileThreshold >= 0) {
+      this.jitCompileThreshold = opts.jitCompileThreshold;
+    }
+    this.stackArgs = opts.stackArgs;
+    this.inlineNatives = opts.inlineNatives;
+    this.indexedDispatch = opts.indexedDispatch;
+    this.yielder = new Yielder(opts.yieldStrategy);
+    this.scheduler = createScheduler<JVMThread>(opts.scheduler, this.yielder);
+    this.dumpSchedulingStats = opts.dumpSchedulingStats;
+    if (opts.isolates > 0 && isolatesSupported()) {
+      this.isolateCount = opts.isolates;
+      this.isolateOptions = <JVMOptions> merge(opts, {isolates: 0, isolateClassFiles: null});
+      // A callback can't be sent to another thread.
+      if (typeof this.isolateOptions.responsiveness === 'function') {
+        this.isolateOptions.responsiveness = (<() => number> this.isolateOptions.responsiveness)();
+      }
+    }
+    let bigIntLongs = false;
+    if (opts.longRepresentation === 'bigint') {
+      // Falls back to gLong's int32 pairs on engines without BigInt.
+      if (bigIntLongsSupported()) {
+        useBigIntLongs();
+        bigIntLongs = true;
+      }
+    } else if (opts.longRepresentation !== 'glong') {
+      throw new TypeError(`Unknown long representation: ${opts.longRepresentation}`);
+    }
+    if (opts.jitCodeCacheDir && !this.jitDisabled) {
+      // Every option that changes what the JIT emits, or what emitted code
+      // may assume about the runtime.
+      const configTag = [
+        this.promoteLocals ? 'promote-locals' : 'frame-locals',
+        this.stackArgs ? 'stack-args' : 'array-args',
+        this.inlineNatives ? 'inline-natives' : 'native-frames',
+        this.indexedDispatch ? 'indexed-dispatch' : 'lookup-dispatch',
+        this.nestedCalls ? 'nested-calls' : 'loop-calls',
+        this.fastThrow ? 'fast-throw' : 'full-throw',
+        this.superinstructions ? 'superinstructions' : 'plain-opcodes',
+        this.directThreaded ? 'direct-threaded' : 'switch-dispatch',
+        bigIntLongs ? 'bigint-longs' : 'glong-longs'
+      ].join(',');
+      this.jitCodeCache = new JITCodeCache(path.resolve(opts.jitCodeCacheDir), configTag);
+    }
 
     var bootstrapClasspath: string[] = opts.bootstrapClasspath.map((p: string): string => path.resolve(p)),
       // JVM bootup tasks, from first to last task.
@@ -192,6 +292,17 @@ class JVM {
       path.resolve(opts.tmpDir),
       opts.properties);
 
+    /**
+     * Task #0: Load the JIT code cache before any classes are loaded.
+     */
+    bootupTasks.push((next: (err?: any) => void): void => {
+      if (this.jitCodeCache !== null) {
+        this.jitCodeCache.load(next);
+      } else {
+        next();
+      }
+    });
+
     /**
      * Task #1: Initialize native methods.
      */
@@ -204,7 +315,17 @@ class JVM {
      */
     bootupTasks.push((next: (err?: any) => void): void => {
       this.bsCl =
-        new BootstrapClassLoader(this.systemProperties['java.home'], bootstrapClasspath, next);
+        new BootstrapClassLoader(this, this.systemProperties['java.home'], bootstrapClasspath, (e?: any) => {
+          if (!e) {
+            if (opts.isolateClassFiles) {
+              this.bsCl.addClassFiles(opts.isolateClassFiles);
+            } else if (this.isolateCount > 0) {
+              // Share the classes the JVM loads up to the first isolate launch.
+              this.bsCl.recordClassFiles();
+            }
+          }
+          next(e);
+        });
     });
 
     /**
@@ -212,7 +333,7 @@ class JVM {
      * the first thread.
      */
     bootupTasks.push((next: (err?: any) => void): void => {
-      this.threadPool = new ThreadPool<JVMThread>((): boolean => { return this.threadPoolIsEmpty(); });
+      this.threadPool = new ThreadPool<JVMThread>((): boolean => { return this.threadPoolIsEmpty(); }, this.scheduler, this.yielder);
       // Resolve Ljava/lang/Thread so we can fake a thread.
       // NOTE: This should never actually use the Thread object unless
       // there's an error loading java/lang/Thread and associated classes.
@@ -317,6 +438,39 @@ class JVM {
     });
   }
 
+  /**
+   * Get the time threads have spent waiting to run once ready.
+   */
+  public getSchedulingStats(): SchedulingStats {
+    return this.threadPool.getSchedulingStats();
+  }
+
+  /**
+   * Returns the pool that runs tasks submitted through doppio.Isolates, or
+   * null if isolates are disabled.
+   */
+  public getIsolatePool(): IsolatePool {
+    if (this.isolatePool === null && this.isolateCount > 0) {
+      this.isolatePool = new IsolatePool(this.isolateCount, this.isolateOptions, () => this.bsCl.takeClassFiles());
+    }
+    return this.isolatePool;
+  }
+
+  /**
+   * If this JVM is an isolate, returns the channel its tasks arrive on.
+   * Otherwise, returns null.
+   */
+  public getIsolateChannel(): IsolateChannel {
+    return this.isolateChannel;
+  }
+
+  /**
+   * Makes this JVM an isolate that receives tasks on the given channel.
+   */
+  public setIsolateChannel(channel: IsolateChannel): void {
+    this.isolateChannel = channel;
+  }
+
   public getResponsiveness():number {
     const resp = this.responsiveness;
     if (typeof resp === 'number') {
@@ -341,7 +495,23 @@ class JVM {
       tmpDir: '/tmp',
       responsiveness: 1000,
       intMode: false,
-      dumpJITStats: false
+      dumpJITStats: false,
+      promoteLocals: true,
+      jitProfileThreshold: 200,
+      jitCompileThreshold: 800,
+      jitCodeCacheDir: null,
+      longRepresentation: 'glong',
+      directThreaded: false,
+      superinstructions: true,
+      stackArgs: true,
+      inlineNatives: true,
+      indexedDispatch: true,
+      omitStackTraceInFastThrow: true,
+      nestedCalls: true,
+      scheduler: 'mlfq',
+      yieldStrategy: 'adaptive',
+      dumpSchedulingStats: false,
+      isolates: 0
     };
   }
 
@@ -440,6 +610,117 @@ class JVM {
     return this.jitDisabled;
   }
 
+  /**
+   * Returns 'true' if the interpreter runs pre-decoded bytecode.
+   */
+  public isDirectThreaded(): boolean {
+    return this.directThreaded;
+  }
+
+  /**
+   * Returns 'true' if the interpreter fuses common opcode sequences into
+   * superinstructions.
+   */
+  public areSuperinstructionsEnabled(): boolean {
+    return this.superinstructions;
+  }
+
+  /**
+   * Returns 'true' if JIT-compiled code runs compiled callees as nested
+   * JavaScript calls.
+   */
+  public areNestedCallsEnabled(): boolean {
+    return this.nestedCalls;
+  }
+
+  /**
+   * Returns 'true' if invokes move arguments straight from the caller's
+   * operand stack into the callee's frame.
+   */
+  public areStackArgsEnabled(): boolean {
+    return this.stackArgs;
+  }
+
+  /**
+   * Returns 'true' if native methods that usually return synchronously are
+   * called without a stack frame. Only takes effect with stack args.
+   */
+  public areNativesInlined(): boolean {
+    return this.inlineNatives;
+  }
+
+  /**
+   * Returns 'true' if virtual and interface calls find their targets through
+   * the receiver class's method tables rather than by signature lookup.
+   */
+  public isIndexedDispatchEnabled(): boolean {
+    return this.indexedDispatch;
+  }
+
+  /**
+   * Returns 'true' if sites that often throw certain implicit exceptions
+   * should throw preallocated ones.
+  public isFastThrowEnabled(): boolean {
+    return this.fastThrow;
+  }
+
+  /**
+   * Returns the preallocated exception of the given class for fast throws,
+   * creating it if needed. Like HotSpot's, it has no message and an empty
+   * stack trace, and every fast throw of the class shares it, along with any
+   * cause or suppressed exceptions code adds to it. Returns null if the class
+   * is not initialized yet.
+   */
+  public getFastThrowException(thread: JVMThread, className: string): JVMTypes.java_lang_Throwable {
+    let e = this.fastThrowExceptions[className];
+    if (e === undefined) {
+      const cls = <ReferenceClassData<JVMTypes.java_lang_Throwable>> this.bsCl.getInitializedClass(thread, className),
+        throwableCls = <ReferenceClassData<JVMTypes.java_lang_Throwable>> this.bsCl.getInitializedClass(thread, 'Ljava/lang/Throwable;'),
+        stackTraceCls = <ArrayClassData<JVMTypes.java_lang_StackTraceElement>> this.bsCl.getInitializedClass(thread, '[Ljava/lang/StackTraceElement;');
+      if (cls === null || throwableCls === null || stackTraceCls === null) {
+        return null;
+      }
+      e = new (cls.getConstructor(thread))(thread);
+      // The field values Throwable.<init>() assigns, other than the stack trace.
+      e['java/lang/Throwable/cause'] = e;
+      e['java/lang/Throwable/suppressedExceptions'] = (<typeof JVMTypes.java_lang_Throwable> throwableCls.getConstructor(thread))['java/lang/Throwable/SUPPRESSED_SENTINEL'];
+      e['java/lang/Throwable/stackTrace'] = new (stackTraceCls.getConstructor(thread))(thread, 0);
+      this.fastThrowExceptions[className] = e;
+    }
+    return e;
+  }
+
+  /**
+   * Returns the method entries and loop back-edges before a method starts
+   * collecting a branch profile.
+   */
+  public getJITProfileThreshold(): number {
+    return this.jitProfileThreshold;
+  }
+
+  /**
+   * Returns the further method entries and loop back-edges, once a method
+   * collects a branch profile, before it is JIT compiled.
+   */
+  public getJITCompileThreshold(): number {
+    return this.jitCompileThreshold;
+  }
+
+  /**
+   * Returns this JVM's JIT code cache, or null if it has none.
+   */
+  public getJITCodeCache(): JITCodeCache {
+    return this.jitCodeCache;
+  }
+
+  /**
+   * Returns 'true' if JIT-compiled code should keep the frame's locals in
+   * JavaScript variables.
+   */
+  public shouldPromoteLocals(): boolean {
+    return this.promoteLocals;
+  }
+
   /**
    * [DEBUG] Returns 'true' if the specified method should be vtraced.
    */
@@ -492,6 +773,19 @@ class JVM {
 
         if (!RELEASE && this.dumpJITStats) {
           dumpStats();
+          dumpInlineCacheStats();
+        }
+        if (!RELEASE && this.opcodeProfileFile !== null) {
+          dumpOpcodeProfile(this.opcodeProfileFile);
+        }
+        if (this.dumpSchedulingStats) {
+          this.threadPool.dumpSchedulingStats();
+        }
+        if (this.jitCodeCache !== null) {
+          this.jitCodeCache.save();
+        }
+        if (this.isolatePool !== null) {
+          this.isolatePool.shutdown();
         }
 
         this.status = JVMStatus.TERMINATED;
@@ -807,6 +1101,17 @@ class JVM {
     this.dumpCompiledCodeDir = dir;
   }
 
+  /**
+   * Counts the opcode pairs and triples the interpreter runs, and writes
+   * them to the given file on exit. Disables superinstructions, so the
+   * counts reflect the original opcodes.
+   */
+  public dumpOpcodeSequences(file: string): void {
+    this.opcodeProfileFile = file;
+    this.superinstructions = false;
+    enableOpcodeProfiling();
+  }
+
   public shouldDumpCompiledCode(): boolean {
     return this.dumpCompiledCodeDir !== null;
   }
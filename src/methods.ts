@@ -7,11 +7,15 @@ import {ReferenceClassData, ArrayClassData, ClassData} from './ClassData';
 import {JVMThread, annotateOpcode, BytecodeStackFrame} from './threading';
 import assert from './assert';
 import {ThreadStatus, OpcodeLayoutType, OpCode, OpcodeLayouts, MethodHandleReferenceKind} from './enums';
-import Monitor from './Monitor';
 import StringOutputStream from './StringOutputStream';
 import * as JVMTypes from '../includes/JVMTypes';
 import global from './global';
-import {JitInfo, opJitInfo} from './jit';
+import {JitInfo, LongJitInfo, opJitInfo, opLongJitInfo, makeTakenBranchJitInfo} from './jit';
+import InlineCache from './InlineCache';
+import TypeCheckCache from './TypeCheckCache';
+import ExceptionTable from './ExceptionTable';
+import JITCodeCache from './JITCodeCache';
+import {IOpcodeImplementation, matchSuperinstruction, SuperinstructionFirstOp} from './opcodes';
 
 declare var RELEASE: boolean;
 if (typeof RELEASE === 'undefined') global.RELEASE = false;
@@ -242,19 +246,105 @@ const opcodeSize: number[] = function() {
   return table;
 }();
 
+/**
+ * Returns the length in bytes of the instruction at pc, operands included.
+ */
+export function getInstructionLength(code: Buffer, pc: number): number {
+  const op = code[pc];
+  switch (op) {
+    case OpCode.TABLESWITCH: {
+      // Skip the padding; the +1 is for the opcode byte.
+      const operands = pc + ((4 - (pc + 1) % 4) % 4) + 1,
+        low = code.readInt32BE(operands + 4), high = code.readInt32BE(operands + 8);
+      return operands + 12 + 4 * (high - low + 1) - pc;
+    }
+    case OpCode.LOOKUPSWITCH: {
+      const operands = pc + ((4 - (pc + 1) % 4) % 4) + 1;
+      return operands + 8 + 8 * code.readInt32BE(operands + 4) - pc;
+    }
+    case OpCode.WIDE:
+      return code[pc + 1] === OpCode.IINC ? 6 : 4;
+    default:
+      return opcodeSize[OpcodeLayouts[op]];
+  }
+}
+
 class TraceInfo {
   pops: string[] = [];
   pushes: string[] = [];
   prefixEmit: string = "";
   onErrorPushes: string[];
+  /**
+   * Set if the opcode operates on unboxed longs.
+   */
+  longJitInfo: LongJitInfo = null;
 
   constructor(public pc: number, public jitInfo: JitInfo) {
   }
+
+  public emit(suffix: string, onSuccess: string, code: Buffer, method: Method): string {
+    if (this.longJitInfo !== null) {
+      return this.prefixEmit + this.longJitInfo.emit(this.pops, this.pushes, onSuccess);
+    }
+    return this.prefixEmit + this.jitInfo.emit(this.pops, this.pushes, suffix, onSuccess, code, this.pc, this.onErrorPushes, method);
+  }
+}
+
+/**
+ * Keeps longs as pairs of int32 JavaScript variables (`${symbol}h` and
+ * `${symbol}l`) rather than gLong objects, from the opcode that produces them
+ * to the ones that consume them. A long is boxed only where it leaves the
+ * compiled code or reaches an opcode without an unboxed form. Must run after
+ * symbols are assigned, and before emitting. Returns the symbols that hold
+ * unboxed longs.
+ */
+function unboxLongs(infos: TraceInfo[], code: Buffer): {[symbol: string]: boolean} {
+  const unboxed: {[symbol: string]: boolean} = {};
+  const box = (symbol: string) => unboxed[symbol] === true ? `u.gLong.fromBits(${symbol}l,${symbol}h)` : symbol;
+  for (let i = 0; i < infos.length; i++) {
+    const info = infos[i], op = code[info.pc], longJitInfo = opLongJitInfo[op];
+    if (longJitInfo !== undefined && info.jitInfo === opJitInfo[op]) {
+      info.longJitInfo = longJitInfo;
+      for (let j = 0; j < longJitInfo.longPops.length; j++) {
+        const symbol = info.pops[longJitInfo.longPops[j]];
+        if (unboxed[symbol] !== true) {
+          info.prefixEmit += `var ${symbol}h=${symbol}.getHighBits(),${symbol}l=${symbol}.getLowBits();`;
+        }
+      }
+      if (longJitInfo.pushesLong) {
+        unboxed[info.pushes[0]] = true;
+      }
+    } else {
+      info.pops = info.pops.map(box);
+    }
+    info.onErrorPushes = info.onErrorPushes.map(box);
+  }
+  return unboxed;
+}
+
+/**
+ * Appends the pc, opcode pairs of the given ops to opcodes, for the code
+ * cache.
+ */
+function appendOpcodes(infos: TraceInfo[], code: Buffer, opcodes: number[]): number[] {
+  for (let i = 0; i < infos.length; i++) {
+    opcodes.push(infos[i].pc, code[infos[i].pc]);
+  }
+  return opcodes;
 }
 
 class Trace {
   private infos: TraceInfo[] = [];
   private endPc: number = -1;
+  /**
+   * Body of the compiled function, once closed.
+   */
+  public source: string = null;
+  /**
+   * False if the trace inlines code from another class, which the code cache
+   * cannot validate.
+   */
+  public cacheable: boolean = true;
 
   constructor(public startPC: number, private code: Buffer, private method: Method) {
   }
@@ -270,6 +360,13 @@ class Trace {
     this.infos.push(new TraceInfo(pc, jitInfo));
   }
 
+  /**
+   * Returns the pc, opcode pairs the trace is compiled from.
+   */
+  public getOpcodes(): number[] {
+    return appendOpcodes(this.infos, this.code, []);
+  }
+
   public close(thread: JVMThread): Function {
     if (this.infos.length > 1) {
       const symbolicStack: string[] = [];
@@ -304,21 +401,30 @@ class Trace {
 
       }
 
-      if (symbolicStack.length === 1) {
-        emitted += `f.opStack.push(${symbolicStack[0]});`;
-      } else if (symbolicStack.length > 1) {
-        emitted += `f.opStack.pushAll(${symbolicStack.join(',')});`;
+      const unboxed = unboxLongs(this.infos, this.code);
+      // Invokes push the values left beneath their operands themselves,
+      // before the call, since a callee that completes inline pushes its
+      // return value right away.
+      const endsInInvoke = this.infos[this.infos.length - 1].jitInfo.pops < 0;
+      const finalStack = endsInInvoke ? [] : symbolicStack.map((symbol) => unboxed[symbol] === true ? `u.gLong.fromBits(${symbol}l,${symbol}h)` : symbol);
+      if (finalStack.length === 1) {
+        emitted += `f.opStack.push(${finalStack[0]});`;
+      } else if (finalStack.length > 1) {
+        emitted += `f.opStack.pushAll(${finalStack.join(',')});`;
       }
 
       for (let i = this.infos.length-1; i >= 0; i--) {
-        const info = this.infos[i];
-        const jitInfo = info.jitInfo;
-        emitted = info.prefixEmit + jitInfo.emit(info.pops, info.pushes, ""+i, emitted, this.code, info.pc, info.onErrorPushes, this.method);
+        emitted = this.infos[i].emit(""+i, emitted, this.code, this.method);
+      }
+
+      if (thread.getJVM().shouldPromoteLocals()) {
+        emitted = promoteLocals(emitted, this.method);
       }
 
       if (!RELEASE && thread.getJVM().shouldPrintJITCompilation()) {
         console.log(`Emitted trace of ${this.infos.length} ops: ` + emitted);
       }
+      this.source = emitted;
       // f = frame, t = thread, u = util
       return new Function("f", "t", "u", emitted);
     } else {
@@ -330,6 +436,249 @@ class Trace {
   }
 }
 
+/**
+ * Rewrites compiled code to keep the frame's local variables in JavaScript
+ * variables. Locals are read once on entry, and the ones the code assigns are
+ * written back to the frame on every exit, so the interpreter, exception
+ * handlers and callees see up-to-date values.
+ */
+function promoteLocals(emitted: string, method: Method): string {
+  // Synchronized instance methods read 'this' from the frame when they exit
+  // their monitor.
+  const keepThis = method.accessFlags.isSynchronized() && !method.accessFlags.isStatic();
+  const used: boolean[] = [], dirty: boolean[] = [];
+  const body = emitted.replace(/f\.locals\[(\d+)\](=(?!=))?/g, (match: string, index: string, assign: string) => {
+    if (keepThis && index === '0') {
+      return match;
+    }
+    used[+index] = true;
+    if (assign) {
+      dirty[+index] = true;
+    }
+    return `fl${index}${assign ? '=' : ''}`;
+  });
+
+  const reads: string[] = [], writes: string[] = [];
+  for (let i = 0; i < used.length; i++) {
+    if (used[i]) {
+      reads.push(`fl${i}=f.locals[${i}]`);
+    }
+    if (dirty[i]) {
+      writes.push(`f.locals[${i}]=fl${i};`);
+    }
+  }
+  if (reads.length === 0) {
+    return emitted;
+  } else if (writes.length === 0) {
+    return `var ${reads.join(',')};${body}`;
+  } else {
+    return `var ${reads.join(',')};try{${body}}finally{${writes.join('')}}`;
+  }
+}
+
+/**
+ * Most basic block dispatches a compiled loop region performs before handing
+ * control back to the thread loop, so the thread can yield. A region never
+ * performs more dispatches than the thread's quantum has work left, and
+ * charges the ones it performed to it.
+ */
+const regionDispatchBudget = 10000;
+
+/**
+ * Checks if the given opcode is a GOTO or a two-way branch with a 16-bit
+ * offset.
+ */
+function isBranchOpcode(op: OpCode): boolean {
+  return op === OpCode.GOTO || (op >= OpCode.IFEQ && op <= OpCode.IF_ACMPNE) ||
+    op === OpCode.IFNULL || op === OpCode.IFNONNULL;
+}
+
+/**
+ * A loop region: the basic blocks of a loop whose back edge jumps to
+ * startPC. The blocks are dispatched on f.pc inside a native while loop, so
+ * the compiled function only returns to the interpreter when control leaves
+ * the region, an opcode throws, or the dispatch budget runs out.
+ */
+class Region {
+  private blocks: TraceInfo[][] = [];
+  private symbolCount = 0;
+  /**
+   * Body of the compiled function, once closed.
+   */
+  public source: string = null;
+
+  constructor(public startPC: number, private code: Buffer, private method: Method) {
+  }
+
+  /**
+   * Starts a new basic block.
+   */
+  public addBlock(): void {
+    this.blocks.push([]);
+  }
+
+  public addOp(pc: number, jitInfo: JitInfo) {
+    this.blocks[this.blocks.length - 1].push(new TraceInfo(pc, jitInfo));
+  }
+
+  /**
+   * Returns the pc, opcode pairs the region is compiled from.
+   */
+  public getOpcodes(): number[] {
+    const opcodes: number[] = [];
+    for (let i = 0; i < this.blocks.length; i++) {
+      appendOpcodes(this.blocks[i], this.code, opcodes);
+    }
+    return opcodes;
+  }
+
+  /**
+   * Emits a single basic block. Returns null if the block does not begin and
+   * end with an empty symbolic stack, which the region requires.
+   */
+  private emitBlock(block: TraceInfo[], suffixBase: number): string {
+    const symbolicStack: string[] = [];
+    for (let i = 0; i < block.length; i++) {
+      const info = block[i];
+      const jitInfo = info.jitInfo;
+      if (jitInfo.pops > symbolicStack.length) {
+        return null;
+      }
+      for (let j = 0; j < jitInfo.pops; j++) {
+        info.pops.push(symbolicStack.pop());
+      }
+      info.onErrorPushes = symbolicStack.slice();
+      for (let j = 0; j < jitInfo.pushes; j++) {
+        const symbol = "s" + this.symbolCount++;
+        symbolicStack.push(symbol);
+        info.pushes.push(symbol);
+      }
+    }
+    if (symbolicStack.length > 0) {
+      return null;
+    }
+
+    // GOTO sets the PC itself; everything else falls through to the next op.
+    const last = block[block.length - 1];
+    const lastOp = this.code[last.pc];
+    let emitted = lastOp === OpCode.GOTO ? "" : `f.pc=${last.pc + opcodeSize[OpcodeLayouts[lastOp]]};`;
+    unboxLongs(block, this.code);
+    for (let i = block.length - 1; i >= 0; i--) {
+      emitted = block[i].emit("" + (suffixBase + i), emitted, this.code, this.method);
+    }
+    return emitted;
+  }
+
+  public close(thread: JVMThread): Function {
+    let cases = "", suffixBase = 0;
+    for (let i = 0; i < this.blocks.length; i++) {
+      const block = this.blocks[i];
+      const emittedBlock = this.emitBlock(block, suffixBase);
+      if (emittedBlock === null) {
+        if (!RELEASE && thread.getJVM().shouldPrintJITCompilation()) {
+          console.log(`Loop region was cancelled: unbalanced stack in block at ${block[0].pc}`);
+        }
+        return null;
+      }
+      cases += `case ${block[0].pc}:${emittedBlock}break;\n`;
+      suffixBase += block.length;
+    }
+
+    let emitted = `var n0=u.regionBudget(${regionDispatchBudget}),n=n0;
+try{
+while(!f.returnToThreadLoop){
+switch(f.pc){
+${cases}default:return;
+}
+if(--n===0){f.returnToThreadLoop=true;}
+}
+}finally{u.chargeRegionWork(n0-n);}`;
+    if (thread.getJVM().shouldPromoteLocals()) {
+      emitted = promoteLocals(emitted, this.method);
+    }
+    if (!RELEASE && thread.getJVM().shouldPrintJITCompilation()) {
+      console.log(`Emitted loop region of ${this.blocks.length} blocks: ` + emitted);
+    }
+    this.source = emitted;
+    // f = frame, t = thread, u = util
+    return new Function("f", "t", "u", emitted);
+  }
+}
+
+/**
+ * How many times a method keeps interpreting while waiting for the opcodes of
+ * its cached traces to be quickened, before it gives up on them.
+ */
+const maxCachedTraceWaits = 8;
+
+/**
+ * Maximum bytecode length of a method that the JIT will inline.
+ */
+const maxInlineSize = 35;
+
+/**
+ * Opcodes that may appear in an inlined method, besides local variable
+ * accesses, field accesses on the receiver, and the final return. None of them
+ * can throw or refer to the frame they run in.
+ */
+const inlineableOpcodes: boolean[] = function() {
+  const table: boolean[] = [];
+  [OpCode.NOP, OpCode.ACONST_NULL, OpCode.ICONST_M1, OpCode.ICONST_0, OpCode.ICONST_1,
+   OpCode.ICONST_2, OpCode.ICONST_3, OpCode.ICONST_4, OpCode.ICONST_5, OpCode.LCONST_0, OpCode.LCONST_1,
+   OpCode.FCONST_0, OpCode.FCONST_1, OpCode.FCONST_2, OpCode.DCONST_0, OpCode.DCONST_1,
+   OpCode.BIPUSH, OpCode.SIPUSH, OpCode.POP, OpCode.POP2, OpCode.DUP,
+   OpCode.IADD, OpCode.ISUB, OpCode.IMUL, OpCode.INEG, OpCode.IAND, OpCode.IOR, OpCode.IXOR,
+   OpCode.ISHL, OpCode.ISHR, OpCode.IUSHR, OpCode.LADD, OpCode.LSUB, OpCode.LMUL, OpCode.LNEG,
+   OpCode.LAND, OpCode.LOR, OpCode.LXOR, OpCode.LSHL, OpCode.LSHR, OpCode.LUSHR,
+   OpCode.FMUL, OpCode.DADD, OpCode.DSUB, OpCode.DMUL, OpCode.DDIV,
+   OpCode.I2B, OpCode.I2C, OpCode.I2S, OpCode.I2L, OpCode.L2I, OpCode.L2D,
+   OpCode.LCMP, OpCode.FCMPL, OpCode.FCMPG, OpCode.DCMPL, OpCode.DCMPG].forEach((op: OpCode) => {
+    table[op] = true;
+  });
+  return table;
+}();
+
+/**
+ * Decodes a local variable load or store opcode. Returns null if the opcode
+ * is neither.
+ */
+function decodeLocalAccess(op: OpCode, code: Buffer, pc: number): {index: number; wide: boolean; store: boolean} {
+  let type: number, index: number, store = false;
+  if (op >= OpCode.ILOAD && op <= OpCode.ALOAD) {
+    type = op - OpCode.ILOAD;
+    index = code[pc + 1];
+  } else if (op >= OpCode.ILOAD_0 && op <= OpCode.ALOAD_3) {
+    type = (op - OpCode.ILOAD_0) >> 2;
+    index = (op - OpCode.ILOAD_0) & 3;
+  } else if (op >= OpCode.ISTORE && op <= OpCode.ASTORE) {
+    type = op - OpCode.ISTORE;
+    index = code[pc + 1];
+    store = true;
+  } else if (op >= OpCode.ISTORE_0 && op <= OpCode.ASTORE_3) {
+    type = (op - OpCode.ISTORE_0) >> 2;
+    index = (op - OpCode.ISTORE_0) & 3;
+    store = true;
+  } else {
+    return null;
+  }
+  // Types are ordered I, L, F, D, A.
+  return {index: index, wide: type === 1 || type === 3, store: store};
+}
+
+/**
+ * When the JVM inlines natives, the fromStack entry points of native methods
+ * call the native inline, without a stack frame, once it has returned
+ * synchronously this many times in a row.
+ */
+const syncNativeThreshold = 8;
+
+/**
+ * A trace follows a conditional branch to its target when the profile says it
+ * is taken at least this often, out of at least minBranchSamples executions.
+ */
+const takenBranchRatio = 0.9;
+const minBranchSamples = 16;
+
 export class Method extends AbstractMethodField {
   /**
    * The method's parameters, if any, in descriptor form.
@@ -362,10 +711,63 @@ export class Method extends AbstractMethodField {
    * number of basic block entries
    */
   private numBBEntries = 0;
+  /**
+   * Times the method has waited for its cached traces' opcodes to be
+   * quickened. See shouldWaitForCachedTrace.
+   */
+  private cachedTraceWaits = 0;
 
   private compiledFunctions: Function[] = [];
   private failedCompile: boolean[] = [];
 
+  /**
+   * Taken / not taken counts for conditional branches, keyed by pc. Null until
+   * the method reaches the profiling tier.
+   */
+  private branchTaken: number[] = null;
+  private branchNotTaken: number[] = null;
+
+  /**
+   * Inline caches for virtual and interface call sites, keyed by pc.
+   */
+  private inlineCaches: InlineCache[] = [];
+
+  /**
+   * Caches for checkcast and instanceof sites, keyed by pc.
+   */
+  private typeCheckCaches: TypeCheckCache[] = [];
+
+  /**
+   * Number of implicit exceptions (e.g. NullPointerExceptions) thrown by each
+   * opcode, keyed by pc. Null until the first one.
+   */
+  private implicitThrows: number[] = null;
+
+  /**
+   * This method's exception handlers indexed by pc. Null until an exception
+   * is first thrown through the method.
+   */
+  private exceptionTable: ExceptionTable = null;
+
+  /**
+   * Pre-decoded handlers for the direct-threaded interpreter, keyed by pc.
+   * Null until first needed; see getDecodedCode in opcodes.ts.
+   */
+  public decodedCode: IOpcodeImplementation[] = null;
+
+  /**
+   * Pcs of the superinstructions written into this method's code. Null
+   * until fuseSuperinstructions runs.
+   */
+  private fusedPCs: number[] = null;
+
+  /**
+   * For native methods: the number of times in a row the method has returned
+   * without blocking, waiting on something asynchronous, throwing, or
+   * calling back into Java.
+   */
+  private syncNativeReturns = 0;
+
   constructor(cls: ReferenceClassData<JVMTypes.java_lang_Object>, constantPool: ConstantPool, slot: number, byteStream: ByteStream) {
     super(cls, constantPool, slot, byteStream);
     var parsedDescriptor = getTypes(this.rawDescriptor), i: number,
@@ -413,11 +815,94 @@ export class Method extends AbstractMethodField {
       this.code = this.getAttribute('Code');
       const codeLength = this.code.code.length;
 
-      // jit threshold. we countdown to zero from here.
-      this.numBBEntries = codeLength > 3 ? 200 : 1000 * codeLength;
+      // profiling threshold. we countdown to zero from here.
+      const profileThreshold = cls.getLoader().getJVM().getJITProfileThreshold();
+      this.numBBEntries = codeLength > 3 ? profileThreshold : 5 * profileThreshold * codeLength;
+
+      const codeCache = this.getJITCodeCache();
+      if (codeCache !== null && codeCache.hasMethod(cls.getClassHash(), this.fullSignature)) {
+        // Compiled in a previous run; skip the interpreted tiers.
+        this.numBBEntries = 0;
+        this.branchTaken = [];
+        this.branchNotTaken = [];
+      }
     }
   }
 
+  /**
+   * Returns the code cache of the JVM this method belongs to, or null.
+   */
+  private getJITCodeCache(): JITCodeCache {
+    return this.cls.getLoader().getJVM().getJITCodeCache();
+  }
+
+  /**
+   * Rewrites common opcode sequences in this method's code into
+   * superinstructions, in place. Only runs once per method.
+   */
+  public fuseSuperinstructions(): void {
+    if (this.fusedPCs !== null) {
+      return;
+    }
+    this.fusedPCs = [];
+    const code = this.getCodeAttribute().getCode();
+    for (let pc = 0; pc < code.length; pc += getInstructionLength(code, pc)) {
+      const superOp = matchSuperinstruction(code, pc);
+      if (superOp !== -1) {
+        code[pc] = superOp;
+        this.fusedPCs.push(pc);
+      }
+    }
+  }
+
+  /**
+   * Restores the opcodes that superinstructions replaced, for the JIT, which
+   * works on individual opcodes. The method is not fused again.
+   */
+  private unfuseSuperinstructions(): void {
+    if (this.fusedPCs === null) {
+      this.fusedPCs = [];
+      return;
+    }
+    const code = this.getCodeAttribute().getCode();
+    for (let i = 0; i < this.fusedPCs.length; i++) {
+      const pc = this.fusedPCs[i];
+      code[pc] = SuperinstructionFirstOp[code[pc]];
+    }
+    this.fusedPCs = [];
+  }
+
+  /**
+   * Returns the opcode at pc as it was before superinstruction fusion.
+   */
+  private getUnfusedOpcode(code: Buffer, pc: number): OpCode {
+    const op = code[pc];
+    return this.fusedPCs !== null && this.fusedPCs.indexOf(pc) !== -1 ? SuperinstructionFirstOp[op] : op;
+  }
+
+  /**
+   * Checks if the JIT has compiled code for this method's entry point.
+   */
+  public isCompiled(): boolean {
+    return this.compiledFunctions[0] !== undefined;
+  }
+
+  /**
+   * Records whether a call to this native method returned synchronously,
+   * leaving the thread runnable with the method's frame on top of the stack.
+   */
+  public recordNativeReturn(sync: boolean): void {
+    this.syncNativeReturns = sync ? this.syncNativeReturns + 1 : 0;
+  }
+
+  /**
+   * Checks if invokes may call this native method inline, without a stack
+   * frame, because its recent calls have all returned synchronously.
+   */
+  public isSyncNative(): boolean {
+    return this.syncNativeReturns >= syncNativeThreshold;
+  }
+
   public incrBBEntries() {
     // Optimisiation: we countdown to zero, instead of storing a positive limit in a separate variable
     this.numBBEntries--;
@@ -468,11 +953,85 @@ export class Method extends AbstractMethodField {
     return this.code;
   }
 
+  /**
+   * Get the inline cache for the virtual or interface call site at the given
+   * pc, creating it if needed.
+   */
+  public getInlineCache(pc: number, signature: string): InlineCache {
+    let ic = this.inlineCaches[pc];
+    if (ic === undefined) {
+      ic = this.inlineCaches[pc] = new InlineCache(this, pc, signature);
+    }
+    return ic;
+  }
+
+  /**
+   * Get the cache for the checkcast or instanceof site at the given pc,
+   * creating it if needed.
+   */
+  public getTypeCheckCache(pc: number, target: ClassData): TypeCheckCache {
+    let cache = this.typeCheckCaches[pc];
+    if (cache === undefined) {
+      cache = this.typeCheckCaches[pc] = new TypeCheckCache(target);
+    }
+    return cache;
+  }
+
+  /**
+   * Get this method's exception handlers indexed by pc, creating the index
+   * if needed.
+   */
+  public getExceptionTable(): ExceptionTable {
+    if (this.exceptionTable === null) {
+      this.exceptionTable = new ExceptionTable(this.getCodeAttribute().exceptionHandlers);
+    }
+    return this.exceptionTable;
+  }
+
+  /**
+   * Counts an implicit exception thrown by the opcode at pc, and returns the
+   * number the opcode has thrown so far.
+   */
+  public recordImplicitThrow(pc: number): number {
+    if (this.implicitThrows === null) {
+      this.implicitThrows = [];
+    }
+    return this.implicitThrows[pc] = (this.implicitThrows[pc] | 0) + 1;
+  }
+
+  /**
+   * Records which way the conditional branch at pc went, if the method is
+   * collecting a profile.
+   */
+  public profileBranch(pc: number, nextPC: number): void {
+    if (this.branchTaken !== null) {
+      if (nextPC === pc + 3) {
+        this.branchNotTaken[pc] = (this.branchNotTaken[pc] | 0) + 1;
+      } else {
+        this.branchTaken[pc] = (this.branchTaken[pc] | 0) + 1;
+      }
+    }
+  }
+
   public getOp(pc: number, codeBuffer: Buffer, thread: JVMThread): any {
     if (this.numBBEntries <= 0) {
+      if (this.branchTaken === null) {
+        // Enter the profiling tier, and keep interpreting until the method
+        // is hot enough to compile.
+        const compileThreshold = thread.getJVM().getJITCompileThreshold();
+        this.branchTaken = [];
+        this.branchNotTaken = [];
+        this.numBBEntries = compileThreshold;
+        if (compileThreshold > 0) {
+          return codeBuffer[pc];
+        }
+      }
       if (!this.failedCompile[pc]) {
         const cachedCompiledFunction = this.compiledFunctions[pc];
         if (!cachedCompiledFunction) {
+          if (this.shouldWaitForCachedTrace(pc, codeBuffer)) {
+            return codeBuffer[pc];
+          }
           const compiledFunction = this.jitCompileFrom(pc, thread);
           if (compiledFunction) {
             return compiledFunction;
@@ -492,18 +1051,12 @@ export class Method extends AbstractMethodField {
     const methodReference = <MethodReference | InterfaceMethodReference> this.cls.constantPool.get(index);
     const paramSize = methodReference.paramWordSize;
 
-    return {hasBranch: true, pops: -paramSize, pushes: 0, emit: (pops, pushes, suffix, onSuccess) => {
-      const argInitialiser = paramSize > pops.length ? `f.opStack.sliceAndDropFromTop(${paramSize - pops.length});` : `[${pops.reduce((a,b) => b + ',' + a, '')}];`;
-      let argMaker = `var args${suffix}=` + argInitialiser;
-      if ((paramSize > pops.length) && (pops.length > 0)) {
-        argMaker += `args${suffix}.push(${pops.slice().reverse().join(',')});`;
-      }
-      return argMaker + `
+    return {hasBranch: true, pops: -paramSize, pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
+      return makeOnError(onErrorPushes) + makeStackArgs(pops) + `
 var methodReference${suffix}=f.method.cls.constantPool.get(${index});
 f.pc=${pc};
-methodReference${suffix}.jsConstructor[methodReference${suffix}.fullSignature](t,args${suffix});
-f.returnToThreadLoop=true;
-${onSuccess}`;
+var r${suffix}=u.invokeWithStackArgs(t,methodReference${suffix}.jsConstructor[methodReference${suffix}.fullSignature],null,f.opStack,${paramSize});
+${onSuccess}f.returnToThreadLoop=!r${suffix}&&!t.runCallee(f);`;
     }};
 
   }
@@ -514,13 +1067,8 @@ ${onSuccess}`;
     const paramSize = methodReference.paramWordSize;
     return {hasBranch: true, pops: -(paramSize + 1), pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
       const onError = makeOnError(onErrorPushes);
-      const argInitialiser = paramSize > pops.length ? `f.opStack.sliceAndDropFromTop(${paramSize - pops.length});` : `[${pops.slice(0, paramSize).reduce((a,b) => b + ',' + a, '')}];`;
-      let argMaker = `var args${suffix}=` + argInitialiser;
-      if ((paramSize > pops.length) && (pops.length > 0)) {
-        argMaker += `args${suffix}.push(${pops.slice().reverse().join(',')});`;
-      }
-      return argMaker + `var obj${suffix}=${(paramSize+1)===pops.length?pops[paramSize]:"f.opStack.pop()"};f.pc=${pc};
-if(!u.isNull(t,f,obj${suffix})){obj${suffix}['${methodReference.signature}'](t,args${suffix});f.returnToThreadLoop=true;${onSuccess}}else{${onError}}`;
+      return onError + makeStackArgs(pops) + `var obj${suffix}=f.opStack.fromTop(${paramSize});f.pc=${pc};
+if(!u.isNull(t,f,obj${suffix})){var r${suffix}=u.invokeWithStackArgs(t,f.method.getInlineCache(${pc},'${methodReference.signature}').lookup(obj${suffix}),obj${suffix},f.opStack,${paramSize});${onSuccess}f.returnToThreadLoop=!r${suffix}&&!t.runCallee(f);}else{f.opStack.dropFromTop(${paramSize + 1});}`;
     }};
 
   }
@@ -531,21 +1079,327 @@ if(!u.isNull(t,f,obj${suffix})){obj${suffix}['${methodReference.signature}'](t,a
     const paramSize = methodReference.paramWordSize;
     return {hasBranch: true, pops: -(paramSize + 1), pushes: 0, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
       const onError = makeOnError(onErrorPushes);
-      const argInitialiser = paramSize > pops.length ? `f.opStack.sliceAndDropFromTop(${paramSize - pops.length});` : `[${pops.slice(0, paramSize).reduce((a,b) => b + ',' + a, '')}];`;
-      let argMaker = `var args${suffix}=` + argInitialiser;
-      if ((paramSize > pops.length) && (pops.length > 0)) {
-        argMaker += `args${suffix}.push(${pops.slice().reverse().join(',')});`;
+      return onError + makeStackArgs(pops) + `var obj${suffix}=f.opStack.fromTop(${paramSize});f.pc=${pc};
+if(!u.isNull(t,f,obj${suffix})){var r${suffix}=u.invokeWithStackArgs(t,obj${suffix}['${methodReference.fullSignature}'],obj${suffix},f.opStack,${paramSize});${onSuccess}f.returnToThreadLoop=!r${suffix}&&!t.runCallee(f);}else{f.opStack.dropFromTop(${paramSize + 1});}`;
+    }};
+  }
+
+  /**
+   * Checks if the JIT can inline this method into its callers. Inlineable
+   * methods are small, straight-line bytecode methods that end in their only
+   * return, and that contain nothing that can throw or depend on the frame
+   * they run in. Field accesses are allowed on the receiver, which the invoke
+   * has already null-checked.
+   */
+  public canInline(): boolean {
+    if (this.accessFlags.isNative() || this.accessFlags.isAbstract() || this.accessFlags.isSynchronized()) {
+      return false;
+    }
+    const codeAttr = this.getCodeAttribute(), code = codeAttr.getCode();
+    if (code.length > maxInlineSize || codeAttr.exceptionHandlers.length > 0) {
+      return false;
+    }
+    const isStatic = this.accessFlags.isStatic();
+    // Tracks which stack slots hold the receiver.
+    const receiverStack: boolean[] = [];
+    for (let pc = 0; pc < code.length;) {
+      // Checks the original opcodes, but leaves the method fused until it is
+      // actually inlined.
+      const op = this.getUnfusedOpcode(code, pc), jitInfo = opJitInfo[op],
+        nextPC = pc + opcodeSize[OpcodeLayouts[op]],
+        local = decodeLocalAccess(op, code, pc);
+      if (local !== null) {
+        if (local.store) {
+          if ((local.index === 0 && !isStatic) || receiverStack.length < (local.wide ? 2 : 1)) {
+            return false;
+          }
+          receiverStack.length -= local.wide ? 2 : 1;
+        } else {
+          receiverStack.push(local.index === 0 && !isStatic);
+          if (local.wide) {
+            receiverStack.push(false);
+          }
+        }
+      } else if (op >= OpCode.IRETURN && op <= OpCode.RETURN) {
+        return nextPC === code.length;
+      } else if (op === OpCode.GETFIELD_FAST32 || op === OpCode.GETFIELD_FAST64 ||
+                 op === OpCode.PUTFIELD_FAST32 || op === OpCode.PUTFIELD_FAST64) {
+        // The object is the deepest operand.
+        if (receiverStack.length < jitInfo.pops || !receiverStack[receiverStack.length - jitInfo.pops]) {
+          return false;
+        }
+        receiverStack.length -= jitInfo.pops;
+        for (let i = 0; i < jitInfo.pushes; i++) {
+          receiverStack.push(false);
+        }
+      } else if (inlineableOpcodes[op] && receiverStack.length >= jitInfo.pops) {
+        const isReceiver = op === OpCode.DUP && receiverStack[receiverStack.length - 1];
+        receiverStack.length -= jitInfo.pops;
+        for (let i = 0; i < jitInfo.pushes; i++) {
+          receiverStack.push(isReceiver);
+        }
+      } else {
+        return false;
+      }
+      pc = nextPC;
+    }
+    return false;
+  }
+
+  /**
+   * Emits the body of this method inline. canInline() must be true.
+   * @param args Symbols holding the arguments, in local variable order.
+   * @param prefix Prefix for all variables the inlined body declares.
+   * @param results Symbols to assign the return value to.
+   * @param onSuccess Code to run after the inlined body.
+   */
+  public emitInlinedBody(args: string[], prefix: string, results: string[], onSuccess: string): string {
+    this.unfuseSuperinstructions();
+    const code = this.getCodeAttribute().getCode();
+    const infos: TraceInfo[] = [];
+    const symbolicStack: string[] = [];
+    let symbolCount = 0;
+    for (let pc = 0; pc < code.length; pc += opcodeSize[OpcodeLayouts[code[pc]]]) {
+      const op = code[pc], local = decodeLocalAccess(op, code, pc),
+        info = new TraceInfo(pc, opJitInfo[op]),
+        pops = local !== null ? (local.store ? (local.wide ? 2 : 1) : 0) : (op >= OpCode.IRETURN && op <= OpCode.RETURN ? results.length : info.jitInfo.pops),
+        pushes = local !== null ? (local.store ? 0 : (local.wide ? 2 : 1)) : (op >= OpCode.IRETURN && op <= OpCode.RETURN ? 0 : info.jitInfo.pushes);
+      for (let i = 0; i < pops; i++) {
+        info.pops.push(symbolicStack.pop());
+      }
+      // Error paths are unreachable; see canInline().
+      info.onErrorPushes = [];
+      for (let i = 0; i < pushes; i++) {
+        const symbol = `${prefix}s${symbolCount++}`;
+        symbolicStack.push(symbol);
+        info.pushes.push(symbol);
+      }
+      infos.push(info);
+    }
+
+    let emitted = onSuccess;
+    for (let i = infos.length - 1; i >= 0; i--) {
+      const info = infos[i], op = code[info.pc], local = decodeLocalAccess(op, code, info.pc);
+      if (local !== null) {
+        if (local.store) {
+          emitted = `${prefix}l${local.index}=${info.pops[local.wide ? 1 : 0]};${emitted}`;
+        } else {
+          emitted = `var ${info.pushes[0]}=${prefix}l${local.index}${local.wide ? `,${info.pushes[1]}=null` : ''};${emitted}`;
+        }
+      } else if (op >= OpCode.IRETURN && op <= OpCode.RETURN) {
+        if (results.length === 1) {
+          emitted = `var ${results[0]}=${info.pops[0]};${emitted}`;
+        } else if (results.length === 2) {
+          emitted = `var ${results[0]}=${info.pops[1]},${results[1]}=null;${emitted}`;
+        }
+      } else {
+        emitted = info.jitInfo.emit(info.pops, info.pushes, `${prefix}${i}`, emitted, code, info.pc, info.onErrorPushes, this);
+      }
+    }
+
+    // Declares every local, so stores to non-argument locals don't assign
+    // to globals.
+    const localDecls: string[] = [], maxLocals = Math.max(this.getCodeAttribute().getMaxLocals(), args.length);
+    for (let i = 0; i < maxLocals; i++) {
+      localDecls.push(i < args.length ? `${prefix}l${i}=${args[i]}` : `${prefix}l${i}`);
+    }
+    return localDecls.length > 0 ? `var ${localDecls.join(',')};${emitted}` : emitted;
+  }
+
+  /**
+   * Returns a JitInfo that inlines the given callee at an invoke. Virtual
+   * calls are guarded by the call site's inline cache, and fall back to a
+   * normal invoke when the receiver's class differs.
+   */
+  private makeInlinedInvokeJitInfo(code: Buffer, pc: number, callee: Method): JitInfo {
+    const op = code[pc];
+    const index = code.readUInt16BE(pc + 1);
+    const methodReference = <MethodReference | InterfaceMethodReference> this.cls.constantPool.get(index);
+    const paramSize = methodReference.paramWordSize;
+    const hasReceiver = op !== OpCode.INVOKESTATIC_FAST;
+    const isVirtual = op === OpCode.INVOKEVIRTUAL_FAST || op === OpCode.INVOKEINTERFACE_FAST;
+    const returnWords = callee.returnType === 'V' ? 0 : (callee.returnType === 'J' || callee.returnType === 'D' ? 2 : 1);
+    return {hasBranch: false, pops: paramSize + (hasReceiver ? 1 : 0), pushes: returnWords, emit: (pops, pushes, suffix, onSuccess, code, pc, onErrorPushes) => {
+      // pops[0] is the top of the stack, i.e. the last argument.
+      const locals = pops.slice().reverse();
+      const inlined = callee.emitInlinedBody(locals, `i${suffix}_`, pushes, onSuccess);
+      if (!hasReceiver) {
+        return inlined;
       }
-      return argMaker + `var obj${suffix}=${(paramSize+1)===pops.length?pops[paramSize]:"f.opStack.pop()"};f.pc=${pc};
-if(!u.isNull(t,f,obj${suffix})){obj${suffix}['${methodReference.fullSignature}'](t, args${suffix});f.returnToThreadLoop=true;${onSuccess}}else{${onError}}`;
+      const obj = locals[0], onError = makeOnError(onErrorPushes);
+      if (!isVirtual) {
+        return `f.pc=${pc};if(!u.isNull(t,f,${obj})){${inlined}}else{${onError}}`;
+      }
+      return `f.pc=${pc};
+if(!u.isNull(t,f,${obj})){var ic${suffix}=f.method.getInlineCache(${pc},'${methodReference.signature}');
+if(${obj}.constructor===ic${suffix}.constructors[0]){${inlined}}
+else{${onError}f.opStack.pushAll(${locals.join(',')});f.returnToThreadLoop=!u.invokeWithStackArgs(t,ic${suffix}.lookup(${obj}),${obj},f.opStack,${paramSize})&&!t.runCallee(f);}
+}else{${onError}}`;
     }};
   }
 
+  /**
+   * Returns the method to inline at the invoke at the given pc, or null if
+   * the call should not be inlined.
+   */
+  private getInlineCandidate(code: Buffer, pc: number): Method {
+    const op = code[pc];
+    let callee: Method = null;
+    if (op === OpCode.INVOKESTATIC_FAST || op === OpCode.INVOKENONVIRTUAL_FAST) {
+      callee = (<MethodReference | InterfaceMethodReference> this.cls.constantPool.get(code.readUInt16BE(pc + 1))).method;
+    } else if (op === OpCode.INVOKEVIRTUAL_FAST || op === OpCode.INVOKEINTERFACE_FAST) {
+      const ic = this.inlineCaches[pc];
+      callee = ic !== undefined ? ic.getMonomorphicTarget() : null;
+    }
+    return callee !== null && callee !== this && callee.canInline() ? callee : null;
+  }
+
+  /**
+   * Checks if the profile says the forward conditional branch at pc is
+   * usually taken.
+   */
+  private isBranchUsuallyTaken(code: Buffer, pc: number): boolean {
+    const op = code[pc];
+    if (this.branchTaken === null || op === OpCode.GOTO || !isBranchOpcode(op) || code.readInt16BE(pc + 1) <= 3) {
+      return false;
+    }
+    const taken = this.branchTaken[pc] | 0, total = taken + (this.branchNotTaken[pc] | 0);
+    return total >= minBranchSamples && taken >= takenBranchRatio * total;
+  }
+
+  /**
+   * Checks if startPC is the head of a loop made up entirely of JIT-supported,
+   * non-invoking opcodes. If it is, returns a region for the loop, with one
+   * block per basic block. Otherwise, returns null.
+   */
+  private findLoopRegion(startPC: number, code: Buffer): Region {
+    const pcs: number[] = [];
+    let endPC = -1;
+    for (let i = startPC; i < code.length;) {
+      const op = code[i];
+      const jitInfo = opJitInfo[op];
+      if (!jitInfo || (jitInfo.hasBranch && op !== OpCode.GOTO)) {
+        break;
+      }
+      pcs.push(i);
+      if (isBranchOpcode(op) && i + code.readInt16BE(i + 1) === startPC) {
+        endPC = i + 3;
+      }
+      i += opcodeSize[OpcodeLayouts[op]];
+    }
+    if (endPC === -1) {
+      return null;
+    }
+
+    // Block leaders: the loop head, in-region branch targets, and the opcode
+    // after each branch.
+    const leaders: boolean[] = [];
+    leaders[startPC] = true;
+    for (let i = 0; i < pcs.length && pcs[i] < endPC; i++) {
+      const pc = pcs[i];
+      if (isBranchOpcode(code[pc])) {
+        const target = pc + code.readInt16BE(pc + 1);
+        if (target >= startPC && target < endPC) {
+          leaders[target] = true;
+        }
+        leaders[pc + 3] = true;
+      }
+    }
+
+    const region = new Region(startPC, code, this);
+    for (let i = 0; i < pcs.length && pcs[i] < endPC; i++) {
+      const pc = pcs[i];
+      if (leaders[pc]) {
+        region.addBlock();
+      }
+      region.addOp(pc, opJitInfo[code[pc]]);
+    }
+    return region;
+  }
+
+  /**
+   * Rebuilds the trace starting at pc from the code cache. Returns null if it
+   * is not cached, or no longer compiles.
+   */
+  private loadCachedTrace(pc: number): Function {
+    const codeCache = this.getJITCodeCache(), classHash = this.cls.getClassHash();
+    const cachedTrace = codeCache.lookup(classHash, this.fullSignature, pc);
+    if (cachedTrace === null) {
+      return null;
+    }
+    try {
+      // f = frame, t = thread, u = util
+      return this.compiledFunctions[pc] = new Function("f", "t", "u", cachedTrace.code);
+    } catch (e) {
+      codeCache.remove(classHash, this.fullSignature, pc);
+      return null;
+    }
+  }
+
+  /**
+   * Checks if the trace cached for pc was compiled from opcodes that the
+   * interpreter has not quickened yet in this run. Such a trace reads
+   * constant pool entries that are not resolved, and skips the class
+   * initialization the original opcodes trigger. If so, the method keeps
+   * interpreting for another compile threshold of entries. After
+   * maxCachedTraceWaits waits, the cached trace is dropped and the current
+   * code is compiled instead.
+   */
+  private shouldWaitForCachedTrace(pc: number, code: Buffer): boolean {
+    const codeCache = this.getJITCodeCache();
+    if (codeCache === null) {
+      return false;
+    }
+    const classHash = this.cls.getClassHash(),
+      cachedTrace = codeCache.lookup(classHash, this.fullSignature, pc);
+    if (cachedTrace === null) {
+      return false;
+    }
+    const opcodes = cachedTrace.opcodes;
+    for (let i = 0; i < opcodes.length; i += 2) {
+      if (this.getUnfusedOpcode(code, opcodes[i]) !== opcodes[i + 1]) {
+        if (this.cachedTraceWaits < maxCachedTraceWaits) {
+          this.cachedTraceWaits++;
+          this.numBBEntries = this.cls.getLoader().getJVM().getJITCompileThreshold();
+          return true;
+        }
+        codeCache.remove(classHash, this.fullSignature, pc);
+        return false;
+      }
+    }
+    return false;
+  }
+
   private jitCompileFrom(startPC: number, thread: JVMThread) {
     if (!RELEASE && thread.getJVM().shouldPrintJITCompilation()) {
       console.log(`Planning to JIT: ${this.fullSignature} from ${startPC}`);
     }
+    this.unfuseSuperinstructions();
     const code = this.getCodeAttribute().getCode();
+    const codeCache = this.getJITCodeCache();
+    if (codeCache !== null) {
+      const cachedFunction = this.loadCachedTrace(startPC);
+      if (cachedFunction !== null) {
+        return cachedFunction;
+      }
+    }
+
+    // Hot loops compile into a single function when possible.
+    const region = this.findLoopRegion(startPC, code);
+    if (region !== null) {
+      const compiledRegion = region.close(thread);
+      if (compiledRegion) {
+        this.compiledFunctions[startPC] = compiledRegion;
+        if (codeCache !== null) {
+          codeCache.store(this.cls.getClassHash(), this.fullSignature, startPC, region.source, region.getOpcodes());
+        }
+        if (!RELEASE && thread.getJVM().shouldDumpCompiledCode()) {
+          thread.getJVM().dumpCompiledMethod(this.fullSignature, startPC, compiledRegion.toString());
+        }
+        return compiledRegion;
+      }
+    }
+
     let trace: Trace = null;
     const self = this;
     let done = false;
@@ -556,6 +1410,9 @@ if(!u.isNull(t,f,obj${suffix})){obj${suffix}['${methodReference.fullSignature}']
         const compiledFunction = trace.close(thread);
         if (compiledFunction) {
           self.compiledFunctions[trace.startPC] = compiledFunction;
+          if (codeCache !== null && trace.cacheable) {
+            codeCache.store(self.cls.getClassHash(), self.fullSignature, trace.startPC, trace.source, trace.getOpcodes());
+          }
           if (!RELEASE && thread.getJVM().shouldDumpCompiledCode()) {
             thread.getJVM().dumpCompiledMethod(self.fullSignature, trace.startPC, compiledFunction.toString());
           }
@@ -572,7 +1429,16 @@ if(!u.isNull(t,f,obj${suffix})){obj${suffix}['${methodReference.fullSignature}']
         console.log(`${i}: ${annotateOpcode(op, this, code, i)}`);
       }
       const jitInfo = opJitInfo[op];
-      if (jitInfo) {
+      const inlinee = jitInfo ? null : this.getInlineCandidate(code, i);
+      if (jitInfo && this.isBranchUsuallyTaken(code, i)) {
+        // Follow the hot direction; falling through exits the trace.
+        if (trace === null) {
+          trace = new Trace(i, code, self);
+        }
+        trace.addOp(i, makeTakenBranchJitInfo(op));
+        i += code.readInt16BE(i + 1);
+        continue;
+      } else if (jitInfo) {
         if (trace === null) {
           trace = new Trace(i, code, self);
         }
@@ -581,6 +1447,15 @@ if(!u.isNull(t,f,obj${suffix})){obj${suffix}['${methodReference.fullSignature}']
           this.failedCompile[i] = true;
           closeCurrentTrace();
         }
+      } else if (inlinee !== null) {
+        // Small leaf callee; the trace continues past the call.
+        if (trace === null) {
+          trace = new Trace(i, code, self);
+        }
+        trace.addOp(i, this.makeInlinedInvokeJitInfo(code, i, inlinee));
+        if (inlinee.cls !== this.cls) {
+          trace.cacheable = false;
+        }
       } else if (op === OpCode.INVOKESTATIC_FAST && trace !== null) {
         const invokeJitInfo: JitInfo = this.makeInvokeStaticJitInfo(code, i);
         trace.addOp(i, invokeJitInfo);
@@ -757,15 +1632,15 @@ if(!u.isNull(t,f,obj${suffix})){obj${suffix}['${methodReference.fullSignature}']
   }
 
   /**
-   * Lock this particular method.
+   * Get the object that this synchronized method locks.
    */
-  public methodLock(thread: JVMThread, frame: BytecodeStackFrame): Monitor {
+  public methodLock(thread: JVMThread, frame: BytecodeStackFrame): JVMTypes.java_lang_Object {
     if (this.accessFlags.isStatic()) {
       // Static methods lock the class.
-      return this.cls.getClassObject(thread).getMonitor();
+      return this.cls.getClassObject(thread);
     } else {
       // Non-static methods lock the instance.
-      return (<JVMTypes.java_lang_Object> frame.locals[0]).getMonitor();
+      return <JVMTypes.java_lang_Object> frame.locals[0];
     }
   }
 
@@ -824,7 +1699,7 @@ if(!u.isNull(t,f,obj${suffix})){obj${suffix}['${methodReference.fullSignature}']
    * TODO: Signature polymorphic functions...?
    */
   public outputJavaScriptFunction(jsConsName: string, outStream: StringOutputStream, nonVirtualOnly: boolean = false): void {
-    var i: number;
+    var i: number, firstArg = 0;
     if (this.accessFlags.isStatic()) {
       outStream.write(`${jsConsName}["${reescapeJVMName(this.fullSignature)}"] = ${jsConsName}["${reescapeJVMName(this.signature)}"] = `);
     } else {
@@ -835,40 +1710,120 @@ if(!u.isNull(t,f,obj${suffix})){obj${suffix}['${methodReference.fullSignature}']
     }
     // cb check is boilerplate, required for natives calling into JVM land.
     outStream.write(`(function(method) {
-  return function(thread, args, cb) {
+  var fcn = function(thread, args, cb) {
     if (typeof cb === 'function') {
       thread.stack.push(new InternalStackFrame(cb));
     }
-    thread.stack.push(new ${this.accessFlags.isNative() ? "NativeStackFrame" : "BytecodeStackFrame"}(method, `);
-    if (!this.accessFlags.isStatic()) {
-      // Non-static functions need to add the implicit 'this' variable to the
-      // local variables.
-      outStream.write(`[this`);
-      // Give the JS engine hints about the size, type, and contents of the array
-      // by making it a literal.
-      for (i = 0; i < this.parameterWords; i++) {
-        outStream.write(`, args[${i}]`);
+`);
+    if (this.accessFlags.isNative()) {
+      outStream.write(`    thread.stack.push(new NativeStackFrame(method, `);
+      if (!this.accessFlags.isStatic()) {
+        // Non-static functions need to add the implicit 'this' variable to the
+        // local variables.
+        outStream.write(`[this`);
+        // Give the JS engine hints about the size, type, and contents of the array
+        // by making it a literal.
+        for (i = 0; i < this.parameterWords; i++) {
+          outStream.write(`, args[${i}]`);
+        }
+        outStream.write(`]`);
+      } else {
+        // Static function doesn't need to mutate the arguments.
+        if (this.parameterWords > 0) {
+          outStream.write(`args`);
+        } else {
+          outStream.write(`[]`);
+        }
       }
-      outStream.write(`]`);
+      outStream.write(`));
+`);
     } else {
-      // Static function doesn't need to mutate the arguments.
-      if (this.parameterWords > 0) {
-        outStream.write(`args`);
-      } else {
-        outStream.write(`[]`);
+      // Copy the arguments into the locals of a frame from the thread's
+      // frame pool, rather than using an array literal as the locals.
+      outStream.write(`    var frame = thread.allocBytecodeFrame(method), locals = frame.locals;\n`);
+      if (!this.accessFlags.isStatic()) {
+        outStream.write(`    locals[0] = this;\n`);
+        firstArg = 1;
       }
+      for (i = 0; i < this.parameterWords; i++) {
+        outStream.write(`    locals[${i + firstArg}] = args[${i}];\n`);
+      }
+      outStream.write(`    thread.stack.push(frame);
+`);
     }
-    outStream.write(`));
-    thread.setStatus(${ThreadStatus.RUNNABLE});
+    outStream.write(`    thread.setStatus(${ThreadStatus.RUNNABLE});
   };
+`);
+    // Without stack args, methods get no fromStack entry point, and invokes
+    // pass their arguments in an array.
+    if (this.cls.getLoader().getJVM().areStackArgsEnabled() && !this.isSignaturePolymorphic()) {
+      this.outputFromStackFunction(outStream);
+    }
+    outStream.write(`  return fcn;
 })(cls.getSpecificMethod("${reescapeJVMName(this.cls.getInternalName())}", "${reescapeJVMName(this.signature)}"));\n`);
   }
+
+  /**
+   * Generates the fromStack entry point of this method's JavaScript function,
+   * which invoke opcodes use instead of the function itself when they can.
+   * It takes the receiver (if any) and arguments off the top of the caller's
+   * operand stack, without building an array of them first: bytecode methods
+   * get them in their frame's locals, and native methods in the argument
+   * array they are applied to. Native methods that usually return
+   * synchronously are called inline; the entry point then returns true if
+   * the call already completed, and the caller can continue.
+   */
+  private outputFromStackFunction(outStream: StringOutputStream): void {
+    var isStatic = this.accessFlags.isStatic(),
+      words = this.parameterWords + (isStatic ? 0 : 1);
+    outStream.write(`  fcn.fromStack = function(thread, opStack) {
+`);
+    if (this.accessFlags.isNative()) {
+      // Skip the unused second word of longs and doubles, as convertArgs does.
+      var args = ['thread'], word = isStatic ? 0 : 1, i: number;
+      if (!isStatic) {
+        args.push('this');
+      }
+      for (i = 0; i < this.parameterTypes.length; i++) {
+        var p = this.parameterTypes[i];
+        args.push(`opStack.fromTop(${words - 1 - word})`);
+        word += (p === 'J' || p === 'D') ? 2 : 1;
+      }
+      outStream.write(`    var args = [${args.join(', ')}];
+    opStack.dropFromTop(${words});
+`);
+      if (this.cls.getLoader().getJVM().areNativesInlined() && !this.isCallerSensitive()) {
+        outStream.write(`    if (method.isSyncNative()) {
+      return thread.runNativeInline(method, args);
+    }
+`);
+      }
+      outStream.write(`    thread.stack.push(new NativeStackFrame(method, args, true));
+`);
+    } else {
+      outStream.write(`    var frame = thread.allocBytecodeFrame(method);
+    opStack.popInto(frame.locals, ${words});
+    thread.stack.push(frame);
+`);
+    }
+    outStream.write(`    thread.setStatus(${ThreadStatus.RUNNABLE});
+  };
+`);
+  }
 }
 
 function makeOnError(onErrorPushes: string[]) {
   return onErrorPushes.length > 0 ? `f.opStack.pushAll(${onErrorPushes.join(',')});` : '';
 }
 
+/**
+ * Puts the invoke operands that compiled code has popped into variables back
+ * on the operand stack, where u.invokeWithStackArgs expects them.
+ */
+function makeStackArgs(pops: string[]) {
+  return pops.length > 0 ? `f.opStack.pushAll(${pops.slice().reverse().join(',')});` : '';
+}
+
 const statTraceCloser: number[] = new Array(256);
 
 if (!RELEASE) {
@@ -7,8 +7,11 @@ import logging = Doppio.Debug.Logging;
 import LogLevel = logging.LogLevel;
 import util = Doppio.VM.Util;
 import IJVMConstructor = Doppio.VM.ClassFile.IJVMConstructor;
+import ThreadStatus = Doppio.VM.Enums.ThreadStatus;
 import * as NodeCrypto from 'crypto';
+import {IsolateMessage} from '../Isolates';
 declare var msCrypto: Crypto;
+declare var SharedArrayBuffer: any;
 
 export default function (): any {
   class doppio_Debug {
@@ -51,6 +54,154 @@ export default function (): any {
 
   }
 
+  /**
+   * Typed array constructors for the primitive arrays doppio.SharedArrays can
+   * allocate, keyed by array type descriptor.
+   */
+  const sharedArrayTypes: {[desc: string]: any} = typeof Int8Array === 'undefined' ? {} : {
+    '[B': Int8Array,
+    '[C': Uint16Array,
+    '[S': Int16Array,
+    '[I': Int32Array,
+    '[F': Float32Array,
+    '[D': Float64Array
+  };
+
+  /**
+   * Allocates a primitive array backed by a SharedArrayBuffer, or by ordinary
+   * memory where SharedArrayBuffers are unavailable.
+   */
+  function newSharedArray(thread: JVMThread, desc: string, length: number): JVMTypes.JVMArray<number> {
+    if (length < 0) {
+      thread.throwNewException('Ljava/lang/NegativeArraySizeException;', `Tried to create an array with length less than zero: ${length}`);
+      return null;
+    }
+    const cls = <ArrayClassData<number>> thread.getBsCl().getInitializedClass(thread, desc);
+    if (!util.sharedArraysSupported) {
+      return util.newArrayFromClass(thread, cls, length);
+    }
+    const arrType = sharedArrayTypes[desc];
+    return util.newArrayFromDataWithClass(thread, cls, new arrType(new SharedArrayBuffer(length * arrType.BYTES_PER_ELEMENT)));
+  }
+
+  /**
+   * Converts a serialized task or result for another isolate: a byte array of
+   * serialized data, followed by the shared arrays it references. The data is
+   * copied into an ArrayBuffer that can be transferred, while the shared
+   * arrays are sent as is.
+   */
+  function toIsolateMessage(parts: JVMTypes.JVMArray<JVMTypes.java_lang_Object>): IsolateMessage {
+    const bytes = <JVMTypes.JVMArray<number>> <any> parts.array[0],
+      data = new ArrayBuffer(bytes.array.length),
+      shared: any[] = [];
+    new Int8Array(data).set(<any> bytes.array);
+    for (let i = 1; i < parts.array.length; i++) {
+      shared.push((<JVMTypes.JVMArray<number>> <any> parts.array[i]).array);
+    }
+    return {data: data, shared: shared};
+  }
+
+  /**
+   * Converts a message from another isolate back into an Object[], without
+   * copying its data or shared arrays.
+   */
+  function fromIsolateMessage(thread: JVMThread, message: IsolateMessage): JVMTypes.JVMArray<JVMTypes.java_lang_Object> {
+    const bsCl = thread.getBsCl(),
+      parts = util.newArray<JVMTypes.java_lang_Object>(thread, bsCl, '[Ljava/lang/Object;', message.shared.length + 1);
+    parts.array[0] = util.newArrayFromData(thread, bsCl, '[B', <any> new Int8Array(message.data));
+    for (let i = 0; i < message.shared.length; i++) {
+      const arr = message.shared[i];
+      for (let desc in sharedArrayTypes) {
+        if (arr instanceof sharedArrayTypes[desc]) {
+          parts.array[i + 1] = util.newArrayFromData(thread, bsCl, desc, arr);
+          break;
+        }
+      }
+    }
+    return parts;
+  }
+
+  class doppio_Isolates {
+
+    public static 'count0()I'(thread: JVMThread): number {
+      const pool = thread.getJVM().getIsolatePool();
+      return pool === null ? 0 : pool.getSize();
+    }
+
+    public static 'execute([Ljava/lang/Object;)[Ljava/lang/Object;'(thread: JVMThread, task: JVMTypes.JVMArray<JVMTypes.java_lang_Object>): void {
+      const pool = thread.getJVM().getIsolatePool();
+      if (pool === null) {
+        thread.throwNewException('Ljava/lang/IllegalStateException;', 'Isolates are disabled.');
+        return;
+      }
+      thread.setStatus(ThreadStatus.ASYNC_WAITING);
+      pool.submit(toIsolateMessage(task), (err: string, result?: IsolateMessage) => {
+        if (err) {
+          thread.throwNewException('Ljava/io/IOException;', err);
+        } else {
+          thread.asyncReturn(fromIsolateMessage(thread, result));
+        }
+      });
+    }
+
+  }
+
+  class doppio_IsolateWorker {
+
+    public static 'nextTask()[Ljava/lang/Object;'(thread: JVMThread): void {
+      const channel = thread.getJVM().getIsolateChannel();
+      if (channel === null) {
+        thread.throwNewException('Ljava/lang/IllegalStateException;', 'Not running in an isolate.');
+        return;
+      }
+      thread.setStatus(ThreadStatus.ASYNC_WAITING);
+      channel.nextTask((message: IsolateMessage) => {
+        thread.asyncReturn(fromIsolateMessage(thread, message));
+      });
+    }
+
+    public static 'completeTask([Ljava/lang/Object;)V'(thread: JVMThread, result: JVMTypes.JVMArray<JVMTypes.java_lang_Object>): void {
+      thread.getJVM().getIsolateChannel().complete(toIsolateMessage(result));
+    }
+
+  }
+
+  class doppio_SharedArrays {
+
+    public static 'isSupported0()Z'(thread: JVMThread): boolean {
+      return util.sharedArraysSupported;
+    }
+
+    public static 'isShared0(Ljava/lang/Object;)Z'(thread: JVMThread, obj: JVMTypes.java_lang_Object): boolean {
+      return obj != null && obj.getClass() instanceof ArrayClassData && util.isSharedArray((<JVMTypes.JVMArray<any>> obj).array);
+    }
+
+    public static 'newByteArray0(I)[B'(thread: JVMThread, length: number): JVMTypes.JVMArray<number> {
+      return newSharedArray(thread, '[B', length);
+    }
+
+    public static 'newCharArray0(I)[C'(thread: JVMThread, length: number): JVMTypes.JVMArray<number> {
+      return newSharedArray(thread, '[C', length);
+    }
+
+    public static 'newShortArray0(I)[S'(thread: JVMThread, length: number): JVMTypes.JVMArray<number> {
+      return newSharedArray(thread, '[S', length);
+    }
+
+    public static 'newIntArray0(I)[I'(thread: JVMThread, length: number): JVMTypes.JVMArray<number> {
+      return newSharedArray(thread, '[I', length);
+    }
+
+    public static 'newFloatArray0(I)[F'(thread: JVMThread, length: number): JVMTypes.JVMArray<number> {
+      return newSharedArray(thread, '[F', length);
+    }
+
+    public static 'newDoubleArray0(I)[D'(thread: JVMThread, length: number): JVMTypes.JVMArray<number> {
+      return newSharedArray(thread, '[D', length);
+    }
+
+  }
+
   class doppio_security_BrowserPRNG {
     private static crypto = typeof(crypto) !== 'undefined' ? crypto : typeof(msCrypto) !== 'undefined' ? msCrypto : null;
 
@@ -107,6 +258,9 @@ export default function (): any {
   return {
     'doppio/Debug': doppio_Debug,
     'doppio/JavaScript': doppio_JavaScript,
+    'doppio/Isolates': doppio_Isolates,
+    'doppio/IsolateWorker': doppio_IsolateWorker,
+    'doppio/SharedArrays': doppio_SharedArrays,
     "doppio/security/BrowserPRNG": doppio_security_BrowserPRNG,
     "doppio/security/NodePRNG": doppio_security_NodePRNG
   };
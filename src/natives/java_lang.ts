@@ -5,6 +5,10 @@ import logging = Doppio.Debug.Logging;
 import util = Doppio.VM.Util;
 import ArrayClassData = Doppio.VM.ClassFile.ArrayClassData;
 import ThreadStatus = Doppio.VM.Enums.ThreadStatus;
+import StackFrameType = Doppio.VM.Enums.StackFrameType;
+import IStackFrame = Doppio.VM.Threading.IStackFrame;
+import BytecodeStackFrame = Doppio.VM.Threading.BytecodeStackFrame;
+import NativeStackFrame = Doppio.VM.Threading.NativeStackFrame;
 import Method = Doppio.VM.ClassFile.Method;
 import Field = Doppio.VM.ClassFile.Field;
 import AbstractMethodField = Doppio.VM.ClassFile.AbstractMethodField;
@@ -691,6 +695,9 @@ export default function (): any {
       if (val != null) {
         var component = arr.getClass().getComponentClass();
         if (util.is_primitive_type(component.getInternalName())) {
+          if (component.getInternalName() === 'J') {
+            val = Long.fromArrayElement(val);
+          }
           // Box primitive values.
           return (<PrimitiveClassData> component).createWrapperObject(thread, val);
         }
@@ -703,7 +710,12 @@ export default function (): any {
     public static 'getChar(Ljava/lang/Object;I)C': (thread: JVMThread, arg0: JVMTypes.JVMArray<number>, arg1: number) => number = arrayGet;
     public static 'getShort(Ljava/lang/Object;I)S': (thread: JVMThread, arg0: JVMTypes.JVMArray<number>, arg1: number) => number = arrayGet;
     public static 'getInt(Ljava/lang/Object;I)I': (thread: JVMThread, arg0: JVMTypes.JVMArray<number>, arg1: number) => number = arrayGet;
-    public static 'getLong(Ljava/lang/Object;I)J': (thread: JVMThread, arg0: JVMTypes.JVMArray<Long>, arg1: number) => Long = arrayGet;
+
+    public static 'getLong(Ljava/lang/Object;I)J'(thread: JVMThread, arr: JVMTypes.JVMArray<Long>, idx: number): Long {
+      var val = arrayGet(thread, arr, idx);
+      return val != null ? Long.fromArrayElement(val) : val;
+    }
+
     public static 'getFloat(Ljava/lang/Object;I)F': (thread: JVMThread, arg0: JVMTypes.JVMArray<number>, arg1: number) => number = arrayGet;
     public static 'getDouble(Ljava/lang/Object;I)D': (thread: JVMThread, arg0: JVMTypes.JVMArray<number>, arg1: number) => number = arrayGet;
 
@@ -720,7 +732,7 @@ export default function (): any {
                 if (e) {
                   thread.throwException(e);
                 } else {
-                  arr.array[idx] = rv;
+                  arr.array[idx] = ccname === 'J' ? Long.toArrayElement(rv) : rv;
                   thread.asyncReturn();
                 }
               });
@@ -1050,11 +1062,8 @@ export default function (): any {
       return Long.fromNumber((new Date).getTime());
     }
 
-    /**
-     * @todo Use performance.now() if available.
-     */
     public static 'nanoTime()J'(thread: JVMThread): Long {
-      return Long.fromNumber((new Date).getTime()).multiply(Long.fromNumber(1000000));
+      return Long.fromNumber(Math.floor(util.now() * 1000000));
     }
 
     public static 'arraycopy(Ljava/lang/Object;ILjava/lang/Object;II)V'(thread: JVMThread, src: JVMTypes.JVMArray<any>, srcPos: number, dest: JVMTypes.JVMArray<any>, destPos: number, length: number): void {
@@ -1145,15 +1154,14 @@ export default function (): any {
     public static 'sleep(J)V'(thread: JVMThread, millis: Long): void {
       var beforeMethod = thread.currentMethod();
       thread.setStatus(ThreadStatus.ASYNC_WAITING);
-      setTimeout(() => {
+      thread.setWakeupTimer(millis.toNumber(), () => {
         // Check if the thread was interrupted during our sleep. Interrupting
-        // sleep causes an exception, so we need to ignore the setTimeout
-        // callback in this case.
+        // sleep cancels the timer, but be safe.
         if (beforeMethod === thread.currentMethod()) {
           thread.setStatus(ThreadStatus.RUNNABLE);
           thread.asyncReturn();
         }
-      }, millis.toNumber());
+      });
     }
 
     public static 'start0()V'(thread: JVMThread, javaThis: JVMTypes.java_lang_Thread): void {
@@ -1182,8 +1190,7 @@ export default function (): any {
     }
 
     public static 'holdsLock(Ljava/lang/Object;)Z'(thread: JVMThread, obj: JVMTypes.java_lang_Object): boolean {
-      var mon = obj.getMonitor();
-      return mon.getOwner() === thread;
+      return obj.getLockOwner() === thread;
     }
 
     public static 'dumpThreads([Ljava/lang/Thread;)[[Ljava/lang/StackTraceElement;'(thread: JVMThread, arg0: JVMTypes.JVMArray<JVMTypes.java_lang_Thread>): JVMTypes.JVMArray<JVMTypes.JVMArray<JVMTypes.java_lang_StackTraceElement>> {
@@ -1197,7 +1204,9 @@ export default function (): any {
     }
 
     public static 'setPriority0(I)V'(thread: JVMThread, javaThis: JVMTypes.java_lang_Thread, arg0: number): void {
-      thread.signalPriorityChange();
+      if (javaThis.$thread !== null) {
+        javaThis.$thread.signalPriorityChange();
+      }
     }
 
     public static 'stop0(Ljava/lang/Object;)V'(thread: JVMThread, javaThis: JVMTypes.java_lang_Thread, arg0: JVMTypes.java_lang_Object): void {
@@ -1291,6 +1300,8 @@ export default function (): any {
                 stackTrace = nativeThreadObj.getStackTrace(),
                 currentMethod = stackTrace[stackTrace.length - 1].method;
               if (interruptMethods.indexOf(currentMethod) !== -1) {
+                // Cancel the sleep's timeout, if any.
+                nativeThreadObj.cancelWakeupTimer();
                 // Clear interrupt state before throwing the exception.
                 nativeThreadObj.setInterrupted(false);
                 nativeThreadObj.throwNewException('Ljava/lang/InterruptedException;', 'interrupt0 called');
@@ -1312,10 +1323,8 @@ export default function (): any {
      * NOTE: Integer is only there to distinguish this function from non-native fillInStackTrace()V.
      */
     public static 'fillInStackTrace(I)Ljava/lang/Throwable;'(thread: JVMThread, javaThis: JVMTypes.java_lang_Throwable, dummy: number): JVMTypes.java_lang_Throwable {
-      var stackTraceElementCls = <ReferenceClassData<JVMTypes.java_lang_StackTraceElement>> thread.getBsCl().getInitializedClass(thread, 'Ljava/lang/StackTraceElement;'),
-        stacktrace = util.newArray<JVMTypes.java_lang_StackTraceElement>(thread, thread.getBsCl(), '[Ljava/lang/StackTraceElement;', 0),
-        cstack = thread.getStackTrace(),
-        i: number, j: number, bsCl = thread.getBsCl();
+      var frames = thread.getStackFrames().filter((frame: IStackFrame) => frame.type !== StackFrameType.INTERNAL),
+        methods: Method[] = [], pcs: number[] = [], i: number;
       /**
        * OK, so we need to toss the following stack frames:
        * - The stack frame for this method.
@@ -1323,66 +1332,103 @@ export default function (): any {
        *   stack frames involved in constructing the throwable. But if we're not,
        *   then there's no other frames we should cut.
        */
-      cstack.pop(); // The stack frame for this method.
+      frames.pop(); // The stack frame for this method.
       // Bytecode methods involved in constructing the throwable. We assume that
       // there are no native methods involved in the mix other than this one.
-      while (cstack.length > 0 &&
-        !cstack[cstack.length - 1].method.accessFlags.isNative() &&
-        cstack[cstack.length - 1].locals[0] === javaThis) {
-        cstack.pop();
+      while (frames.length > 0 &&
+        frames[frames.length - 1].type === StackFrameType.BYTECODE &&
+        (<BytecodeStackFrame> frames[frames.length - 1]).locals[0] === javaThis) {
+        frames.pop();
       }
 
-      // Construct the stack such that the method on top of the stack is at index
-      // 0.
-      for (i = cstack.length - 1; i >= 0; i--) {
-        var sf = cstack[i],
-          cls = sf.method.cls,
-          ln = -1,
-          sourceFile: string;
-        // Java 8: Ignore 'Hidden' methods. These are involved in constructing
-        // Lambdas, and shouldn't be use-visible.
-        if (sf.method.isHidden()) {
-          continue;
-        }
-
-        if (sf.method.accessFlags.isNative()) {
-          sourceFile = 'Native Method';
+      // Record the stack such that the method on top of the stack is at index
+      // 0. The StackTraceElements are only built if they are asked for, which
+      // exceptions used for control flow never are.
+      for (i = frames.length - 1; i >= 0; i--) {
+        var frame = frames[i];
+        if (frame.type === StackFrameType.BYTECODE) {
+          methods.push((<BytecodeStackFrame> frame).method);
+          pcs.push((<BytecodeStackFrame> frame).pc);
         } else {
-          var srcAttr = <attributes.SourceFile> cls.getAttribute('SourceFile'),
-            code = sf.method.getCodeAttribute(),
-            table = <attributes.LineNumberTable> code.getAttribute('LineNumberTable');
-          sourceFile = (srcAttr != null) ? srcAttr.filename : 'unknown';
-
-          if (table != null) {
-            ln = table.getLineNumber(sf.pc);
-          } else {
-            ln = -1;
-          }
+          methods.push((<NativeStackFrame> frame).method);
+          pcs.push(-1);
         }
-
-        var newElement = util.newObjectFromClass<JVMTypes.java_lang_StackTraceElement>(thread, stackTraceElementCls);
-        newElement['java/lang/StackTraceElement/declaringClass'] = util.initString(bsCl, util.ext_classname(cls.getInternalName()));
-        newElement['java/lang/StackTraceElement/methodName'] = util.initString(bsCl, sf.method.name != null ? sf.method.name : 'unknown');
-        newElement['java/lang/StackTraceElement/fileName'] = util.initString(bsCl, sourceFile);
-        newElement['java/lang/StackTraceElement/lineNumber'] = ln;
-        stacktrace.array.push(newElement);
       }
-      javaThis['java/lang/Throwable/backtrace'] = stacktrace;
+      javaThis['java/lang/Throwable/backtrace'] = <any> new Backtrace(methods, pcs);
       return javaThis;
     }
 
     public static 'getStackTraceDepth()I'(thread: JVMThread, javaThis: JVMTypes.java_lang_Throwable): number {
-      // 'backtrace' is typed as an Object so JVMs have flexibility in what to store there.
-      // We simply store the stack trace element array.
-      return (<JVMTypes.JVMArray<JVMTypes.java_lang_StackTraceElement>> javaThis['java/lang/Throwable/backtrace']).array.length;
+      return getStackTraceElements(thread, javaThis).array.length;
     }
 
     public static 'getStackTraceElement(I)Ljava/lang/StackTraceElement;'(thread: JVMThread, javaThis: JVMTypes.java_lang_Throwable, depth: number): JVMTypes.java_lang_StackTraceElement {
-      return (<JVMTypes.JVMArray<JVMTypes.java_lang_StackTraceElement>> javaThis['java/lang/Throwable/backtrace']).array[depth];
+      return getStackTraceElements(thread, javaThis).array[depth];
     }
 
   }
 
+  /**
+   * The methods and pcs of a throwable's stack frames, top first, which
+   * fillInStackTrace stores in the throwable's backtrace field. They are
+   * turned into StackTraceElements on first use.
+   */
+  class Backtrace {
+    constructor(public methods: Method[], public pcs: number[]) {
+    }
+  }
+
+  /**
+   * Returns the throwable's stack trace elements, building them from its
+   * Backtrace if they haven't been built yet.
+   */
+  function getStackTraceElements(thread: JVMThread, throwable: JVMTypes.java_lang_Throwable): JVMTypes.JVMArray<JVMTypes.java_lang_StackTraceElement> {
+    // 'backtrace' is typed as an Object so JVMs have flexibility in what to store there.
+    var backtrace: any = throwable['java/lang/Throwable/backtrace'];
+    if (!(backtrace instanceof Backtrace)) {
+      return backtrace;
+    }
+    var stackTraceElementCls = <ReferenceClassData<JVMTypes.java_lang_StackTraceElement>> thread.getBsCl().getInitializedClass(thread, 'Ljava/lang/StackTraceElement;'),
+      stacktrace = util.newArray<JVMTypes.java_lang_StackTraceElement>(thread, thread.getBsCl(), '[Ljava/lang/StackTraceElement;', 0),
+      methods: Method[] = (<Backtrace> backtrace).methods, pcs: number[] = (<Backtrace> backtrace).pcs,
+      i: number, bsCl = thread.getBsCl();
+    for (i = 0; i < methods.length; i++) {
+      var method = methods[i],
+        cls = method.cls,
+        ln = -1,
+        sourceFile: string;
+      // Java 8: Ignore 'Hidden' methods. These are involved in constructing
+      // Lambdas, and shouldn't be use-visible.
+      if (method.isHidden()) {
+        continue;
+      }
+
+      if (method.accessFlags.isNative()) {
+        sourceFile = 'Native Method';
+      } else {
+        var srcAttr = <attributes.SourceFile> cls.getAttribute('SourceFile'),
+          code = method.getCodeAttribute(),
+          table = <attributes.LineNumberTable> code.getAttribute('LineNumberTable');
+        sourceFile = (srcAttr != null) ? srcAttr.filename : 'unknown';
+
+        if (table != null) {
+          ln = table.getLineNumber(pcs[i]);
+        } else {
+          ln = -1;
+        }
+      }
+
+      var newElement = util.newObjectFromClass<JVMTypes.java_lang_StackTraceElement>(thread, stackTraceElementCls);
+      newElement['java/lang/StackTraceElement/declaringClass'] = util.initString(bsCl, util.ext_classname(cls.getInternalName()));
+      newElement['java/lang/StackTraceElement/methodName'] = util.initString(bsCl, method.name != null ? method.name : 'unknown');
+      newElement['java/lang/StackTraceElement/fileName'] = util.initString(bsCl, sourceFile);
+      newElement['java/lang/StackTraceElement/lineNumber'] = ln;
+      stacktrace.array.push(newElement);
+    }
+    throwable['java/lang/Throwable/backtrace'] = stacktrace;
+    return stacktrace;
+  }
+
   class java_lang_UNIXProcess {
 
     public static 'waitForProcessExit(I)I'(thread: JVMThread, javaThis: JVMTypes.java_lang_UNIXProcess, arg0: number): number {
@@ -105,8 +105,8 @@ export default function (): any {
 
     public static 'getGlyphCacheDescription([J)V'(thread: JVMThread, infoArray: JVMTypes.JVMArray<Long>): void {
       // XXX: these are guesses, see the javadoc for full descriptions of the infoArray
-      infoArray.array[0] = Long.fromInt(8);        // size of a pointer
-      infoArray.array[1] = Long.fromInt(8); // size of a glyphInfo
+      infoArray.array[0] = Long.toArrayElement(Long.fromInt(8));        // size of a pointer
+      infoArray.array[1] = Long.toArrayElement(Long.fromInt(8)); // size of a glyphInfo
     }
 
     public static 'freeIntPointer(I)V'(thread: JVMThread, arg0: number): void {
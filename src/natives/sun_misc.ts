@@ -12,12 +12,13 @@ import ThreadStatus = Doppio.VM.Enums.ThreadStatus;
 import ClassLoader = Doppio.VM.ClassFile.ClassLoader;
 import CustomClassLoader = Doppio.VM.ClassFile.CustomClassLoader;
 import assert = Doppio.Debug.Assert;
+declare var Atomics: any;
 
 export default function (): any {
-  function getFieldInfo(thread: JVMThread, unsafe: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long): [any, string] {
+  function getFieldInfo(thread: JVMThread, unsafe: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long): [any, string, boolean] {
     var fieldName: string, objBase: any, objCls = obj.getClass(), cls: ReferenceClassData<JVMTypes.java_lang_Object>, compName: string,
       unsafeCons: typeof JVMTypes.sun_misc_Unsafe = <any> (<ReferenceClassData<JVMTypes.sun_misc_Unsafe>> unsafe.getClass()).getConstructor(thread),
-      stride = 1;
+      stride = 1, isLongArray = false;
     if (objCls.getInternalName() === "Ljava/lang/Object;") {
       // Static field. The staticFieldBase is always a pure Object that has a
       // class reference on it.
@@ -37,6 +38,8 @@ export default function (): any {
       }
 
       objBase = (<JVMTypes.JVMArray<any>> obj).array;
+      // long[] elements may need converting to and from Longs.
+      isLongArray = compName === "LONG";
       assert(offset.toInt() % stride === 0, `Invalid offset for stride ${stride}: ${offset.toInt()}`);
       fieldName = "" + (offset.toInt() / stride);
     } else {
@@ -44,12 +47,16 @@ export default function (): any {
       objBase = obj;
       fieldName = cls.getObjectFieldFromVMIndex(offset.toInt()).fullName;
     }
-    return [objBase, fieldName];
+    return [objBase, fieldName, isLongArray];
   }
 
   function unsafeCompareAndSwap<T>(thread: JVMThread, unsafe: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, expected: T, x: T): boolean {
     var fi = getFieldInfo(thread, unsafe, obj, offset),
       actual = fi[0][fi[1]];
+    if (fi[2]) {
+      expected = Long.toArrayElement(<any> expected);
+      x = Long.toArrayElement(<any> x);
+    }
     if (actual === expected) {
       fi[0][fi[1]] = x;
       return true;
@@ -58,14 +65,48 @@ export default function (): any {
     }
   }
 
+  /**
+   * Checks if the given array holds integers in a SharedArrayBuffer. Other
+   * isolates may access such arrays concurrently, so Unsafe's atomic and
+   * volatile operations on them go through Atomics.
+   */
+  function isSharedIntegerArray(base: any): boolean {
+    return util.isSharedArray(base) && !(base instanceof Float32Array || base instanceof Float64Array);
+  }
+
+  function unsafeCompareAndSwapInt(thread: JVMThread, unsafe: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, expected: number, x: number): boolean {
+    var fi = getFieldInfo(thread, unsafe, obj, offset);
+    if (isSharedIntegerArray(fi[0])) {
+      return Atomics.compareExchange(fi[0], +fi[1], expected, x) === expected;
+    }
+    return unsafeCompareAndSwap(thread, unsafe, obj, offset, expected, x);
+  }
+
+  function getVolatileFromVMIndex<T>(thread: JVMThread, unsafe: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long): T {
+    var fi = getFieldInfo(thread, unsafe, obj, offset);
+    if (isSharedIntegerArray(fi[0])) {
+      return Atomics.load(fi[0], +fi[1]);
+    }
+    return fi[2] ? <any> Long.fromArrayElement(fi[0][fi[1]]) : fi[0][fi[1]];
+  }
+
+  function setVolatileFromVMIndex<T>(thread: JVMThread, unsafe: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, val: T): void {
+    var fi = getFieldInfo(thread, unsafe, obj, offset);
+    if (isSharedIntegerArray(fi[0])) {
+      Atomics.store(fi[0], +fi[1], val);
+    } else {
+      fi[0][fi[1]] = fi[2] ? Long.toArrayElement(<any> val) : val;
+    }
+  }
+
   function getFromVMIndex<T>(thread: JVMThread, unsafe: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long): T {
     var fi = getFieldInfo(thread, unsafe, obj, offset);
-    return fi[0][fi[1]];
+    return fi[2] ? <any> Long.fromArrayElement(fi[0][fi[1]]) : fi[0][fi[1]];
   }
 
   function setFromVMIndex<T>(thread: JVMThread, unsafe: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, val: T): void {
     var fi = getFieldInfo(thread, unsafe, obj, offset);
-    fi[0][fi[1]] = val;
+    fi[0][fi[1]] = fi[2] ? Long.toArrayElement(<any> val) : val;
   }
 
   class sun_misc_GC {
@@ -531,26 +572,26 @@ export default function (): any {
     }
 
     public static 'compareAndSwapObject(Ljava/lang/Object;JLjava/lang/Object;Ljava/lang/Object;)Z': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, arg0: JVMTypes.java_lang_Object, arg1: Long, arg2: JVMTypes.java_lang_Object, arg3: JVMTypes.java_lang_Object) => boolean = unsafeCompareAndSwap;
-    public static 'compareAndSwapInt(Ljava/lang/Object;JII)Z': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, arg0: JVMTypes.java_lang_Object, arg1: Long, arg2: number, arg3: number) => boolean = unsafeCompareAndSwap;
+    public static 'compareAndSwapInt(Ljava/lang/Object;JII)Z': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, arg0: JVMTypes.java_lang_Object, arg1: Long, arg2: number, arg3: number) => boolean = unsafeCompareAndSwapInt;
     public static 'compareAndSwapLong(Ljava/lang/Object;JJJ)Z': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, arg0: JVMTypes.java_lang_Object, arg1: Long, arg2: Long, arg3: Long) => boolean = unsafeCompareAndSwap;
 
     public static 'getObjectVolatile(Ljava/lang/Object;J)Ljava/lang/Object;': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => JVMTypes.java_lang_Object = getFromVMIndex;
     public static 'putObjectVolatile(Ljava/lang/Object;JLjava/lang/Object;)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: JVMTypes.java_lang_Object) => void  = setFromVMIndex;
 
-    public static 'getIntVolatile(Ljava/lang/Object;J)I': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => number = getFromVMIndex;
-    public static 'putIntVolatile(Ljava/lang/Object;JI)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setFromVMIndex;
+    public static 'getIntVolatile(Ljava/lang/Object;J)I': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => number = getVolatileFromVMIndex;
+    public static 'putIntVolatile(Ljava/lang/Object;JI)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setVolatileFromVMIndex;
 
     public static 'getBooleanVolatile(Ljava/lang/Object;J)Z': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => number = getFromVMIndex;
     public static 'putBooleanVolatile(Ljava/lang/Object;JZ)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setFromVMIndex;
 
-    public static 'getByteVolatile(Ljava/lang/Object;J)B': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => number = getFromVMIndex;
-    public static 'putByteVolatile(Ljava/lang/Object;JB)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setFromVMIndex;
+    public static 'getByteVolatile(Ljava/lang/Object;J)B': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => number = getVolatileFromVMIndex;
+    public static 'putByteVolatile(Ljava/lang/Object;JB)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setVolatileFromVMIndex;
 
-    public static 'getShortVolatile(Ljava/lang/Object;J)S': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => number = getFromVMIndex;
-    public static 'putShortVolatile(Ljava/lang/Object;JS)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setFromVMIndex;
+    public static 'getShortVolatile(Ljava/lang/Object;J)S': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => number = getVolatileFromVMIndex;
+    public static 'putShortVolatile(Ljava/lang/Object;JS)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setVolatileFromVMIndex;
 
-    public static 'getCharVolatile(Ljava/lang/Object;J)C': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => number = getFromVMIndex;
-    public static 'putCharVolatile(Ljava/lang/Object;JC)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setFromVMIndex;
+    public static 'getCharVolatile(Ljava/lang/Object;J)C': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => number = getVolatileFromVMIndex;
+    public static 'putCharVolatile(Ljava/lang/Object;JC)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setVolatileFromVMIndex;
 
     public static 'getLongVolatile(Ljava/lang/Object;J)J': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long) => Long = getFromVMIndex;
     public static 'putLongVolatile(Ljava/lang/Object;JJ)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: Long) => void = setFromVMIndex;
@@ -562,7 +603,7 @@ export default function (): any {
     public static 'putDoubleVolatile(Ljava/lang/Object;JD)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setFromVMIndex;
 
     public static 'putOrderedObject(Ljava/lang/Object;JLjava/lang/Object;)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newObj: JVMTypes.java_lang_Object) => void = setFromVMIndex;
-    public static 'putOrderedInt(Ljava/lang/Object;JI)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setFromVMIndex;
+    public static 'putOrderedInt(Ljava/lang/Object;JI)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: number) => void = setVolatileFromVMIndex;
     public static 'putOrderedLong(Ljava/lang/Object;JJ)V': (thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, obj: JVMTypes.java_lang_Object, offset: Long, newValue: Long) => void = setFromVMIndex;
 
     /**
@@ -598,18 +639,18 @@ export default function (): any {
         }
       }
 
-      // Typed as any due to type discrepency between browser and node.
-      var timer: any;
-      if (timeout !== Infinity) {
-        timer = setTimeout(() => {
-          parker.completelyUnpark(thread);
-        }, timeout);
-      }
-
       parker.park(thread, () => {
-        clearTimeout(timer);
+        thread.cancelWakeupTimer();
         thread.asyncReturn();
       });
+
+      // The thread may not have parked, due to a previously unbalancing
+      // unpark.
+      if (timeout !== Infinity && parker.isParked(thread)) {
+        thread.setWakeupTimer(timeout, () => {
+          parker.completelyUnpark(thread);
+        });
+      }
     }
 
     public static 'getLoadAverage([DI)I'(thread: JVMThread, javaThis: JVMTypes.sun_misc_Unsafe, arg0: JVMTypes.JVMArray<number>, arg1: number): number {
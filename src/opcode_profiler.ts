@@ -0,0 +1,75 @@
+import * as fs from 'fs';
+import {OpCode} from './enums';
+import {getInstructionLength} from './methods';
+import {BytecodeStackFrame} from './threading';
+
+/**
+ * Counts the dynamic opcode pairs and triples that the interpreter runs in
+ * straight-line order, to pick superinstructions (see
+ * matchSuperinstruction in opcodes.ts). Enabled with -Xdump-opcode-sequences;
+ * console/opcode_sequences.ts ranks one or more of the resulting dumps.
+ */
+let enabled = false;
+// Opcode pair counts, keyed by (first << 8) | second.
+const pairCounts: number[] = [];
+// Opcode triple counts, keyed by (first << 16) | (second << 8) | third.
+const tripleCounts: {[key: number]: number} = {};
+// The last two opcodes run, if they ran in sequence.
+let lastFrame: BytecodeStackFrame = null, nextPC = -1, prevOp = -1, prevPrevOp = -1;
+
+export function enableOpcodeProfiling(): void {
+  enabled = true;
+}
+
+export function isOpcodeProfilingEnabled(): boolean {
+  return enabled;
+}
+
+/**
+ * Records that the interpreter is about to run the opcode at pc.
+ */
+export function recordOpcode(frame: BytecodeStackFrame, code: Buffer, pc: number): void {
+  const op = code[pc];
+  if (frame === lastFrame && pc === nextPC) {
+    const pairKey = (prevOp << 8) | op;
+    pairCounts[pairKey] = (pairCounts[pairKey] | 0) + 1;
+    if (prevPrevOp !== -1) {
+      const tripleKey = (prevPrevOp << 16) | pairKey;
+      tripleCounts[tripleKey] = (tripleCounts[tripleKey] | 0) + 1;
+    }
+    prevPrevOp = prevOp;
+  } else {
+    prevPrevOp = -1;
+  }
+  prevOp = op;
+  lastFrame = frame;
+  nextPC = pc + getInstructionLength(code, pc);
+}
+
+function sequenceName(key: number, length: number): string {
+  const names: string[] = [];
+  for (let i = length - 1; i >= 0; i--) {
+    names.push(OpCode[(key >> (i * 8)) & 0xff]);
+  }
+  return names.join(' ');
+}
+
+/**
+ * Writes the pair and triple counts to the given file as JSON, most frequent
+ * first:
+ *
+ *   {"pairs": [["ALOAD_0 GETFIELD_FAST32", 1234], ...], "triples": [...]}
+ */
+export function dumpOpcodeProfile(file: string): void {
+  const pairs: [string, number][] = [], triples: [string, number][] = [];
+  pairCounts.forEach((count: number, key: number) => {
+    pairs.push([sequenceName(key, 2), count]);
+  });
+  Object.keys(tripleCounts).forEach((key: string) => {
+    triples.push([sequenceName(parseInt(key, 10), 3), tripleCounts[<any> key]]);
+  });
+  const byCount = (a: [string, number], b: [string, number]) => b[1] - a[1];
+  pairs.sort(byCount);
+  triples.sort(byCount);
+  fs.writeFileSync(file, JSON.stringify({pairs: pairs, triples: triples}));
+}
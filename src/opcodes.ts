@@ -9,7 +9,7 @@ import gLong from './gLong';
 import {wrapFloat, float2int, descriptor2typestr} from './util';
 import {ClassReference, FieldReference, MethodReference, InterfaceMethodReference, IConstantPoolItem, InvokeDynamic, ConstDouble, ConstLong} from './ConstantPool';
 import {ClassData, ArrayClassData} from './ClassData';
-import {JVMThread, BytecodeStackFrame} from './threading';
+import {JVMThread, BytecodeStackFrame, PreAllocatedStack} from './threading';
 import {ThreadStatus, OpCode, ConstantPoolItemType, Constants} from './enums';
 import assert from './assert';
 import {Method} from './methods';
@@ -27,9 +27,9 @@ export interface IOpcodeImplementation {
  * if it is.
  * @return True if the object is null.
  */
-export function isNull(thread: JVMThread, frame: BytecodeStackFrame, obj: any): boolean {
+export function isNull(thread: JVMThread, frame: BytecodeStackFrame, obj: any, pc: number = frame.pc): boolean {
   if (obj == null) {
-    throwException(thread, frame, 'Ljava/lang/NullPointerException;', '');
+    throwException(thread, frame, 'Ljava/lang/NullPointerException;', '', pc);
     return true;
   }
   return false;
@@ -90,17 +90,62 @@ export function initializeClass(thread: JVMThread, frame: BytecodeStackFrame, cl
   frame.returnToThreadLoop = true;
 }
 
+/**
+ * Exceptions that sites throwing them more than fastThrowThreshold times
+ * replace with preallocated ones, as HotSpot's OmitStackTraceInFastThrow
+ * does.
+ */
+const fastThrowExceptions: {[clsName: string]: boolean} = {
+  'Ljava/lang/NullPointerException;': true,
+  'Ljava/lang/ArrayIndexOutOfBoundsException;': true,
+  'Ljava/lang/ArithmeticException;': true,
+  'Ljava/lang/ClassCastException;': true
+};
+const fastThrowThreshold = 64;
+
 /**
  * Interrupts the current method's execution and throws an exception.
+ * JIT-compiled code passes the pc of the throwing opcode, since it may not have
+ * updated frame.pc yet.
  *
  * NOTE: This does *not* interrupt JavaScript control flow, so any opcode
  * calling this function must *return* and not do anything else.
  */
-export function throwException<T extends JVMTypes.java_lang_Throwable>(thread: JVMThread, frame: BytecodeStackFrame, clsName: string, msg: string): void {
+export function throwException<T extends JVMTypes.java_lang_Throwable>(thread: JVMThread, frame: BytecodeStackFrame, clsName: string, msg: string, pc: number = frame.pc): void {
+  if (fastThrowExceptions[clsName] === true && thread.getJVM().isFastThrowEnabled() &&
+      frame.method.recordImplicitThrow(pc) > fastThrowThreshold) {
+    const e = thread.getJVM().getFastThrowException(thread, clsName);
+    if (e !== null) {
+      thread.throwExceptionLater(e);
+      frame.returnToThreadLoop = true;
+      return;
+    }
+  }
   thread.throwNewException<T>(clsName, msg);
   frame.returnToThreadLoop = true;
 }
 
+/**
+ * Helper function: Calls fcn, a method's JavaScript function, with the
+ * paramSize words of arguments on top of the operand stack, and pops them and
+ * the receiver (if any). Uses fcn's fromStack entry point when it has one,
+ * which moves the arguments into the callee's frame without building an
+ * array of them.
+ * @param obj The receiver, or null for static methods.
+ * @return True if the callee was a native method that ran inline and has
+ *   already returned to the caller, which can keep executing.
+ */
+export function invokeWithStackArgs(thread: JVMThread, fcn: Function, obj: any, opStack: PreAllocatedStack, paramSize: number): boolean {
+  var fromStack: Function = (<any> fcn).fromStack;
+  if (fromStack !== undefined) {
+    return fromStack.call(obj, thread, opStack) === true;
+  } else {
+    fcn.call(obj, thread, opStack.sliceFromTop(paramSize));
+    opStack.dropFromTop(obj === null ? paramSize : paramSize + 1);
+    return false;
+  }
+}
+
 export var ArrayTypes : {[t: number]: string; } = {
   4: 'Z', 5: 'C', 6: 'F', 7: 'D', 8: 'B', 9: 'S', 10: 'I', 11: 'J'
 };
@@ -161,7 +206,27 @@ export class Opcodes {
   }
 
   public static daload = Opcodes._aload_64;
-  public static laload = Opcodes._aload_64;
+
+  /**
+   * Long array load. Converts from the long[]'s backing array element.
+   */
+  public static laload(thread: JVMThread, frame: BytecodeStackFrame) {
+    var opStack = frame.opStack,
+      idx = opStack.pop(),
+      obj = <JVMTypes.JVMArray<gLong>> opStack.pop();
+    if (!isNull(thread, frame, obj)) {
+      var len = obj.array.length;
+      if (idx < 0 || idx >= len) {
+        throwException(thread, frame, 'Ljava/lang/ArrayIndexOutOfBoundsException;', `${idx} not in length ${len} array of type ${obj.getClass().getInternalName()}`);
+      } else {
+        opStack.push(gLong.fromArrayElement(obj.array[idx]));
+        // 64-bit value.
+        opStack.push(null);
+        frame.pc++;
+      }
+    }
+    // 'obj' is NULL. isNull threw an exception for us.
+  }
 
   /* 32-bit array store opcodes */
 
@@ -216,9 +281,28 @@ export class Opcodes {
     // 'obj' is NULL. isNull threw an exception for us.
   }
 
-  public static lastore = Opcodes._astore_64;
   public static dastore = Opcodes._astore_64;
 
+  /**
+   * Long array store. Converts to the long[]'s backing array element.
+   */
+  public static lastore(thread: JVMThread, frame: BytecodeStackFrame) {
+    var opStack = frame.opStack,
+      value = opStack.pop2(),
+      idx = opStack.pop(),
+      obj = <JVMTypes.JVMArray<gLong>> opStack.pop();
+    if (!isNull(thread, frame, obj)) {
+      var len = obj.array.length;
+      if (idx < 0 || idx >= len) {
+        throwException(thread, frame, 'Ljava/lang/ArrayIndexOutOfBoundsException;', `${idx} not in length ${len} array of type ${obj.getClass().getInternalName()}`);
+      } else {
+        obj.array[idx] = gLong.toArrayElement(value);
+        frame.pc++;
+      }
+    }
+    // 'obj' is NULL. isNull threw an exception for us.
+  }
+
   /* 32-bit constants */
   public static aconst_null(thread: JVMThread, frame: BytecodeStackFrame) {
     frame.opStack.push(null);
@@ -960,11 +1044,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static ifne(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -973,11 +1058,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static iflt(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -986,11 +1072,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static ifge(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -999,11 +1086,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static ifgt(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1012,11 +1100,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static ifle(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1025,11 +1114,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   /* Binary branch opcodes */
@@ -1041,11 +1131,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static if_icmpne(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1056,11 +1147,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static if_icmplt(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1071,11 +1163,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static if_icmpge(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1086,11 +1179,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static if_icmpgt(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1101,11 +1195,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static if_icmple(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1116,11 +1211,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static if_acmpeq(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1131,11 +1227,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static if_acmpne(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1146,11 +1243,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   /* Jump opcodes */
@@ -1159,7 +1257,7 @@ export class Opcodes {
     const offset = code.readInt16BE(pc + 1);
     frame.pc += offset;
     if (offset < 0) {
-      frame.method.incrBBEntries();
+      frame.backEdge();
     }
   }
 
@@ -1169,7 +1267,7 @@ export class Opcodes {
     const offset = code.readInt16BE(pc + 1);
     frame.pc += offset;
     if (offset < 0) {
-      frame.method.incrBBEntries();
+      frame.backEdge();
     }
   }
 
@@ -1209,7 +1307,7 @@ export class Opcodes {
         const offset = code.readInt32BE(pc + 4);
         frame.pc += offset;
         if (offset < 0) {
-          frame.method.incrBBEntries();
+          frame.backEdge();
         }
         return;
       }
@@ -1223,7 +1321,7 @@ export class Opcodes {
     frame.returnToThreadLoop = true;
     if (frame.method.accessFlags.isSynchronized()) {
       // monitorexit
-      if (!frame.method.methodLock(thread, frame).exit(thread)) {
+      if (!frame.method.methodLock(thread, frame).monitorExit(thread)) {
         // monitorexit threw an exception.
         return;
       }
@@ -1237,7 +1335,7 @@ export class Opcodes {
     frame.returnToThreadLoop = true;
     if (frame.method.accessFlags.isSynchronized()) {
       // monitorexit
-      if (!frame.method.methodLock(thread, frame).exit(thread)) {
+      if (!frame.method.methodLock(thread, frame).monitorExit(thread)) {
         // monitorexit threw an exception.
         return;
       }
@@ -1255,7 +1353,7 @@ export class Opcodes {
     frame.returnToThreadLoop = true;
     if (frame.method.accessFlags.isSynchronized()) {
       // monitorexit
-      if (!frame.method.methodLock(thread, frame).exit(thread)) {
+      if (!frame.method.methodLock(thread, frame).monitorExit(thread)) {
         // monitorexit threw an exception.
         return;
       }
@@ -1598,23 +1696,18 @@ export class Opcodes {
       obj: JVMTypes.java_lang_Object = opStack.fromTop(paramSize);
 
     if (!isNull(thread, frame, obj)) {
-      var args = opStack.sliceFromTop(paramSize);
-      opStack.dropFromTop(paramSize + 1);
       assert(typeof (<any> obj)[methodReference.fullSignature] === 'function', `Resolved method ${methodReference.fullSignature} isn't defined?!`, thread);
-      (<any> obj)[methodReference.fullSignature](thread, args);
-      frame.returnToThreadLoop = true;
+      frame.returnToThreadLoop = !invokeWithStackArgs(thread, (<any> obj)[methodReference.fullSignature], obj, opStack, paramSize);
     }
   }
 
   public static invokestatic_fast(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
     const pc = frame.pc;
     var methodReference = <MethodReference | InterfaceMethodReference> frame.method.cls.constantPool.get(code.readUInt16BE(pc + 1)),
-      opStack = frame.opStack, paramSize = methodReference.paramWordSize,
-      args = opStack.sliceAndDropFromTop(paramSize);
+      opStack = frame.opStack, paramSize = methodReference.paramWordSize;
     assert(methodReference.jsConstructor != null, "jsConstructor is missing?!");
     assert(typeof(methodReference.jsConstructor[methodReference.fullSignature]) === 'function', "Resolved method isn't defined?!");
-    methodReference.jsConstructor[methodReference.fullSignature](thread, args);
-    frame.returnToThreadLoop = true;
+    frame.returnToThreadLoop = !invokeWithStackArgs(thread, methodReference.jsConstructor[methodReference.fullSignature], null, opStack, paramSize);
   }
 
   public static invokevirtual_fast(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1624,11 +1717,9 @@ export class Opcodes {
       opStack = frame.opStack,
       obj: JVMTypes.java_lang_Object = opStack.fromTop(count);
     if (!isNull(thread, frame, obj)) {
-      // Use the class of the *object*.
+      // Use the class of the *object*, via the call site's inline cache.
       assert(typeof (<any> obj)[methodReference.signature] === 'function', `Resolved method ${methodReference.signature} isn't defined?!`);
-      (<any> obj)[methodReference.signature](thread, opStack.sliceFromTop(count));
-      opStack.dropFromTop(count + 1);
-      frame.returnToThreadLoop = true;
+      frame.returnToThreadLoop = !invokeWithStackArgs(thread, frame.method.getInlineCache(pc, methodReference.signature).lookup(obj), obj, opStack, count);
     }
     // Object is NULL; NPE has been thrown.
   }
@@ -1855,7 +1946,7 @@ export class Opcodes {
       cls = classRef.cls,
       opStack = frame.opStack,
       o: JVMTypes.java_lang_Object = opStack.top();
-    if ((o != null) && !o.getClass().isCastable(cls)) {
+    if ((o != null) && !frame.method.getTypeCheckCache(pc, cls).isInstance(o)) {
       var targetClass = cls.getExternalName();
       var candidateClass = o.getClass().getExternalName();
       throwException(thread, frame, 'Ljava/lang/ClassCastException;', `${candidateClass} cannot be cast to ${targetClass}`);
@@ -1883,7 +1974,7 @@ export class Opcodes {
       cls = classRef.cls,
       opStack = frame.opStack,
       o = <JVMTypes.java_lang_Object> opStack.pop();
-    opStack.push(o !== null ? (o.getClass().isCastable(cls) ? 1 : 0) : 0);
+    opStack.push(o !== null ? (frame.method.getTypeCheckCache(pc, cls).isInstance(o) ? 1 : 0) : 0);
     frame.pc += 3;
   }
 
@@ -1895,7 +1986,7 @@ export class Opcodes {
         frame.pc++;
       };
 
-    if (!monitorObj.getMonitor().enter(thread, monitorEntered)) {
+    if (!monitorObj.monitorEnter(thread, monitorEntered)) {
       // Opcode failed. monitorEntered will be run once we own the monitor.
       // The thread is now in the BLOCKED state. Tell the frame to return to
       // the thread loop.
@@ -1907,7 +1998,7 @@ export class Opcodes {
 
   public static monitorexit(thread: JVMThread, frame: BytecodeStackFrame) {
     var monitorObj: JVMTypes.java_lang_Object = frame.opStack.pop();
-    if (monitorObj.getMonitor().exit(thread)) {
+    if (monitorObj.monitorExit(thread)) {
       frame.pc++;
     } else {
       // monitorexit failed, and threw an exception.
@@ -1953,11 +2044,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static ifnonnull(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1966,11 +2058,12 @@ export class Opcodes {
       const offset = code.readInt16BE(pc + 1);
       frame.pc += offset;
       if (offset < 0) {
-        frame.method.incrBBEntries();
+        frame.backEdge();
       }
     } else {
       frame.pc += 3;
     }
+    frame.method.profileBranch(pc, frame.pc);
   }
 
   public static goto_w(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
@@ -1978,7 +2071,7 @@ export class Opcodes {
     const offset = code.readInt32BE(pc + 1);
     frame.pc += offset;
     if (offset < 0) {
-      frame.method.incrBBEntries();
+      frame.backEdge();
     }
   }
 
@@ -2092,6 +2185,195 @@ export class Opcodes {
         break;
     }
   }
+
+  /* Superinstructions */
+
+  /**
+   * aload_0; getfield_fast32. Until the getfield is quickened, only runs the
+   * aload_0.
+   */
+  public static aload_0_getfield_fast32(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    const pc = frame.pc;
+    var obj: JVMTypes.java_lang_Object = frame.locals[0];
+    // The getfield's pc, in case it throws.
+    frame.pc = pc + 1;
+    if (code[pc + 1] !== OpCode.GETFIELD_FAST32) {
+      frame.opStack.push(obj);
+    } else if (!isNull(thread, frame, obj)) {
+      var fieldInfo = <FieldReference> frame.method.cls.constantPool.get(code.readUInt16BE(pc + 2));
+      frame.opStack.push((<any> obj)[fieldInfo.fullFieldName]);
+      frame.pc = pc + 4;
+    }
+  }
+
+  /**
+   * Runs the iload* and if_icmp<cond> that follow a superinstruction's first
+   * iload, given that iload's value.
+   */
+  private static _iload_if_icmp(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer, v1: number, loadPC: number) {
+    var v2: number, branchPC: number, taken: boolean;
+    if (code[loadPC] === OpCode.ILOAD) {
+      v2 = frame.locals[code[loadPC + 1]];
+      branchPC = loadPC + 2;
+    } else {
+      v2 = frame.locals[code[loadPC] - OpCode.ILOAD_0];
+      branchPC = loadPC + 1;
+    }
+    switch (code[branchPC]) {
+      case OpCode.IF_ICMPEQ:
+        taken = v1 === v2;
+        break;
+      case OpCode.IF_ICMPNE:
+        taken = v1 !== v2;
+        break;
+      case OpCode.IF_ICMPLT:
+        taken = v1 < v2;
+        break;
+      case OpCode.IF_ICMPGE:
+        taken = v1 >= v2;
+        break;
+      case OpCode.IF_ICMPGT:
+        taken = v1 > v2;
+        break;
+      default:
+        taken = v1 <= v2;
+        break;
+    }
+    if (taken) {
+      const offset = code.readInt16BE(branchPC + 1);
+      frame.pc = branchPC + offset;
+      if (offset < 0) {
+        frame.backEdge();
+      }
+    } else {
+      frame.pc = branchPC + 3;
+    }
+    frame.method.profileBranch(branchPC, frame.pc);
+  }
+
+  public static iload_iload_if_icmp(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    const pc = frame.pc;
+    Opcodes._iload_if_icmp(thread, frame, code, frame.locals[code[pc + 1]], pc + 2);
+  }
+
+  public static iload_0_iload_if_icmp(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    Opcodes._iload_if_icmp(thread, frame, code, frame.locals[0], frame.pc + 1);
+  }
+
+  public static iload_1_iload_if_icmp(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    Opcodes._iload_if_icmp(thread, frame, code, frame.locals[1], frame.pc + 1);
+  }
+
+  public static iload_2_iload_if_icmp(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    Opcodes._iload_if_icmp(thread, frame, code, frame.locals[2], frame.pc + 1);
+  }
+
+  public static iload_3_iload_if_icmp(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    Opcodes._iload_if_icmp(thread, frame, code, frame.locals[3], frame.pc + 1);
+  }
+
+  /**
+   * Runs the iload* and iaload that follow a superinstruction's first aload,
+   * given that aload's value.
+   */
+  private static _iload_iaload(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer, obj: JVMTypes.JVMArray<number>, loadPC: number) {
+    var idx: number;
+    if (code[loadPC] === OpCode.ILOAD) {
+      idx = frame.locals[code[loadPC + 1]];
+      // The iaload's pc, in case it throws.
+      frame.pc = loadPC + 2;
+    } else {
+      idx = frame.locals[code[loadPC] - OpCode.ILOAD_0];
+      frame.pc = loadPC + 1;
+    }
+    if (!isNull(thread, frame, obj)) {
+      var len = obj.array.length;
+      if (idx < 0 || idx >= len) {
+        throwException(thread, frame, 'Ljava/lang/ArrayIndexOutOfBoundsException;', `${idx} not in length ${len} array of type ${obj.getClass().getInternalName()}`);
+      } else {
+        frame.opStack.push(obj.array[idx]);
+        frame.pc++;
+      }
+    }
+  }
+
+  public static aload_iload_iaload(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    const pc = frame.pc;
+    Opcodes._iload_iaload(thread, frame, code, frame.locals[code[pc + 1]], pc + 2);
+  }
+
+  public static aload_0_iload_iaload(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    Opcodes._iload_iaload(thread, frame, code, frame.locals[0], frame.pc + 1);
+  }
+
+  public static aload_1_iload_iaload(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    Opcodes._iload_iaload(thread, frame, code, frame.locals[1], frame.pc + 1);
+  }
+
+  public static aload_2_iload_iaload(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    Opcodes._iload_iaload(thread, frame, code, frame.locals[2], frame.pc + 1);
+  }
+
+  public static aload_3_iload_iaload(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) {
+    Opcodes._iload_iaload(thread, frame, code, frame.locals[3], frame.pc + 1);
+  }
+}
+
+/**
+ * Returns the length of the int load at pc, or 0 if there isn't one.
+ */
+function intLoadLength(code: Buffer, pc: number): number {
+  const op = code[pc];
+  if (op === OpCode.ILOAD) {
+    return 2;
+  }
+  return op >= OpCode.ILOAD_0 && op <= OpCode.ILOAD_3 ? 1 : 0;
+}
+
+/**
+ * Returns the superinstruction that can replace the opcode at pc, given the
+ * opcodes that follow it, or -1. Used by Method.fuseSuperinstructions; keep
+ * in sync with the superinstructions above and SuperinstructionFirstOp.
+ */
+export function matchSuperinstruction(code: Buffer, pc: number): number {
+  const op = code[pc];
+  if (op === OpCode.ALOAD_0 && pc + 3 < code.length &&
+      (code[pc + 1] === OpCode.GETFIELD || code[pc + 1] === OpCode.GETFIELD_FAST32)) {
+    return OpCode.ALOAD_0_GETFIELD_FAST32;
+  }
+  const firstLength = op === OpCode.ILOAD || op === OpCode.ALOAD ? 2 : 1,
+    loadPC = pc + firstLength;
+  if (loadPC >= code.length) {
+    return -1;
+  }
+  const secondLength = intLoadLength(code, loadPC), nextPC = loadPC + secondLength;
+  if (secondLength === 0 || nextPC >= code.length) {
+    return -1;
+  }
+  if (intLoadLength(code, pc) !== 0 && nextPC + 2 < code.length &&
+      code[nextPC] >= OpCode.IF_ICMPEQ && code[nextPC] <= OpCode.IF_ICMPLE) {
+    return op === OpCode.ILOAD ? OpCode.ILOAD_ILOAD_IF_ICMP : OpCode.ILOAD_0_ILOAD_IF_ICMP + (op - OpCode.ILOAD_0);
+  }
+  if (code[nextPC] === OpCode.IALOAD) {
+    if (op === OpCode.ALOAD) {
+      return OpCode.ALOAD_ILOAD_IALOAD;
+    } else if (op >= OpCode.ALOAD_0 && op <= OpCode.ALOAD_3) {
+      return OpCode.ALOAD_0_ILOAD_IALOAD + (op - OpCode.ALOAD_0);
+    }
+  }
+  return -1;
+}
+
+/**
+ * Maps each superinstruction to the opcode it replaced.
+ */
+export const SuperinstructionFirstOp: OpCode[] = [];
+SuperinstructionFirstOp[OpCode.ALOAD_0_GETFIELD_FAST32] = OpCode.ALOAD_0;
+SuperinstructionFirstOp[OpCode.ILOAD_ILOAD_IF_ICMP] = OpCode.ILOAD;
+SuperinstructionFirstOp[OpCode.ALOAD_ILOAD_IALOAD] = OpCode.ALOAD;
+for (let i = 0; i < 4; i++) {
+  SuperinstructionFirstOp[OpCode.ILOAD_0_ILOAD_IF_ICMP + i] = OpCode.ILOAD_0 + i;
+  SuperinstructionFirstOp[OpCode.ALOAD_0_ILOAD_IALOAD + i] = OpCode.ALOAD_0 + i;
 }
 
 export var LookupTable: IOpcodeImplementation[] = new Array(0xff);
@@ -2104,3 +2386,293 @@ export var LookupTable: IOpcodeImplementation[] = new Array(0xff);
     }
   }
 })();
+
+/* Pre-decoded (direct-threaded) interpretation */
+
+/**
+ * Opcodes that rewrite themselves into a *_FAST form (or similar) once their
+ * constant pool entry is resolved.
+ */
+const quickeningOps: boolean[] = [];
+[OpCode.GETSTATIC, OpCode.PUTSTATIC, OpCode.GETFIELD, OpCode.PUTFIELD,
+ OpCode.INVOKEVIRTUAL, OpCode.INVOKESPECIAL, OpCode.INVOKESTATIC,
+ OpCode.INVOKEINTERFACE, OpCode.INVOKEDYNAMIC, OpCode.NEW, OpCode.ANEWARRAY,
+ OpCode.CHECKCAST, OpCode.INSTANCEOF, OpCode.MULTIANEWARRAY].forEach((op: OpCode) => quickeningOps[op] = true);
+
+/**
+ * Placeholder for every pc that has not run yet. Decodes the opcode at the
+ * current pc, installs the result, and runs it.
+ */
+function decodeAndRun(thread: JVMThread, frame: BytecodeStackFrame, code: Buffer): void {
+  const ops = frame.method.decodedCode, pc = frame.pc;
+  (ops[pc] = decodeOp(frame.method, code, pc, ops))(thread, frame, code);
+}
+
+/**
+ * Shared tail of the pre-decoded conditional branches. Mirrors the branch
+ * opcodes above, including back-edge counting and branch profiling.
+ */
+function branch(frame: BytecodeStackFrame, pc: number, offset: number, taken: boolean): void {
+  if (taken) {
+    frame.pc = pc + offset;
+    if (offset < 0) {
+      frame.backEdge();
+    }
+  } else {
+    frame.pc = pc + 3;
+  }
+  frame.method.profileBranch(pc, frame.pc);
+}
+
+/**
+ * Returns a handler for the opcode at pc with its operands (and, for
+ * quickened opcodes, its constant pool entry) decoded ahead of time.
+ * Opcodes without a specialized form run their LookupTable handler.
+ */
+function decodeOp(method: Method, code: Buffer, pc: number, ops: IOpcodeImplementation[]): IOpcodeImplementation {
+  const op = code[pc];
+  switch (op) {
+    case OpCode.ILOAD:
+    case OpCode.FLOAD:
+    case OpCode.ALOAD: {
+      const idx = code[pc + 1], nextPC = pc + 2;
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        frame.opStack.push(frame.locals[idx]);
+        frame.pc = nextPC;
+      };
+    }
+    case OpCode.LLOAD:
+    case OpCode.DLOAD: {
+      const idx = code[pc + 1], nextPC = pc + 2;
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        frame.opStack.pushWithNull(frame.locals[idx]);
+        frame.pc = nextPC;
+      };
+    }
+    case OpCode.ISTORE:
+    case OpCode.FSTORE:
+    case OpCode.ASTORE: {
+      const idx = code[pc + 1], nextPC = pc + 2;
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        frame.locals[idx] = frame.opStack.pop();
+        frame.pc = nextPC;
+      };
+    }
+    case OpCode.LSTORE:
+    case OpCode.DSTORE: {
+      const idx = code[pc + 1], nextPC = pc + 2;
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        const locals = frame.locals, opStack = frame.opStack;
+        locals[idx + 1] = opStack.pop();
+        locals[idx] = opStack.pop();
+        frame.pc = nextPC;
+      };
+    }
+    case OpCode.BIPUSH:
+    case OpCode.SIPUSH: {
+      const value = op === OpCode.BIPUSH ? code.readInt8(pc + 1) : code.readInt16BE(pc + 1),
+        nextPC = op === OpCode.BIPUSH ? pc + 2 : pc + 3;
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        frame.opStack.push(value);
+        frame.pc = nextPC;
+      };
+    }
+    case OpCode.IINC: {
+      const idx = code[pc + 1], value = code.readInt8(pc + 2), nextPC = pc + 3;
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        frame.locals[idx] = (frame.locals[idx] + value) | 0;
+        frame.pc = nextPC;
+      };
+    }
+    case OpCode.GOTO: {
+      const offset = code.readInt16BE(pc + 1), target = pc + offset;
+      if (offset < 0) {
+        return (thread: JVMThread, frame: BytecodeStackFrame) => {
+          frame.pc = target;
+          frame.backEdge();
+        };
+      }
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        frame.pc = target;
+      };
+    }
+    case OpCode.IFEQ:
+    case OpCode.IFNE:
+    case OpCode.IFLT:
+    case OpCode.IFGE:
+    case OpCode.IFGT:
+    case OpCode.IFLE:
+    case OpCode.IFNULL:
+    case OpCode.IFNONNULL: {
+      const offset = code.readInt16BE(pc + 1);
+      switch (op) {
+        case OpCode.IFEQ:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => branch(frame, pc, offset, frame.opStack.pop() === 0);
+        case OpCode.IFNE:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => branch(frame, pc, offset, frame.opStack.pop() !== 0);
+        case OpCode.IFLT:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => branch(frame, pc, offset, frame.opStack.pop() < 0);
+        case OpCode.IFGE:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => branch(frame, pc, offset, frame.opStack.pop() >= 0);
+        case OpCode.IFGT:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => branch(frame, pc, offset, frame.opStack.pop() > 0);
+        case OpCode.IFLE:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => branch(frame, pc, offset, frame.opStack.pop() <= 0);
+        case OpCode.IFNULL:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => branch(frame, pc, offset, frame.opStack.pop() == null);
+        default:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => branch(frame, pc, offset, frame.opStack.pop() != null);
+      }
+    }
+    case OpCode.IF_ICMPEQ:
+    case OpCode.IF_ICMPNE:
+    case OpCode.IF_ICMPLT:
+    case OpCode.IF_ICMPGE:
+    case OpCode.IF_ICMPGT:
+    case OpCode.IF_ICMPLE:
+    case OpCode.IF_ACMPEQ:
+    case OpCode.IF_ACMPNE: {
+      const offset = code.readInt16BE(pc + 1);
+      switch (op) {
+        case OpCode.IF_ICMPEQ:
+        case OpCode.IF_ACMPEQ:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => {
+            const opStack = frame.opStack, v2 = opStack.pop();
+            branch(frame, pc, offset, opStack.pop() === v2);
+          };
+        case OpCode.IF_ICMPNE:
+        case OpCode.IF_ACMPNE:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => {
+            const opStack = frame.opStack, v2 = opStack.pop();
+            branch(frame, pc, offset, opStack.pop() !== v2);
+          };
+        case OpCode.IF_ICMPLT:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => {
+            const opStack = frame.opStack, v2 = opStack.pop();
+            branch(frame, pc, offset, opStack.pop() < v2);
+          };
+        case OpCode.IF_ICMPGE:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => {
+            const opStack = frame.opStack, v2 = opStack.pop();
+            branch(frame, pc, offset, opStack.pop() >= v2);
+          };
+        case OpCode.IF_ICMPGT:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => {
+            const opStack = frame.opStack, v2 = opStack.pop();
+            branch(frame, pc, offset, opStack.pop() > v2);
+          };
+        default:
+          return (thread: JVMThread, frame: BytecodeStackFrame) => {
+            const opStack = frame.opStack, v2 = opStack.pop();
+            branch(frame, pc, offset, opStack.pop() <= v2);
+          };
+      }
+    }
+    case OpCode.GETSTATIC_FAST32:
+    case OpCode.GETSTATIC_FAST64: {
+      const fieldInfo = <FieldReference> method.cls.constantPool.get(code.readUInt16BE(pc + 1)),
+        cons = fieldInfo.fieldOwnerConstructor, name = fieldInfo.fullFieldName, nextPC = pc + 3;
+      if (op === OpCode.GETSTATIC_FAST64) {
+        return (thread: JVMThread, frame: BytecodeStackFrame) => {
+          frame.opStack.pushWithNull(cons[name]);
+          frame.pc = nextPC;
+        };
+      }
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        frame.opStack.push(cons[name]);
+        frame.pc = nextPC;
+      };
+    }
+    case OpCode.PUTSTATIC_FAST32:
+    case OpCode.PUTSTATIC_FAST64: {
+      const fieldInfo = <FieldReference> method.cls.constantPool.get(code.readUInt16BE(pc + 1)),
+        cons = fieldInfo.fieldOwnerConstructor, name = fieldInfo.fullFieldName, nextPC = pc + 3;
+      if (op === OpCode.PUTSTATIC_FAST64) {
+        return (thread: JVMThread, frame: BytecodeStackFrame) => {
+          cons[name] = frame.opStack.pop2();
+          frame.pc = nextPC;
+        };
+      }
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        cons[name] = frame.opStack.pop();
+        frame.pc = nextPC;
+      };
+    }
+    case OpCode.GETFIELD_FAST32:
+    case OpCode.GETFIELD_FAST64: {
+      const name = (<FieldReference> method.cls.constantPool.get(code.readUInt16BE(pc + 1))).fullFieldName,
+        nextPC = pc + 3, wide = op === OpCode.GETFIELD_FAST64;
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        const opStack = frame.opStack, obj = opStack.pop();
+        if (!isNull(thread, frame, obj)) {
+          if (wide) {
+            opStack.pushWithNull(obj[name]);
+          } else {
+            opStack.push(obj[name]);
+          }
+          frame.pc = nextPC;
+        }
+      };
+    }
+    case OpCode.PUTFIELD_FAST32:
+    case OpCode.PUTFIELD_FAST64: {
+      const name = (<FieldReference> method.cls.constantPool.get(code.readUInt16BE(pc + 1))).fullFieldName,
+        nextPC = pc + 3, wide = op === OpCode.PUTFIELD_FAST64;
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        const opStack = frame.opStack, val = wide ? opStack.pop2() : opStack.pop(), obj = opStack.pop();
+        if (!isNull(thread, frame, obj)) {
+          obj[name] = val;
+          frame.pc = nextPC;
+        }
+      };
+    }
+    case OpCode.INVOKEVIRTUAL_FAST:
+    case OpCode.INVOKEINTERFACE_FAST: {
+      const methodReference = <MethodReference | InterfaceMethodReference> method.cls.constantPool.get(code.readUInt16BE(pc + 1)),
+        count = methodReference.paramWordSize,
+        inlineCache = method.getInlineCache(pc, methodReference.signature);
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        const opStack = frame.opStack, obj = opStack.fromTop(count);
+        if (!isNull(thread, frame, obj)) {
+          frame.returnToThreadLoop = !invokeWithStackArgs(thread, inlineCache.lookup(obj), obj, opStack, count);
+        }
+      };
+    }
+    case OpCode.INVOKESTATIC_FAST: {
+      const methodReference = <MethodReference | InterfaceMethodReference> method.cls.constantPool.get(code.readUInt16BE(pc + 1)),
+        count = methodReference.paramWordSize,
+        cons = methodReference.jsConstructor, signature = methodReference.fullSignature;
+      return (thread: JVMThread, frame: BytecodeStackFrame) => {
+        frame.returnToThreadLoop = !invokeWithStackArgs(thread, cons[signature], null, frame.opStack, count);
+      };
+    }
+    default:
+      if (quickeningOps[op]) {
+        // Rerun decoding once the opcode rewrites itself.
+        const handler = LookupTable[op];
+        return (thread: JVMThread, frame: BytecodeStackFrame, code: Buffer) => {
+          handler(thread, frame, code);
+          if (code[pc] !== op) {
+            ops[pc] = decodeAndRun;
+          }
+        };
+      }
+      return LookupTable[op];
+  }
+}
+
+/**
+ * Returns the pre-decoded handlers for the given method's bytecode, indexed
+ * by pc. Each pc is decoded the first time it runs.
+ */
+export function getDecodedCode(method: Method): IOpcodeImplementation[] {
+  let ops = method.decodedCode;
+  if (ops === null) {
+    const codeLength = method.getCodeAttribute().getCode().length;
+    ops = method.decodedCode = new Array(codeLength);
+    for (let i = 0; i < codeLength; i++) {
+      ops[i] = decodeAndRun;
+    }
+  }
+  return ops;
+}
@@ -78,6 +78,36 @@ class OutputCapturer {
   }
 }
 
+/**
+ * Tests that run twice against the same JIT code cache directory, so the
+ * second run starts from the traces the first one cached. Both runs must
+ * match the native JVM.
+ */
+const codeCacheTests: {[cls: string]: boolean} = {
+  'classes/test/JITCodeCacheReuse': true
+};
+
+/**
+ * Tests that run with JVM options other than the test runner's, for features
+ * that are off by default.
+ */
+const testOptions: {[cls: string]: JVMOptions} = {
+  // Keep every method in the interpreter.
+  'classes/test/DirectThreaded': {directThreaded: true, intMode: true}
+};
+
+/**
+ * Deletes a JIT code cache directory and the files in it, if it exists.
+ */
+function removeCacheDir(dir: string): void {
+  try {
+    fs.readdirSync(dir).forEach((file) => fs.unlinkSync(path.resolve(dir, file)));
+    fs.rmdirSync(dir);
+  } catch (e) {
+    // Already gone.
+  }
+}
+
 /**
  * Doppio testing options.
  */
@@ -124,9 +154,10 @@ export class DoppioTest {
 
   /**
    * Constructs a new JVM for the test.
+   * @param extraOpts Options to use on top of the test runner's.
    */
-  private constructJVM(cb: (err: any, jvm?: JVM) => void): void {
-    new JVM(<any> merge(JVM.getDefaultOptions(this.opts.doppioHomePath), this.opts, {
+  private constructJVM(extraOpts: JVMOptions, cb: (err: any, jvm?: JVM) => void): void {
+    new JVM(<any> merge(JVM.getDefaultOptions(this.opts.doppioHomePath), this.opts, extraOpts, {
       classpath: [this.opts.doppioHomePath],
       enableAssertions: true,
       enableSystemAssertions: true
@@ -137,6 +168,33 @@ export class DoppioTest {
    * Runs the unit test.
    */
   public run(registerGlobalErrorTrap: (cb: (err: Error) => void) => void, cb: (err: Error, actual?: string, expected?: string, diff?: string) => void) {
+    var extraOpts: JVMOptions = testOptions.hasOwnProperty(this.cls) ? testOptions[this.cls] : {};
+    if (codeCacheTests[this.cls] !== true) {
+      return this.runOnce(extraOpts, registerGlobalErrorTrap, cb);
+    }
+    var cacheDir = path.resolve(this.opts.tmpDir, `doppio-jit-code-cache-${process.pid}`),
+      cacheOpts = <JVMOptions> merge(extraOpts, {jitCodeCacheDir: cacheDir});
+    removeCacheDir(cacheDir);
+    fs.mkdirSync(cacheDir);
+    this.runOnce(cacheOpts, registerGlobalErrorTrap, (err: Error, actual?: string, expected?: string, diff?: string) => {
+      if (err) {
+        removeCacheDir(cacheDir);
+        return cb(err, actual, expected, diff);
+      }
+      this.runOnce(cacheOpts, registerGlobalErrorTrap, (err: Error, actual?: string, expected?: string, diff?: string) => {
+        removeCacheDir(cacheDir);
+        if (err) {
+          err.message = `Run with the JIT code cache from the previous run: ${err.message}`;
+        }
+        cb(err, actual, expected, diff);
+      });
+    });
+  }
+
+  /**
+   * Runs the test class once, and compares its output to the native JVM's.
+   */
+  private runOnce(extraOpts: JVMOptions, registerGlobalErrorTrap: (cb: (err: Error) => void) => void, cb: (err: Error, actual?: string, expected?: string, diff?: string) => void) {
     var outputCapturer = this.outputCapturer, _jvm: JVM = null, terminated: boolean = false, jvmConstructHasFinished: boolean = false,
       hasFinished: boolean = false;
     registerGlobalErrorTrap((err) => {
@@ -151,7 +209,7 @@ export class DoppioTest {
       cb(makeTestingError(`Uncaught error. Aborting further tests.\n\t${err}${err.stack ? `\n\n${err.stack}` : ``}`, err, true));
     });
 
-    this.constructJVM((err: any, jvm?: JVM) => {
+    this.constructJVM(extraOpts, (err: any, jvm?: JVM) => {
       _jvm = jvm;
       if (terminated) {
         // Already handled.
@@ -4,18 +4,20 @@ import {Method} from './methods';
 import {ThreadStatus, StackFrameType, OpCode, Constants, JVMTIThreadState, OpcodeLayoutType, ConstantPoolItemType, OpcodeLayouts} from './enums';
 import assert from './assert';
 import gLong from './gLong';
-import {LookupTable, throwException, isNull, resolveCPItem, ArrayTypes} from './opcodes';
+import {LookupTable, getDecodedCode, throwException, isNull, resolveCPItem, invokeWithStackArgs, ArrayTypes} from './opcodes';
 import {ExceptionHandler, LineNumberTable, SourceFile} from './attributes';
 import {logLevel, LogLevel, debug_vars, setLogLevel, debug_var} from './logging';
 import * as logging from './logging';
 import JVM from './jvm';
-import {float2int, wrapFloat, asyncForEach, initString, ext_classname, is_primitive_type, is_array_type, is_reference_type} from './util';
+import {float2int, wrapFloat, longMultiply, longResult, asyncForEach, initString, ext_classname, is_primitive_type, is_array_type, is_reference_type, now} from './util';
 import {IConstantPoolItem, MethodReference, ClassReference, InterfaceMethodReference, FieldReference, NameAndTypeInfo} from './ConstantPool';
 import * as JVMTypes from '../includes/JVMTypes';
 import Monitor from './Monitor';
 import {default as ThreadPool, Thread} from './threadpool';
+import {Timer} from './TimerWheel';
 import {setImmediate} from 'browserfs';
 import global from './global';
+import {isOpcodeProfilingEnabled, recordOpcode} from './opcode_profiler';
 
 const debug = logging.debug;
 const vtrace = logging.vtrace;
@@ -23,14 +25,22 @@ const trace = logging.trace;
 
 declare var RELEASE: boolean;
 
-// The number of method resumes we should allow before yielding for
-// responsiveness. Updated using a cumulative moving average to ensure
-// Doppio is responsive.
-let maxMethodResumes: number = 10000,
-  // The number of method resumes until Doppio should yield again.
-  methodResumesLeft: number = maxMethodResumes,
-  // Used for the CMA.
-  numSamples: number = 1;
+// The units of work (method resumes and loop back edges) the running thread
+// may do before it yields for responsiveness. Each thread estimates its own
+// budget; see JVMThread.run.
+let workLeft: number = 10000;
+
+// The most samples a thread's work budget estimate averages over, so it keeps
+// adapting when the thread's work changes.
+const maxWorkSamples = 16;
+
+// The most calls compiled code may nest on the JavaScript stack before
+// callees go back to running from the thread loop.
+const maxNestedCalls = 64;
+
+// The most frames, operand stacks, or locals arrays of one size that a thread
+// keeps for reuse. Bounds what a single deep recursion leaves behind.
+const maxPooledFrames = 256;
 
 /**
  * Represents a stack frame.
@@ -189,6 +199,17 @@ export class PreAllocatedStack {
     this.curr -= n;
   }
 
+  /**
+   * Moves the top n values into dest[0..n), bottom-most first.
+   */
+  popInto(dest: any[], n: number) {
+    const base = this.curr - n;
+    for (let i = 0; i < n; i++) {
+      dest[i] = this.store[base + i];
+    }
+    this.curr = base;
+  }
+
   sliceAndDropFromTop(n: number): any {
     const curr = this.curr;
     this.curr -= n;
@@ -202,16 +223,56 @@ export class PreAllocatedStack {
   clear() {
     this.curr = 0;
   }
+
+  /**
+   * Returns the number of slots this stack was allocated with.
+   */
+  capacity(): number {
+    return this.store.length;
+  }
+
+  /**
+   * Empties the stack and drops every reference it holds, so it can be
+   * recycled without keeping objects alive.
+   */
+  reset() {
+    const store = this.store;
+    for (let i = 0; i < store.length; i++) {
+      store[i] = null;
+    }
+    this.curr = 0;
+  }
+}
+
+/**
+ * Returns how many block dispatches a compiled loop region may perform before
+ * it returns: its own budget, or the work the thread has left, if less.
+ */
+function regionBudget(budget: number): number {
+  return workLeft < budget ? (workLeft > 1 ? workLeft : 1) : budget;
+}
+
+/**
+ * Charges the block dispatches a compiled loop region performed to the
+ * thread's quantum.
+ */
+function chargeRegionWork(dispatches: number): void {
+  workLeft -= dispatches;
 }
 
 const jitUtil = {
   isNull: isNull,
   resolveCPItem: resolveCPItem,
   throwException: throwException,
+  invokeWithStackArgs: invokeWithStackArgs,
   gLong: gLong,
   float2int: float2int,
   wrapFloat: wrapFloat,
-  Constants: Constants
+  lmul: longMultiply,
+  longResult: longResult,
+  Constants: Constants,
+  regionBudget: regionBudget,
+  chargeRegionWork: chargeRegionWork
 };
 
 /**
@@ -231,14 +292,27 @@ export class BytecodeStackFrame implements IStackFrame {
    * @param args The arguments to pass to the bytecode method.
    */
   constructor(method: Method, args: any[]) {
+    this.init(method, args, new PreAllocatedStack(method.getCodeAttribute().getMaxStack()));
+  }
+
+  /**
+   * (Re)initializes this frame to run the given method. Used by the
+   * constructor, and by JVMThread when it recycles a pooled frame.
+   * @param locals The local variable array, with the arguments in place.
+   * @param opStack An empty operand stack of at least max_stack slots.
+   */
+  public init(method: Method, locals: any[], opStack: PreAllocatedStack): void {
     this.method = method;
     method.incrBBEntries();
     assert(!method.accessFlags.isNative(), 'Cannot run a native method using a BytecodeStackFrame.');
     // @todo This should be a runtime error, since reflection can cause you to
     // try to do this.
     assert(!method.accessFlags.isAbstract(), 'Cannot run an abstract method!');
-    this.locals = args;
-    this.opStack = new PreAllocatedStack(method.getCodeAttribute().getMaxStack());
+    this.pc = 0;
+    this.returnToThreadLoop = false;
+    this.lockedMethodLock = false;
+    this.locals = locals;
+    this.opStack = opStack;
   }
 
   public run(thread: JVMThread): void {
@@ -256,7 +330,7 @@ export class BytecodeStackFrame implements IStackFrame {
     if (method.accessFlags.isSynchronized() && !this.lockedMethodLock) {
       // We are starting a synchronized method! These must implicitly enter
       // their respective locks.
-      this.lockedMethodLock = method.methodLock(thread, this).enter(thread, () => {
+      this.lockedMethodLock = method.methodLock(thread, this).monitorEnter(thread, () => {
         // Lock succeeded. Set the flag so we don't attempt to reacquire it
         // when this method reruns.
         this.lockedMethodLock = true;
@@ -272,19 +346,44 @@ export class BytecodeStackFrame implements IStackFrame {
     // from the previous time this method was run, and is meaningless.
     this.returnToThreadLoop = false;
 
-    if (thread.getJVM().isJITDisabled()) {
+    var profileOpcodes = !RELEASE && isOpcodeProfilingEnabled();
+    if (thread.getJVM().areSuperinstructionsEnabled()) {
+      method.fuseSuperinstructions();
+    }
+
+    if (thread.getJVM().isJITDisabled() && thread.getJVM().isDirectThreaded()) {
+      // Run pre-decoded handlers until we get the signal to return to the
+      // thread loop.
+      var decodedCode = getDecodedCode(method);
+      while (!this.returnToThreadLoop) {
+        if (!RELEASE && logLevel === LogLevel.VTRACE) {
+          vtrace(`  ${this.pc} ${annotateOpcode(code[this.pc], method, code, this.pc)}`);
+        }
+        if (!RELEASE && profileOpcodes) {
+          recordOpcode(this, code, this.pc);
+        }
+        decodedCode[this.pc](thread, this, code);
+        if (!RELEASE && !this.returnToThreadLoop && logLevel === LogLevel.VTRACE) {
+          vtrace(`    S: [${debug_vars(this.opStack.getRaw())}], L: [${debug_vars(this.locals)}]`);
+        }
+      }
+    } else if (thread.getJVM().isJITDisabled()) {
       // Interpret until we get the signal to return to the thread loop.
       while (!this.returnToThreadLoop) {
         var opCode = code[this.pc];
         if (!RELEASE && logLevel === LogLevel.VTRACE) {
           vtrace(`  ${this.pc} ${annotateOpcode(op, method, code, this.pc)}`);
         }
+        if (!RELEASE && profileOpcodes) {
+          recordOpcode(this, code, this.pc);
+        }
         opcodeTable[opCode](thread, this, code);
         if (!RELEASE && !this.returnToThreadLoop && logLevel === LogLevel.VTRACE) {
           vtrace(`    S: [${debug_vars(this.opStack.getRaw())}], L: [${debug_vars(this.locals)}]`);
         }
       }
     } else {
+      var decodedCode = thread.getJVM().isDirectThreaded() ? getDecodedCode(method) : null;
       // Run until we get the signal to return to the thread loop.
       while (!this.returnToThreadLoop) {
         var op = method.getOp(this.pc, code, thread);
@@ -293,11 +392,24 @@ export class BytecodeStackFrame implements IStackFrame {
             vtrace(`  ${this.pc} running JIT compiled function:\n${op.toString()}`);
           }
           op(this, thread, jitUtil);
+          // Compiled code returns here at the end of every trace, so a loop
+          // in it counts as work here rather than through backEdge. Loop
+          // regions also charge the dispatches they performed.
+          if (--workLeft <= 1) {
+            this.preempt();
+          }
         } else {
           if (!RELEASE && logLevel === LogLevel.VTRACE) {
             vtrace(`  ${this.pc} ${annotateOpcode(op, method, code, this.pc)}`);
           }
-          opcodeTable[op](thread, this, code);
+          if (!RELEASE && profileOpcodes) {
+            recordOpcode(this, code, this.pc);
+          }
+          if (decodedCode !== null) {
+            decodedCode[this.pc](thread, this, code);
+          } else {
+            opcodeTable[op](thread, this, code);
+          }
         }
         if (!RELEASE && !this.returnToThreadLoop && logLevel === LogLevel.VTRACE) {
           vtrace(`    S: [${debug_vars(this.opStack.getRaw())}], L: [${debug_vars(this.locals)}]`);
@@ -306,6 +418,26 @@ export class BytecodeStackFrame implements IStackFrame {
     }
   }
 
+  /**
+   * Called when the interpreter takes a loop back edge in this frame. Counts
+   * it towards the method's JIT profile and the thread's quantum, so a long
+   * loop cannot keep the thread from yielding.
+   */
+  public backEdge(): void {
+    this.method.incrBBEntries();
+    if (--workLeft <= 1) {
+      this.preempt();
+    }
+  }
+
+  /**
+   * Returns to the thread loop, and makes the thread yield once there.
+   */
+  private preempt(): void {
+    workLeft = 1;
+    this.returnToThreadLoop = true;
+  }
+
   public scheduleResume(thread: JVMThread, rv?: any, rv2?: any): void {
     // Advance to the next opcode.
     var prevOp = this.method.getCodeAttribute().getCode()[this.pc];
@@ -351,19 +483,19 @@ export class BytecodeStackFrame implements IStackFrame {
    * in the event that it can't actually handle it.
    */
   public scheduleException(thread: JVMThread, e: JVMTypes.java_lang_Throwable): boolean {
-    var codeAttr = this.method.getCodeAttribute(),
-      pc = this.pc, method = this.method,
+    var pc = this.pc, method = this.method,
       // STEP 1: See if we can find an appropriate handler for this exception!
-      exceptionHandlers = codeAttr.exceptionHandlers,
+      exceptionTable = method.getExceptionTable(),
+      candidates = exceptionTable.getHandlers(pc),
       ecls = e.getClass(), handler: ExceptionHandler;
-    for (let i = 0; i < exceptionHandlers.length; i++) {
-      let eh = exceptionHandlers[i];
-      if (eh.startPC <= pc && pc < eh.endPC) {
+    if (candidates !== null) {
+      for (let i = 0; i < candidates.length; i++) {
+        let eh = exceptionTable.handlers[candidates[i]];
         if (eh.catchType === "<any>") {
           handler = eh;
           break;
         } else {
-          let resolvedCatchType = method.cls.getLoader().getResolvedClass(eh.catchType);
+          let resolvedCatchType = exceptionTable.getCatchClass(candidates[i], method.cls.getLoader());
           if (resolvedCatchType != null) {
             if (ecls.isCastable(resolvedCatchType)) {
               handler = eh;
@@ -372,13 +504,7 @@ export class BytecodeStackFrame implements IStackFrame {
           } else {
             // ASYNC PATH: We'll need to asynchronously resolve these handlers.
             debug(`${method.getFullSignature()} needs to resolve some exception types...`);
-            let handlerClasses: string[] = [];
-            for (let i = 0; i < exceptionHandlers.length; i++) {
-              let handler = exceptionHandlers[i];
-              if (handler.catchType !== "<any>") {
-                handlerClasses.push(handler.catchType);
-              }
-            }
+            let handlerClasses = exceptionTable.getCatchTypes();
             debug(`${method.getFullSignature()}: Has to resolve exception classes. Deferring scheduling...`);
             thread.setStatus(ThreadStatus.ASYNC_WAITING);
             method.cls.getLoader().resolveClasses(thread, handlerClasses, (classes: { [name: string]: ClassData; }) => {
@@ -415,7 +541,7 @@ export class BytecodeStackFrame implements IStackFrame {
       debug(`${method.getFullSignature()}: Did not catch ${e.getClass().getInternalName()}.`);
       // STEP 3: Synchronized method? Exit from the method's monitor.
       if (method.accessFlags.isSynchronized()) {
-        method.methodLock(thread, this).exit(thread);
+        method.methodLock(thread, this).monitorExit(thread);
       }
       return false;
     }
@@ -450,15 +576,19 @@ export class NativeStackFrame implements IStackFrame {
   private nativeMethod: Function;
   public method: Method;
   private args: any[];
+  private argsConverted: boolean;
 
   /**
    * Constructs a native method's stack frame.
    * @param method The native method to run.
    * @param args The arguments to pass to the native method.
+   * @param argsConverted True if args has already been through
+   *   Method.convertArgs.
    */
-  constructor(method: Method, args: any[]) {
+  constructor(method: Method, args: any[], argsConverted: boolean = false) {
     this.method = method;
     this.args = args;
+    this.argsConverted = argsConverted;
     assert(method.accessFlags.isNative());
     this.nativeMethod = method.getNativeFunction();
   }
@@ -469,7 +599,16 @@ export class NativeStackFrame implements IStackFrame {
    */
   public run(thread: JVMThread): void {
     trace(`\nT${thread.getRef()} D${thread.getStackTrace().length} Running ${this.method.getFullSignature()} [Native]:`);
-    var rv: any = this.nativeMethod.apply(null, this.method.convertArgs(thread, this.args));
+    var rv: any = this.nativeMethod.apply(null, this.argsConverted ? this.args : this.method.convertArgs(thread, this.args));
+    this.method.recordNativeReturn(thread.getStatus() === ThreadStatus.RUNNABLE && thread.isTopFrame(this));
+    this.complete(thread, rv);
+  }
+
+  /**
+   * Returns rv from the native method, unless the native method has already
+   * returned, thrown an exception, or is waiting on something.
+   */
+  public complete(thread: JVMThread, rv: any): void {
     // Ensure thread is running, and we are the running method.
     if (thread.getStatus() === ThreadStatus.RUNNABLE && thread.currentMethod() === this.method) {
       // Normal native method exit.
@@ -621,6 +760,48 @@ export class JVMThread implements Thread {
   private jvmThreadObj: JVMTypes.java_lang_Thread;
   private jvm: JVM;
 
+  /**
+   * Recycled bytecode frames, and the operand stacks and locals arrays to
+   * give them, indexed by max_stack and max_locals. Java calls are frequent
+   * enough that allocating these for each one shows up as GC pressure.
+   */
+  private framePool: BytecodeStackFrame[] = [];
+  private opStackPool: PreAllocatedStack[][] = [];
+  private localsPool: any[][][] = [];
+  /**
+   * The bytecode frame that most recently returned. It is recycled on the
+   * next frame allocation, or when the thread loop yields or finishes, rather
+   * than in asyncReturn, since its run loop and any compiled code's local
+   * write-backs may still be executing.
+   */
+  private returnedFrame: BytecodeStackFrame = null;
+  /**
+   * The number of runCallee calls on the JavaScript stack.
+   */
+  private nestedCalls: number = 0;
+  /**
+   * The native method that runNativeInline is running without a stack frame,
+   * its arguments, and the stack index its frame would have.
+   */
+  private inlineNative: Method = null;
+  private inlineNativeArgs: any[] = null;
+  private inlineNativeDepth: number = 0;
+  /**
+   * The frame created for the inline native method, once it did something
+   * that needs one.
+   */
+  private inlineNativeFrame: NativeStackFrame = null;
+  /**
+   * The units of work this thread can do in one quantum while staying within
+   * the JVM's responsiveness target, averaged over the last few quanta.
+   */
+  private maxWork: number = 10000;
+  private numWorkSamples: number = 1;
+  /**
+   * The timeout of a sleep or timed park, if the thread is in one.
+   */
+  private wakeupTimer: Timer = null;
+
   /**
    * Initializes a new JVM thread. Starts the thread in the NEW state.
    */
@@ -678,6 +859,9 @@ export class JVMThread implements Thread {
    * Returns the currently running method. Returns NULL if stack is empty.
    */
   public currentMethod(): Method {
+    if (this.inlineNative !== null) {
+      this.materializeInlineNative();
+    }
     var stack = this.stack, idx = stack.length, method: Method;
     while (--idx >= 0) {
       method = stack[idx].getStackTraceFrame().method;
@@ -706,6 +890,9 @@ export class JVMThread implements Thread {
    * Get the classloader for the current frame.
    */
   public getLoader(): ClassLoader {
+    if (this.inlineNative !== null) {
+      this.materializeInlineNative();
+    }
     let loader = this.stack[this.stack.length - 1].getLoader();
     if (loader) {
       return loader;
@@ -779,10 +966,35 @@ export class JVMThread implements Thread {
     return this.tpool;
   }
 
+  /**
+   * Sets the timeout of a sleep or timed park, through the thread pool's
+   * timer wheel. Replaces any previous one.
+   */
+  public setWakeupTimer(delay: number, cb: () => void): void {
+    this.cancelWakeupTimer();
+    this.wakeupTimer = this.tpool.getTimerWheel().schedule(delay, () => {
+      this.wakeupTimer = null;
+      cb();
+    });
+  }
+
+  /**
+   * Cancels the timeout of a sleep or timed park, if there is one.
+   */
+  public cancelWakeupTimer(): void {
+    if (this.wakeupTimer !== null) {
+      this.tpool.getTimerWheel().cancel(this.wakeupTimer);
+      this.wakeupTimer = null;
+    }
+  }
+
   /**
    * Retrieves the current stack trace.
    */
   public getStackTrace(): IStackTraceFrame[] {
+    if (this.inlineNative !== null) {
+      this.materializeInlineNative();
+    }
     var trace: IStackTraceFrame[] = [], i: number,
       frame: IStackTraceFrame;
     for (i = 0; i < this.stack.length; i++) {
@@ -794,6 +1006,17 @@ export class JVMThread implements Thread {
     return trace;
   }
 
+  /**
+   * Returns the frames on the stack, bottom first. Unlike getStackTrace, does
+   * not copy each frame's operand stack and locals.
+   */
+  public getStackFrames(): IStackFrame[] {
+    if (this.inlineNative !== null) {
+      this.materializeInlineNative();
+    }
+    return this.stack.slice(0);
+  }
+
   /**
    * [DEBUG] Return a printable string of the thread's current stack trace.
    */
@@ -832,10 +1055,11 @@ export class JVMThread implements Thread {
    */
   public run(): void {
     var stack = this.stack,
-      startTime: number = (new Date()).getTime();
+      startTime = now();
 
+    this.tpool.threadRunning(this);
     // Reset counter. Threads always start from a fresh stack / yield.
-    methodResumesLeft = maxMethodResumes;
+    workLeft = this.maxWork;
     while (this.status === ThreadStatus.RUNNABLE && stack.length > 0) {
       const sf = stack[stack.length - 1];
       if (!RELEASE) {
@@ -850,19 +1074,20 @@ export class JVMThread implements Thread {
       } else {
         sf.run(this);
       }
-      if (--methodResumesLeft === 0) {
-        const endTime = (new Date()).getTime();
-        const duration = endTime - startTime;
-        // Estimated number of methods we can resume before needing to yield.
-        const estMaxMethodResumes = ((maxMethodResumes / duration) * this.jvm.getResponsiveness()) | 0;
-        // Update CMA.
-        maxMethodResumes = ((estMaxMethodResumes + numSamples * maxMethodResumes) / (numSamples + 1)) | 0;
-        if (maxMethodResumes <= 0) {
+      if (--workLeft <= 0) {
+        const duration = now() - startTime;
+        // Estimated units of work we can do before needing to yield.
+        const estMaxWork = duration > 0 ? ((this.maxWork / duration) * this.jvm.getResponsiveness()) | 0 : this.maxWork * 2;
+        // Update the moving average.
+        this.maxWork = ((estMaxWork + this.numWorkSamples * this.maxWork) / (this.numWorkSamples + 1)) | 0;
+        if (this.maxWork <= 0) {
           // Sanity check. Should never really occur.
-          maxMethodResumes = 10;
+          this.maxWork = 10;
+        }
+        vtrace(`T${this.getRef()} Quantum over. Work: Max ${this.maxWork} Est ${estMaxWork} Duration ${duration}ms Samples ${this.numWorkSamples}`);
+        if (this.numWorkSamples < maxWorkSamples) {
+          this.numWorkSamples++;
         }
-        vtrace(`T${this.getRef()} Quantum over. Method resumes: Max ${maxMethodResumes} Est ${estMaxMethodResumes} Samples ${numSamples}`);
-        numSamples++;
         // Tell the scheduler that our quantum is over.
         this.tpool.quantumOver(this);
         // Break out of while loop.
@@ -870,12 +1095,122 @@ export class JVMThread implements Thread {
       }
     }
 
+    // No frame's run loop is executing anymore.
+    this.releaseReturnedFrame();
     if (stack.length === 0) {
       // This thread has finished!
       this.setStatus(ThreadStatus.TERMINATED);
     }
   }
 
+  /**
+   * Called by compiled code right after it invokes a method from the given
+   * frame. If the callee is a compiled, unsynchronized bytecode method, runs
+   * it (and anything it calls) as a nested JavaScript call rather than
+   * returning to the thread loop first. Frames run until the callee returns,
+   * the thread stops being runnable because it blocked, is waiting on
+   * something asynchronous, or must yield, or an exception unwinds the caller.
+   * @return True if the caller is back on top of the stack and runnable, so
+   *   it can keep executing.
+   */
+  public runCallee(caller: BytecodeStackFrame): boolean {
+    var stack = this.stack, callerIdx = stack.length - 2;
+    if (this.nestedCalls >= maxNestedCalls || this.status !== ThreadStatus.RUNNABLE ||
+        callerIdx < 0 || stack[callerIdx] !== caller || !this.jvm.areNestedCallsEnabled()) {
+      return false;
+    }
+    var callee = stack[callerIdx + 1];
+    if (callee.type !== StackFrameType.BYTECODE) {
+      return false;
+    }
+    var calleeMethod = (<BytecodeStackFrame> callee).method;
+    if (calleeMethod.accessFlags.isSynchronized() || !calleeMethod.isCompiled() ||
+        (!RELEASE && this.jvm.shouldVtrace(calleeMethod.fullSignature))) {
+      return false;
+    }
+
+    this.nestedCalls++;
+    // Leave the final unit of work of the quantum to the thread loop, which
+    // yields when it uses it.
+    while (this.status === ThreadStatus.RUNNABLE && stack.length > callerIdx + 1 && workLeft > 1) {
+      workLeft--;
+      stack[stack.length - 1].run(this);
+    }
+    this.nestedCalls--;
+    return this.status === ThreadStatus.RUNNABLE && stack.length === callerIdx + 1;
+  }
+
+  /**
+   * Calls a native method that usually returns synchronously, on behalf of
+   * the bytecode frame on top of the stack, without pushing a stack frame
+   * for it. If the native method does anything that can observe or change
+   * the stack, such as throwing, blocking, calling back into Java, or
+   * inspecting its caller, it gets a frame at that point and finishes like
+   * any other native method.
+   * @param args The native method's converted arguments.
+   * @return True if the method returned synchronously, and its return value
+   *   has been passed to the caller, which can keep executing.
+   */
+  public runNativeInline(method: Method, args: any[]): boolean {
+    var stack = this.stack, depth = stack.length, caller = stack[depth - 1], rv: any;
+    this.inlineNative = method;
+    this.inlineNativeArgs = args;
+    this.inlineNativeDepth = depth;
+    try {
+      rv = method.getNativeFunction().apply(null, args);
+      if (this.inlineNative !== null && stack.length !== depth) {
+        // The method pushed frames to call back into Java.
+        this.materializeInlineNative();
+      }
+    } finally {
+      this.inlineNative = null;
+      this.inlineNativeArgs = null;
+    }
+
+    var frame = this.inlineNativeFrame;
+    if (frame !== null) {
+      this.inlineNativeFrame = null;
+      method.recordNativeReturn(false);
+      frame.complete(this, rv);
+      return false;
+    }
+    switch (method.returnType) {
+      case 'V':
+        caller.scheduleResume(this);
+        break;
+      case 'J':
+      case 'D':
+        caller.scheduleResume(this, rv, null);
+        break;
+      case 'Z':
+        caller.scheduleResume(this, rv ? 1 : 0);
+        break;
+      default:
+        caller.scheduleResume(this, rv);
+        break;
+    }
+    return true;
+  }
+
+  /**
+   * Gives the native method that runNativeInline is running the stack frame
+   * it skipped.
+   */
+  private materializeInlineNative(): void {
+    var frame = new NativeStackFrame(this.inlineNative, this.inlineNativeArgs, true);
+    this.stack.splice(this.inlineNativeDepth, 0, frame);
+    this.inlineNativeFrame = frame;
+    this.inlineNative = null;
+    this.inlineNativeArgs = null;
+  }
+
+  /**
+   * Checks if the given frame is on top of the stack.
+   */
+  public isTopFrame(frame: IStackFrame): boolean {
+    return this.stack[this.stack.length - 1] === frame;
+  }
+
   /**
    * [DEBUG] Performs a sanity check on the thread.
    */
@@ -961,6 +1296,9 @@ export class JVMThread implements Thread {
    * Contains JVM-specific thread logic.
    */
   public setStatus(status: ThreadStatus, monitor: Monitor = null): void {
+    if (this.inlineNative !== null) {
+      this.materializeInlineNative();
+    }
     if (this.status !== status) {
       let oldStatus = this.status;
 
@@ -1067,11 +1405,20 @@ export class JVMThread implements Thread {
   public asyncReturn(rv: number, rv2: any): void;
   public asyncReturn(rv: gLong, rv2: any): void;
   public asyncReturn(rv?: any, rv2?: any): void {
+    if (this.inlineNative !== null) {
+      this.materializeInlineNative();
+    }
     var stack = this.stack;
     assert(this.status === ThreadStatus.RUNNABLE || this.status === ThreadStatus.ASYNC_WAITING);
     assert(typeof (rv) !== 'boolean' && rv2 == null);
     // Pop off the current method.
     var frame = stack.pop();
+    if (frame.type === StackFrameType.BYTECODE) {
+      if (this.returnedFrame !== null) {
+        this.releaseBytecodeFrame(this.returnedFrame);
+      }
+      this.returnedFrame = <BytecodeStackFrame> frame;
+    }
     if (frame.type != StackFrameType.INTERNAL) {
       var frameCast = <BytecodeStackFrame> frame;
       if (frame.type === StackFrameType.BYTECODE) {
@@ -1096,11 +1443,80 @@ export class JVMThread implements Thread {
     this.setStatus(ThreadStatus.RUNNABLE);
   }
 
+  /**
+   * Returns a stack frame for the given bytecode method, reusing a pooled
+   * frame, operand stack, and locals array when one is available. The caller
+   * stores the arguments into the frame's locals and pushes it.
+   */
+  public allocBytecodeFrame(method: Method): BytecodeStackFrame {
+    this.releaseReturnedFrame();
+    var codeAttr = method.getCodeAttribute(), maxLocals = codeAttr.getMaxLocals(),
+      localsArrays = this.localsPool[maxLocals],
+      locals = localsArrays !== undefined && localsArrays.length > 0 ? localsArrays.pop() : new Array(maxLocals);
+    // Every pooled frame's operand stack went into the operand stack pool, so
+    // when there is no pooled frame there is no pooled operand stack either.
+    if (this.framePool.length > 0) {
+      var maxStack = codeAttr.getMaxStack(), opStacks = this.opStackPool[maxStack],
+        frame = this.framePool.pop();
+      frame.init(method, locals, opStacks !== undefined && opStacks.length > 0 ? opStacks.pop() : new PreAllocatedStack(maxStack));
+      return frame;
+    }
+    return new BytecodeStackFrame(method, locals);
+  }
+
+  /**
+   * Recycles the most recently returned bytecode frame, if it has not been
+   * already.
+   */
+  private releaseReturnedFrame(): void {
+    if (this.returnedFrame !== null) {
+      this.releaseBytecodeFrame(this.returnedFrame);
+      this.returnedFrame = null;
+    }
+  }
+
+  /**
+   * Clears a returned bytecode frame and puts it and its operand stack and
+   * locals array back into the pools. The operand stack and locals are
+   * cleared even when their pools are full, so nothing they held stays
+   * reachable through stale references to them.
+   */
+  private releaseBytecodeFrame(frame: BytecodeStackFrame): void {
+    var opStack = frame.opStack, locals = frame.locals, i: number,
+      opStacks = this.opStackPool[opStack.capacity()],
+      localsArrays = this.localsPool[locals.length];
+    frame.method = null;
+    frame.locals = null;
+    frame.opStack = null;
+    opStack.reset();
+    for (i = 0; i < locals.length; i++) {
+      locals[i] = null;
+    }
+    if (this.framePool.length < maxPooledFrames) {
+      this.framePool.push(frame);
+    }
+    if (opStacks === undefined) {
+      opStacks = this.opStackPool[opStack.capacity()] = [];
+    }
+    if (opStacks.length < maxPooledFrames) {
+      opStacks.push(opStack);
+    }
+    if (localsArrays === undefined) {
+      localsArrays = this.localsPool[locals.length] = [];
+    }
+    if (localsArrays.length < maxPooledFrames) {
+      localsArrays.push(locals);
+    }
+  }
+
   /**
    * Pops the top stackframe off of the call stack.
    * WARNING: SHOULD ONLY BE CALLED BY InternalStackFrame.run()!
    */
   public framePop(): void {
+    if (this.inlineNative !== null) {
+      this.materializeInlineNative();
+    }
     this.stack.pop();
   }
 
@@ -1121,6 +1537,9 @@ export class JVMThread implements Thread {
    * It is not valid to call this method if the thread is in any other state.
    */
   public throwException(exception: JVMTypes.java_lang_Throwable): void {
+    if (this.inlineNative !== null) {
+      this.materializeInlineNative();
+    }
     assert(this.status === ThreadStatus.RUNNABLE || this.status === ThreadStatus.ASYNC_WAITING,
       `Tried to throw exception while thread was in state ${ThreadStatus[this.status]}`);
     var stack = this.stack, idx: number = stack.length - 1;
@@ -1149,6 +1568,17 @@ export class JVMThread implements Thread {
     }
   }
 
+  /**
+   * Throws an already constructed exception once control returns to the
+   * thread loop, as throwNewException does once the new exception's
+   * constructor has run. Like throwNewException, can be called from code
+   * that has yet to update the current frame's pc.
+   */
+  public throwExceptionLater(exception: JVMTypes.java_lang_Throwable): void {
+    this.stack.push(new InternalStackFrame(() => this.throwException(exception)));
+    this.setStatus(ThreadStatus.RUNNABLE);
+  }
+
   /**
    * Construct a new exception object of the given class with the given message.
    * Convenience function for native JavaScript code.
@@ -1,11 +1,14 @@
 import {ThreadStatus} from './enums';
-import {setImmediate} from 'browserfs';
 import assert from './assert';
+import Yielder from './Yielder';
+import TimerWheel from './TimerWheel';
+import {now} from './util';
 
 /**
  * Generic interface for a thread.
  */
 export interface Thread {
+  getRef(): number;
   getStatus(): ThreadStatus;
   isDaemon(): boolean;
   getPriority(): number;
@@ -51,7 +54,7 @@ export interface Scheduler<T extends Thread> {
 /**
  * A Weighted Round Robin thread scheduler.
  */
-class WeightedRoundRobinScheduler<T extends Thread> implements Scheduler<T> {
+export class WeightedRoundRobinScheduler<T extends Thread> implements Scheduler<T> {
   // Number of quanta given to the current thread.
   private _count: number = 0;
   // The queue of threads.
@@ -59,6 +62,9 @@ class WeightedRoundRobinScheduler<T extends Thread> implements Scheduler<T> {
   // Read by runThread. Used as a lock.
   private _threadScheduled: boolean = false;
 
+  constructor(private _yielder: Yielder = new Yielder('set-immediate')) {
+  }
+
   public scheduleThread(thread: T): void {
     this._queue.push(thread);
     if (this._queue.length === 1) {
@@ -75,7 +81,7 @@ class WeightedRoundRobinScheduler<T extends Thread> implements Scheduler<T> {
       return;
     }
     this._threadScheduled = true;
-    setImmediate(() => {
+    this._yielder.schedule(() => {
       let queue = this._queue;
       this._threadScheduled = false;
       if (queue.length > 0) {
@@ -128,13 +134,226 @@ class WeightedRoundRobinScheduler<T extends Thread> implements Scheduler<T> {
   }
 }
 
+/**
+ * Number of queues in the multi-level feedback queue scheduler. Threads start
+ * in queues 0 to 2 depending on their Java priority, and sink to the last
+ * queue as they use up whole quanta.
+ */
+const mlfqLevels = 4;
+
+/**
+ * Number of quanta between priority boosts, which move every queued thread
+ * back to the queue for its priority so demoted threads cannot starve.
+ */
+const mlfqBoostPeriod = 64;
+
+/**
+ * A multi-level feedback queue thread scheduler. Always runs the thread at
+ * the head of the highest non-empty queue. A thread that uses up its quantum
+ * drops a queue; one that becomes runnable again after blocking or waiting
+ * re-enters at the queue for its priority. CPU-bound threads thus end up
+ * below threads that mostly wait on I/O. The last queue is a weighted round
+ * robin, like WeightedRoundRobinScheduler.
+ */
+export class MLFQScheduler<T extends Thread> implements Scheduler<T> {
+  // Runnable threads, by level. Level 0 runs first.
+  private _queues: T[][] = [];
+  // The thread that was last given the CPU, if it is still runnable.
+  private _current: T = null;
+  // Number of consecutive quanta given to the current thread.
+  private _count: number = 0;
+  // Quanta since the last priority boost.
+  private _quantaSinceBoost: number = 0;
+  // Read by runThread. Used as a lock.
+  private _threadScheduled: boolean = false;
+
+  constructor(private _yielder: Yielder = new Yielder('set-immediate')) {
+    for (let i = 0; i < mlfqLevels; i++) {
+      this._queues.push([]);
+    }
+  }
+
+  /**
+   * The level a thread of the given Java priority (1 to 10) enters at.
+   */
+  private static baseLevel(priority: number): number {
+    if (priority >= 8) {
+      return 0;
+    } else if (priority >= 5) {
+      return 1;
+    } else {
+      return 2;
+    }
+  }
+
+  /**
+   * Returns the level of the queue holding the given thread, or -1.
+   */
+  private levelOf(thread: T): number {
+    for (let i = 0; i < mlfqLevels; i++) {
+      if (this._queues[i].indexOf(thread) > -1) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the thread at the head of the highest non-empty queue, or null.
+   */
+  private peek(): T {
+    for (let i = 0; i < mlfqLevels; i++) {
+      if (this._queues[i].length > 0) {
+        return this._queues[i][0];
+      }
+    }
+    return null;
+  }
+
+  private remove(thread: T, level: number): void {
+    let queue = this._queues[level];
+    queue.splice(queue.indexOf(thread), 1);
+  }
+
+  public scheduleThread(thread: T): void {
+    this._queues[MLFQScheduler.baseLevel(thread.getPriority())].push(thread);
+    if (this._current === null) {
+      this.runThread();
+    }
+  }
+
+  /**
+   * Run the thread at the head of the highest non-empty queue.
+   */
+  private runThread(): void {
+    if (this._threadScheduled) {
+      return;
+    }
+    this._threadScheduled = true;
+    this._yielder.schedule(() => {
+      this._threadScheduled = false;
+      let thread = this.peek();
+      if (thread !== null) {
+        assert(thread.getStatus() === ThreadStatus.RUNNABLE, `Attempted to run non-runnable thread.`);
+        if (thread !== this._current) {
+          this._current = thread;
+          this._count = 0;
+        }
+        thread.run();
+      }
+    });
+  }
+
+  public unscheduleThread(thread: T): void {
+    let level = this.levelOf(thread);
+    assert(level > -1, `Tried to unschedule thread that was not scheduled.`);
+    this.remove(thread, level);
+    if (thread === this._current) {
+      this._current = null;
+      this._count = 0;
+      // Schedule the next thread.
+      this.runThread();
+    }
+  }
+
+  public getRunningThread(): T {
+    return this._current !== null ? this._current : this.peek();
+  }
+
+  public priorityChange(thread: T): void {
+    let level = this.levelOf(thread), newLevel = MLFQScheduler.baseLevel(thread.getPriority());
+    // Raising a thread's priority lifts it right away; lowering it takes
+    // effect once it uses up its quantum or blocks.
+    if (level > newLevel) {
+      this.remove(thread, level);
+      this._queues[newLevel].push(thread);
+    }
+  }
+
+  public quantumOver(thread: T): void {
+    let level = this.levelOf(thread);
+    if (level > -1) {
+      this._count++;
+      if (level < mlfqLevels - 1) {
+        // Used a whole quantum: demote.
+        this.remove(thread, level);
+        this._queues[level + 1].push(thread);
+        this._count = 0;
+      } else if (this._count >= thread.getPriority()) {
+        // Move to back of the last queue, reset count.
+        this.remove(thread, level);
+        this._queues[level].push(thread);
+        this._count = 0;
+      }
+    }
+    if (++this._quantaSinceBoost >= mlfqBoostPeriod) {
+      this.boost();
+    }
+    // Schedule the next thread; it may be this one again.
+    this.runThread();
+  }
+
+  /**
+   * Moves every queued thread back to the queue for its priority, keeping
+   * their relative order.
+   */
+  private boost(): void {
+    let queues = this._queues;
+    this._quantaSinceBoost = 0;
+    this._queues = [];
+    for (let i = 0; i < mlfqLevels; i++) {
+      this._queues.push([]);
+    }
+    for (let i = 0; i < mlfqLevels; i++) {
+      let queue = queues[i];
+      for (let j = 0; j < queue.length; j++) {
+        this._queues[MLFQScheduler.baseLevel(queue[j].getPriority())].push(queue[j]);
+      }
+    }
+  }
+}
+
+/**
+ * Creates the thread scheduler with the given name: 'round-robin' or 'mlfq'.
+ */
+export function createScheduler<T extends Thread>(name: string, yielder: Yielder): Scheduler<T> {
+  switch (name) {
+    case 'round-robin':
+      return new WeightedRoundRobinScheduler<T>(yielder);
+    case 'mlfq':
+      return new MLFQScheduler<T>(yielder);
+    default:
+      throw new TypeError(`Unknown thread scheduler: ${name}`);
+  }
+}
+
+/**
+ * Upper bounds of the scheduling latency histogram buckets, in milliseconds.
+ * The last bucket holds everything above the last bound.
+ */
+const latencyBuckets = [0.1, 1, 10, 100];
+
+/**
+ * Scheduling latency: the time from a thread becoming ready to run, whether
+ * because it became runnable or because its quantum ended, to it running.
+ */
+export interface SchedulingStats {
+  // Number of times a ready thread was run
+  count: number;
+  // Mean and longest latency, in milliseconds
+  meanLatency: number;
+  maxLatency: number;
+  // Number of latencies under 0.1, 1, 10 and 100 milliseconds, and above
+  histogram: number[];
+}
+
 /**
  * Represents a thread pool. Handles scheduling duties.
  */
 export default class ThreadPool<T extends Thread> {
   private threads: T[] = [];
   private runningThread: T;
-  private scheduler: Scheduler<T> = new WeightedRoundRobinScheduler<T>();
+  private scheduler: Scheduler<T>;
   /**
    * Called when the ThreadPool becomes empty. This is usually a sign that
    * execution has finished.
@@ -142,9 +361,34 @@ export default class ThreadPool<T extends Thread> {
    * If the callback returns true it signals that this threadpool can free its resources.
    */
   private emptyCallback: () => boolean;
+  /**
+   * Told when threads start and stop waiting on asynchronous I/O. May be null.
+   */
+  private yielder: Yielder;
+  /**
+   * When each thread waiting to run became ready, by thread ref.
+   */
+  private readySince: {[threadRef: number]: number} = {};
+  private latencyCount: number = 0;
+  private latencyTotal: number = 0;
+  private latencyMax: number = 0;
+  private latencyHistogram: number[] = [0, 0, 0, 0, 0];
+  /**
+   * Timeouts of the pool's sleeping, timed waiting and timed parked threads.
+   */
+  private timerWheel: TimerWheel = new TimerWheel();
 
-  constructor(emptyCallback: () => boolean) {
+  constructor(emptyCallback: () => boolean, scheduler: Scheduler<T> = new WeightedRoundRobinScheduler<T>(), yielder: Yielder = null) {
     this.emptyCallback = emptyCallback;
+    this.scheduler = scheduler;
+    this.yielder = yielder;
+  }
+
+  /**
+   * Get the timer wheel that timed blocking operations register with.
+   */
+  public getTimerWheel(): TimerWheel {
+    return this.timerWheel;
   }
 
   /**
@@ -203,11 +447,21 @@ export default class ThreadPool<T extends Thread> {
       }
     }
 
+    if (this.yielder !== null && oldStatus !== newStatus) {
+      if (newStatus === ThreadStatus.ASYNC_WAITING) {
+        this.yielder.ioStarted();
+      } else if (oldStatus === ThreadStatus.ASYNC_WAITING) {
+        this.yielder.ioFinished();
+      }
+    }
+
     // Inform scheduling algorithm if thread changes from runnable => unrunnable, or unrunnable => runnable.
     if (wasRunnable !== nowRunnable) {
       if (wasRunnable) {
+        delete this.readySince[thread.getRef()];
         this.scheduler.unscheduleThread(thread);
       } else {
+        this.readySince[thread.getRef()] = now();
         this.scheduler.scheduleThread(thread);
       }
     }
@@ -228,6 +482,52 @@ export default class ThreadPool<T extends Thread> {
    * Called when a thread's quantum is over.
    */
   public quantumOver(thread: T): void {
+    if (thread.getStatus() === ThreadStatus.RUNNABLE) {
+      this.readySince[thread.getRef()] = now();
+    }
     this.scheduler.quantumOver(thread);
   }
+
+  /**
+   * Called when a thread starts running. Records how long it waited since it
+   * became ready.
+   */
+  public threadRunning(thread: T): void {
+    const ref = thread.getRef(), since = this.readySince[ref];
+    if (since !== undefined) {
+      delete this.readySince[ref];
+      const latency = now() - since;
+      let bucket = 0;
+      while (bucket < latencyBuckets.length && latency >= latencyBuckets[bucket]) {
+        bucket++;
+      }
+      this.latencyHistogram[bucket]++;
+      this.latencyCount++;
+      this.latencyTotal += latency;
+      if (latency > this.latencyMax) {
+        this.latencyMax = latency;
+      }
+    }
+  }
+
+  /**
+   * Get the scheduling latency statistics collected so far.
+   */
+  public getSchedulingStats(): SchedulingStats {
+    return {
+      count: this.latencyCount,
+      meanLatency: this.latencyCount > 0 ? this.latencyTotal / this.latencyCount : 0,
+      maxLatency: this.latencyMax,
+      histogram: this.latencyHistogram.slice(0)
+    };
+  }
+
+  /**
+   * Prints the scheduling latency statistics.
+   */
+  public dumpSchedulingStats(): void {
+    const stats = this.getSchedulingStats(), hist = stats.histogram;
+    console.log(`Scheduling latency: ${stats.count} thread runs, mean ${stats.meanLatency.toFixed(3)}ms, max ${stats.maxLatency.toFixed(3)}ms`);
+    console.log(`  <0.1ms: ${hist[0]}, <1ms: ${hist[1]}, <10ms: ${hist[2]}, <100ms: ${hist[3]}, >=100ms: ${hist[4]}`);
+  }
 }
@@ -9,6 +9,7 @@ import {ClassLoader} from './ClassLoader';
 import {ReferenceClassData, ClassData, ArrayClassData} from './ClassData';
 
 let BFSUtils = BrowserFS.BFSRequire('bfs_utils');
+declare var SharedArrayBuffer: any;
 
 /**
  * util contains stateless utility functions that are used around Doppio's
@@ -35,6 +36,33 @@ export function are_in_browser(): boolean {
 
 export var typedArraysSupported: boolean = typeof ArrayBuffer !== "undefined";
 
+export var sharedArraysSupported: boolean = typedArraysSupported && typeof SharedArrayBuffer !== "undefined";
+
+/**
+ * Checks if the given array backs a Java array with a SharedArrayBuffer, which
+ * other isolates or JavaScript code may be accessing concurrently.
+ */
+export function isSharedArray(arr: any): boolean {
+  return sharedArraysSupported && arr != null && arr.buffer instanceof SharedArrayBuffer;
+}
+
+/**
+ * Returns a high-resolution timestamp in milliseconds, from an arbitrary
+ * origin. Falls back to Date where there is no high-resolution clock.
+ */
+export var now: () => number = (function() {
+  if (typeof performance !== 'undefined' && typeof performance.now === 'function') {
+    return () => performance.now();
+  } else if (typeof process !== 'undefined' && typeof process.hrtime === 'function') {
+    return () => {
+      const t = process.hrtime();
+      return t[0] * 1000 + t[1] / 1000000;
+    };
+  } else {
+    return () => (new Date()).getTime();
+  }
+})();
+
 /**
  * Converts JVM internal names into JS-safe names. Only for use with reference
  * types.
@@ -244,6 +272,25 @@ export function float2int(a: number): number {
   }
 }
 
+/**
+ * The high word of the last longMultiply result.
+ */
+export var longResult = {high: 0};
+
+/**
+ * Multiplies two longs given as int32 halves, without allocating. Returns the
+ * low word of the product and stores the high word in longResult.high.
+ */
+export function longMultiply(aLow: number, aHigh: number, bLow: number, bHigh: number): number {
+  // Unsigned 32x32 -> 64 multiply of the low words, in 16-bit pieces.
+  var a0 = aLow & 0xFFFF, a1 = aLow >>> 16, b0 = bLow & 0xFFFF, b1 = bLow >>> 16,
+    lolo = a0 * b0, mid1 = a1 * b0, mid2 = a0 * b1,
+    carry = ((lolo >>> 16) + (mid1 & 0xFFFF) + (mid2 & 0xFFFF)) >>> 16,
+    high = a1 * b1 + (mid1 >>> 16) + (mid2 >>> 16) + carry;
+  longResult.high = (high + (<any> Math).imul(aLow, bHigh) + (<any> Math).imul(aHigh, bLow)) | 0;
+  return (<any> Math).imul(aLow, bLow);
+}
+
 var supportsArrayBuffers = typeof(ArrayBuffer) !== 'undefined';
 
 /**
@@ -797,10 +844,12 @@ export function arraycopyNoCheck(src: JVMTypes.JVMArray<any>, srcPos: number, de
 export function arraycopyCheck(thread: JVMThread, src: JVMTypes.JVMArray<JVMTypes.java_lang_Object>, srcPos: number, dest: JVMTypes.JVMArray<JVMTypes.java_lang_Object>, destPos: number, length: number): void {
   var j = destPos;
   var end = srcPos + length;
-  var destCompCls = dest.getClass().getComponentClass();
+  var destCompCls = dest.getClass().getComponentClass(), castableCls: ClassData = null, elemCls: ClassData = null;
   for (var i = srcPos; i < end; i++) {
-    // Check if null or castable.
-    if (src.array[i] === null || src.array[i].getClass().isCastable(destCompCls)) {
+    // Check if null or castable. Runs of elements of the same class only need
+    // one check.
+    if (src.array[i] === null || (elemCls = src.array[i].getClass()) === castableCls || elemCls.isCastable(destCompCls)) {
+      castableCls = elemCls;
       dest.array[j] = src.array[i];
     } else {
       thread.throwNewException('Ljava/lang/ArrayStoreException;', 'Array element in src cannot be cast to dest array type.');